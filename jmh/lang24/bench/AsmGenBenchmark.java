@@ -0,0 +1,30 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.asmgen.*;
+import lang24.phase.imclin.*;
+
+/**
+ * Machine code generation by {@link AsmGen#genAsmCodes}.
+ */
+public class AsmGenBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		// Compiling up to imclin would run the interpreter.
+		prepare("imcgen");
+		context.call(() -> Abstr.tree.get().accept(new ChunkGenerator(), null));
+	}
+
+	@Benchmark
+	public Object asmGen() {
+		return measure(() -> {
+			try (AsmGen asmgen = new AsmGen()) {
+				asmgen.genAsmCodes();
+			}
+			return AsmGen.codes.get();
+		});
+	}
+
+}
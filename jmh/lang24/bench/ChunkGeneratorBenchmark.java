@@ -0,0 +1,25 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.imclin.*;
+
+/**
+ * Linearization of intermediate code by {@link ChunkGenerator}.
+ */
+public class ChunkGeneratorBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("imcgen");
+	}
+
+	@Benchmark
+	public Object chunkGenerator() {
+		return measure(() -> {
+			Abstr.tree.get().accept(new ChunkGenerator(), null);
+			return ImcLin.codeChunks();
+		});
+	}
+
+}
@@ -0,0 +1,241 @@
+package lang24.bench;
+
+import java.util.*;
+
+/**
+ * A generator of synthetic LANG'24 programs.
+ *
+ * The shape of a generated program is controlled by the following knobs (all
+ * of them public fields, so that they can be set before calling
+ * {@link #generate()}):
+ *
+ * <ul>
+ * <li>{@link #functions}: the number of top-level functions,</li>
+ * <li>{@link #nesting}: the depth of inner function definitions within each
+ * top-level function,</li>
+ * <li>{@link #exprDepth}: the depth of arithmetic expression trees,</li>
+ * <li>{@link #blocks}: the number of basic blocks (conditionals and loops) per
+ * function,</li>
+ * <li>{@link #liveTemps}: the number of values kept alive within each block,</li>
+ * <li>{@link #types}: the number of record and union types forming the type
+ * graph,</li>
+ * <li>{@link #recTypes}: the number of recursive named types.</li>
+ * </ul>
+ *
+ * The same knobs (and seed) always produce the same program.
+ */
+public class Generator {
+
+	/** The number of top-level functions. */
+	public int functions = 10;
+
+	/** The depth of inner function definitions. */
+	public int nesting = 1;
+
+	/** The depth of expression trees. */
+	public int exprDepth = 3;
+
+	/** The number of basic blocks per function. */
+	public int blocks = 4;
+
+	/** The number of values kept alive within each block. */
+	public int liveTemps = 4;
+
+	/** The number of record and union types. */
+	public int types = 4;
+
+	/** The number of recursive named types. */
+	public int recTypes = 2;
+
+	/** The seed of the pseudo-random choices. */
+	public long seed = 2024;
+
+	/** The pseudo-random choices. */
+	private Random random;
+
+	/** The program being generated. */
+	private StringBuilder source;
+
+	/**
+	 * Sets a knob by its name.
+	 *
+	 * @param knob  The name of the knob (the name of its field).
+	 * @param value The value.
+	 */
+	public void set(final String knob, final int value) {
+		switch (knob) {
+		case "functions" -> functions = value;
+		case "nesting" -> nesting = value;
+		case "exprDepth" -> exprDepth = value;
+		case "blocks" -> blocks = value;
+		case "liveTemps" -> liveTemps = value;
+		case "types" -> types = value;
+		case "recTypes" -> recTypes = value;
+		default -> throw new IllegalArgumentException("Unknown knob '" + knob + "'.");
+		}
+	}
+
+	/**
+	 * Returns the value of a knob by its name.
+	 *
+	 * @param knob The name of the knob (the name of its field).
+	 * @return The value.
+	 */
+	public int get(final String knob) {
+		return switch (knob) {
+		case "functions" -> functions;
+		case "nesting" -> nesting;
+		case "exprDepth" -> exprDepth;
+		case "blocks" -> blocks;
+		case "liveTemps" -> liveTemps;
+		case "types" -> types;
+		case "recTypes" -> recTypes;
+		default -> throw new IllegalArgumentException("Unknown knob '" + knob + "'.");
+		};
+	}
+
+	/**
+	 * Generates a program.
+	 *
+	 * @return The source code.
+	 */
+	public String generate() {
+		random = new Random(seed);
+		source = new StringBuilder();
+		source.append("putint(i:int):void\n");
+		source.append("putchar(c:char):void\n\n");
+		source.append("tab:[64]int\n\n");
+
+		// The type graph: records and unions refer to the following types by
+		// pointers and the last one closes the cycle.
+		for (int t = 0; t < types; t++) {
+			final String next = "t" + ((t + 1) % types);
+			if (t % 2 == 0)
+				source.append("t").append(t).append(" = (a:int, b:char, c:^").append(next).append(", d:[4]int)\n");
+			else
+				source.append("t").append(t).append(" = {a:int, b:char, c:^").append(next).append("}\n");
+			source.append("g").append(t).append(":t").append(t).append("\n");
+		}
+		for (int r = 0; r < recTypes; r++) {
+			source.append("r").append(r).append(" = (val:int, next:^r").append(r).append(")\n");
+			source.append("h").append(r).append(":r").append(r).append("\n");
+			source.append("p").append(r).append(":^r").append(r).append("\n");
+		}
+		source.append("\n");
+
+		for (int f = 0; f < functions; f++)
+			function("f" + f, 1, 0);
+
+		source.append("main():int=\n");
+		source.append("\t{\n");
+		source.append("\t\ts=0;\n");
+		for (int r = 0; r < recTypes; r++)
+			source.append("\t\th").append(r).append(".next=^h").append(r).append(";\n");
+		for (int f = 0; f < functions; f++)
+			source.append("\t\ts=s+f").append(f).append("(").append(f % 50 + 10).append(",^tab);\n");
+		source.append("\t\tputint(s);putchar('\\n');\n");
+		source.append("\t\treturn 0;\n");
+		source.append("\t}\n");
+		source.append("\t{s:int}\n");
+		return source.toString();
+	}
+
+	/**
+	 * Generates a function and its inner functions.
+	 *
+	 * @param name   The name of the function.
+	 * @param indent The indentation.
+	 * @param depth  The depth of the function within its top-level function.
+	 */
+	private void function(final String name, final int indent, final int depth) {
+		final String tabs = "\t".repeat(indent);
+		final boolean inner = depth < nesting;
+		final String innerName = name + "_" + (depth + 1);
+		source.append(tabs.substring(1)).append(name).append("(n:int,a:^[64]int):int=\n");
+		source.append(tabs).append("{\n");
+		source.append(tabs).append("\ts=").append(random.nextInt(100)).append(";\n");
+		for (int b = 0; b < blocks; b++)
+			block(tabs + "\t", b);
+		if (inner)
+			source.append(tabs).append("\ts=s+").append(innerName).append("(n-1,a);\n");
+		source.append(tabs).append("\treturn s;\n");
+		source.append(tabs).append("}\n");
+		source.append(tabs).append("{\n");
+		source.append(tabs).append("\ts:int i:int");
+		for (int v = 0; v < liveTemps; v++)
+			source.append(" v").append(v).append(":int");
+		source.append("\n");
+		if (inner)
+			function(innerName, indent + 2, depth + 1);
+		source.append(tabs).append("}\n\n");
+	}
+
+	/**
+	 * Generates a basic block: a conditional or a loop with its body.
+	 *
+	 * @param tabs  The indentation.
+	 * @param block The number of the block within its function.
+	 */
+	private void block(final String tabs, final int block) {
+		if (block % 2 == 0)
+			source.append(tabs).append("if ").append(expr(1)).append(">n then {\n");
+		else {
+			source.append(tabs).append("i=0;\n");
+			source.append(tabs).append("while i<n:{\n");
+		}
+
+		// Values that stay alive until the end of the block.
+		for (int v = 0; v < liveTemps; v++)
+			source.append(tabs).append("\tv").append(v).append("=").append(expr(exprDepth)).append(";\n");
+		if (types > 0) {
+			final int t = random.nextInt(types);
+			source.append(tabs).append("\tg").append(t).append(".a=").append(expr(exprDepth)).append(";\n");
+			source.append(tabs).append("\tg").append(t).append(".c=g").append(t).append(".c;\n");
+			source.append(tabs).append("\ts=s+g").append(t).append(".a;\n");
+		}
+		if (recTypes > 0) {
+			final int r = random.nextInt(recTypes);
+			source.append(tabs).append("\th").append(r).append(".val=h").append(r).append(".val+s;\n");
+			source.append(tabs).append("\tp").append(r).append("=h").append(r).append(".next;\n");
+			source.append(tabs).append("\th").append(r).append(".next=p").append(r).append(";\n");
+			source.append(tabs).append("\ts=s+p").append(r).append("^.val;\n");
+		}
+		source.append(tabs).append("\ts=s");
+		for (int v = 0; v < liveTemps; v++)
+			source.append(v % 2 == 0 ? "+v" : "-v").append(v);
+		source.append(";\n");
+
+		if (block % 2 == 0)
+			source.append(tabs).append("} else s=s-").append(block + 1).append(";\n");
+		else {
+			source.append(tabs).append("\ti=i+1;\n");
+			source.append(tabs).append("}\n");
+		}
+	}
+
+	/**
+	 * Generates an integer expression.
+	 *
+	 * @param depth The depth of the expression tree.
+	 * @return The expression.
+	 */
+	private String expr(final int depth) {
+		if (depth <= 1) {
+			return switch (random.nextInt(5)) {
+			case 0 -> Integer.toString(random.nextInt(1000));
+			case 1 -> "s";
+			case 2 -> "n";
+			case 3 -> "a^[" + random.nextInt(64) + "]";
+			default -> "tab[i%64]";
+			};
+		}
+		return switch (random.nextInt(5)) {
+		case 0 -> "(" + expr(depth - 1) + "+" + expr(depth - 1) + ")";
+		case 1 -> "(" + expr(depth - 1) + "-" + expr(depth - 1) + ")";
+		case 2 -> "(" + expr(depth - 1) + "*" + expr(depth - 1) + ")";
+		case 3 -> "(" + expr(depth - 1) + "/" + (random.nextInt(9) + 1) + ")";
+		default -> "(" + expr(depth - 1) + "%" + (random.nextInt(9) + 1) + ")";
+		};
+	}
+
+}
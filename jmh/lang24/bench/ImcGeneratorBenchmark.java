@@ -0,0 +1,22 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.imcgen.*;
+
+/**
+ * Intermediate code generation by {@link ImcGenerator}.
+ */
+public class ImcGeneratorBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("memory");
+	}
+
+	@Benchmark
+	public Object imcGenerator() {
+		return measure(() -> Abstr.tree.get().accept(new ImcGenerator(), null));
+	}
+
+}
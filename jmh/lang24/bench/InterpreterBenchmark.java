@@ -0,0 +1,53 @@
+package lang24.bench;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import lang24.*;
+import lang24.phase.abstr.*;
+import lang24.phase.imclin.*;
+
+/**
+ * Execution of the linearized intermediate code by {@link Interpreter}.
+ *
+ * Unlike phases, the interpreter does not modify the compilation, so the
+ * source is compiled once per trial and only the interpretation of
+ * {@code main} is measured. The sources are the programs in {@code prg} that
+ * run to completion without input, including the deeply recursive
+ * {@code recursion}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+	/** The source (see {@link Sources}). */
+	@Param({ "recursion", "bubblesort", "heapsort", "quicksort", "circle", "test" })
+	public String source;
+
+	/** The context of the compilation. */
+	private CompilationContext context;
+
+	/** Compiles the source up to (and including) linearization. */
+	@Setup(Level.Trial)
+	public void setup() {
+		final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		context = new CompilationContext(null, discard, discard);
+		context.setSource(Sources.load(source));
+		context.setIn(InputStream.nullInputStream());
+		// Compiling up to imclin would run the interpreter.
+		if (Compiler.compile(context, new String[] { "--src-file-name=" + source + ".lang24",
+				"--target-phase=imcgen" }) != 0)
+			throw new IllegalStateException("Cannot compile '" + source + "'.");
+		context.call(() -> Abstr.tree.get().accept(new ChunkGenerator(), null));
+	}
+
+	@Benchmark
+	public long interpreter() {
+		return context.call(() -> new Interpreter(ImcLin.dataChunks(), ImcLin.codeChunks()).run("_main"));
+	}
+
+}
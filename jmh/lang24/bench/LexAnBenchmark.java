@@ -0,0 +1,29 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.data.token.*;
+import lang24.phase.lexan.*;
+
+/**
+ * Lexical analysis: the token throughput of {@link LexAn}.
+ */
+public class LexAnBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("none");
+	}
+
+	@Benchmark
+	public int lexan() {
+		return measure(() -> {
+			int numTokens = 0;
+			try (final LexAn lexan = new LexAn()) {
+				while (lexan.lexer.nextToken().getType() != LocLogToken.EOF)
+					numTokens++;
+			}
+			return numTokens;
+		});
+	}
+
+}
@@ -0,0 +1,27 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.asmgen.*;
+import lang24.phase.livean.*;
+
+/**
+ * Liveness analysis by {@link LiveAn#analysis}.
+ */
+public class LiveAnBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("asmgen");
+	}
+
+	@Benchmark
+	public Object liveAn() {
+		return measure(() -> {
+			try (LiveAn liveAn = new LiveAn()) {
+				liveAn.analysis();
+			}
+			return AsmGen.codes.get();
+		});
+	}
+
+}
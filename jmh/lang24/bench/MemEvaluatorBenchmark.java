@@ -0,0 +1,28 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.memory.*;
+
+/**
+ * Memory layout: both passes of {@link MemEvaluator}.
+ */
+public class MemEvaluatorBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("seman");
+	}
+
+	@Benchmark
+	public Object memEvaluator() {
+		return measure(() -> {
+			final MemArgument memArgument = new MemArgument(0, 0);
+			memArgument.precedence = 1;
+			Abstr.tree.get().accept(new MemEvaluator(), memArgument);
+			memArgument.precedence = 2;
+			return Abstr.tree.get().accept(new MemEvaluator(), memArgument);
+		});
+	}
+
+}
@@ -0,0 +1,22 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.seman.*;
+
+/**
+ * Semantic analysis: name resolution by {@link NameResolver}.
+ */
+public class NameResolverBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("abstr");
+	}
+
+	@Benchmark
+	public Object nameResolver() {
+		return measure(() -> Abstr.tree.get().accept(new NameResolver(), null));
+	}
+
+}
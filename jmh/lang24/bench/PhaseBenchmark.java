@@ -0,0 +1,86 @@
+package lang24.bench;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import org.openjdk.jmh.annotations.*;
+import lang24.*;
+
+/**
+ * The common part of all phase benchmarks.
+ *
+ * Phases modify the state of a compilation, so every invocation of a benchmark
+ * gets a fresh {@link CompilationContext} in which the source has already been
+ * compiled up to the phase being measured (see {@link #prepare}). Only the
+ * phase itself is measured, within that context (see {@link #measure}).
+ *
+ * Run with {@code ./gradlew jmh} (or {@code -Pbenchmarks=<regexp>} to select
+ * benchmarks); time and allocation rate ({@code -prof gc}) are reported per
+ * benchmark, i.e., per phase and source.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class PhaseBenchmark {
+
+	/**
+	 * The source (see {@link Sources}): the programs in {@code prg} the compiler
+	 * can compile and two generated programs.
+	 */
+	@Param({ "bubblesort", "circle", "exam1", "heapsort", "nekineki2", "queens", "quicksort", "str", "strings",
+			"strings2", "subarray_sum", "test", "generated:100", "generated:1000" })
+	public String source;
+
+	/** The number of registers available to the register allocator. */
+	@Param({ "8" })
+	public int numRegs;
+
+	/** The source code. */
+	private String sourceCode;
+
+	/** The context of the compilation the current invocation works in. */
+	protected CompilationContext context;
+
+	/** A stream discarding diagnostics. */
+	private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+	/** Loads the source code. */
+	@Setup(Level.Trial)
+	public void loadSource() {
+		sourceCode = Sources.load(source);
+	}
+
+	/**
+	 * Compiles the source up to (and including) the specified phase in a fresh
+	 * compilation context.
+	 *
+	 * @param targetPhase The last phase to be performed (or {@code none} if only
+	 *                    the command line options are to be set).
+	 */
+	protected void prepare(final String targetPhase) {
+		context = new CompilationContext(null, discard, discard);
+		context.setSource(sourceCode);
+		context.setIn(InputStream.nullInputStream());
+		context.keepAssemblyInMemory();
+		final int exitCode = Compiler.compile(context, new String[] { "--src-file-name=" + source + ".lang24",
+				"--target-phase=" + targetPhase, "--num-regs=" + numRegs });
+		if (exitCode != 0)
+			throw new IllegalStateException("Cannot compile '" + source + "' up to phase '" + targetPhase + "'.");
+	}
+
+	/**
+	 * Performs a part of a compilation within the context of the current
+	 * invocation.
+	 *
+	 * @param <Result> The result of the work.
+	 * @param work     The work.
+	 * @return The result of the work.
+	 */
+	protected <Result> Result measure(final Supplier<Result> work) {
+		return context.call(work);
+	}
+
+}
@@ -0,0 +1,25 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.end.*;
+
+/**
+ * The final phase: emitting the assembly by {@link PutItAllTogether} (kept in
+ * memory rather than written out).
+ */
+public class PutItAllTogetherBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("regall");
+	}
+
+	@Benchmark
+	public String putItAllTogether() {
+		return measure(() -> {
+			new PutItAllTogether().start();
+			return context.assembly();
+		});
+	}
+
+}
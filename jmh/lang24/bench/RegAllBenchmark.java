@@ -0,0 +1,30 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.regall.*;
+
+/**
+ * Register allocation by {@link RegAll#allocate}.
+ */
+public class RegAllBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("livean");
+		context.call(() -> {
+			RegAll.K.set(numRegs);
+			return null;
+		});
+	}
+
+	@Benchmark
+	public Object regAll() {
+		return measure(() -> {
+			try (RegAll regAll = new RegAll()) {
+				regAll.allocate();
+			}
+			return RegAll.tempToReg.get();
+		});
+	}
+
+}
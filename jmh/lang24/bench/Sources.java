@@ -0,0 +1,42 @@
+package lang24.bench;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Sources the benchmarks are run against.
+ *
+ * A source is either the name of a program in the {@code prg} directory
+ * (without the {@code .lang24} suffix) or {@code generated:}<i>n</i> for a
+ * generated program with <i>n</i> functions (see {@link Generator}).
+ */
+public class Sources {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Sources() {
+	}
+
+	/** The prefix of generated sources. */
+	public static final String GENERATED = "generated:";
+
+	/**
+	 * Returns the source code of a source.
+	 *
+	 * @param source The source.
+	 * @return The source code.
+	 */
+	public static String load(final String source) {
+		if (source.startsWith(GENERATED)) {
+			final Generator generator = new Generator();
+			generator.functions = Integer.parseInt(source.substring(GENERATED.length()));
+			return generator.generate();
+		}
+		final Path path = Paths.get(System.getProperty("lang24.prg", "prg"), source + ".lang24");
+		try {
+			return Files.readString(path);
+		} catch (final IOException ex) {
+			throw new UncheckedIOException("Cannot read '" + path + "'.", ex);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package lang24.bench;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import lang24.*;
+import lang24.phase.abstr.*;
+import lang24.phase.asmgen.*;
+import lang24.phase.end.*;
+import lang24.phase.imcgen.*;
+import lang24.phase.imclin.*;
+import lang24.phase.lexan.*;
+import lang24.phase.livean.*;
+import lang24.phase.memory.*;
+import lang24.phase.regall.*;
+import lang24.phase.seman.*;
+import lang24.phase.synan.*;
+
+/**
+ * Compiles generated programs (see {@link Generator}) across a size sweep of
+ * one knob and writes the wall time and the peak heap of every phase as CSV.
+ *
+ * The driver should be run as
+ *
+ * <p>
+ * <code>$ java lang24.bench.Sweep --knob=</code><i>knob</i>
+ * <code>--values=</code><i>n1,n2,...</i> [<code>--repeat=</code><i>n</i>]
+ * [<code>--num-regs=</code><i>n</i>] [<code>--out=</code><i>file</i>]
+ * [<code>--</code><i>knob</i><code>=</code><i>n</i> ...]
+ * </p>
+ *
+ * where the knob being swept takes each of the values in turn and the other
+ * knobs keep their defaults unless set explicitly. Every program is compiled
+ * {@code --repeat} times (3 by default); the shortest time and the largest
+ * peak heap of each phase are reported. The CSV (written to the standard
+ * output unless {@code --out} is given) has one line per program and phase:
+ *
+ * <p>
+ * <code>knob,value,lines,phase,wall_ms,peak_heap_bytes</code>
+ * </p>
+ */
+public class Sweep {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Sweep() {
+	}
+
+	/** A phase (or a part of it) being measured. */
+	private record Step(String phase, Runnable work) {
+	}
+
+	/** The memory pools of the heap. */
+	private static final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+			.filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+
+	/**
+	 * The driver's entry point.
+	 *
+	 * @param args Command line arguments (see {@link Sweep}).
+	 * @throws IOException If the CSV cannot be written.
+	 */
+	public static void main(final String[] args) throws IOException {
+		final Generator generator = new Generator();
+		String knob = "functions";
+		int[] values = { 10, 20, 40, 80, 160 };
+		int repeat = 3;
+		int numRegs = 8;
+		String out = null;
+		for (final String arg : args) {
+			final String name = arg.replaceFirst("=.*", "");
+			final String value = arg.replaceFirst("^[^=]*=", "");
+			switch (name) {
+			case "--knob" -> knob = value;
+			case "--values" -> values = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+			case "--repeat" -> repeat = Integer.parseInt(value);
+			case "--num-regs" -> numRegs = Integer.parseInt(value);
+			case "--out" -> out = value;
+			default -> generator.set(name.replaceFirst("^--", ""), Integer.parseInt(value));
+			}
+		}
+		generator.get(knob); // Fails on an unknown knob.
+
+		try (PrintWriter csv = out == null ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(out))) {
+			csv.println("knob,value,lines,phase,wall_ms,peak_heap_bytes");
+			for (final int value : values) {
+				generator.set(knob, value);
+				final String source = generator.generate();
+				final long lines = source.lines().count();
+
+				final LinkedHashMap<String, long[]> results = new LinkedHashMap<String, long[]>();
+				for (int r = 0; r < repeat; r++) {
+					for (final Map.Entry<String, long[]> measured : compile(source, numRegs).entrySet()) {
+						final long[] result = results.get(measured.getKey());
+						if (result == null)
+							results.put(measured.getKey(), measured.getValue());
+						else {
+							result[0] = Math.min(result[0], measured.getValue()[0]);
+							result[1] = Math.max(result[1], measured.getValue()[1]);
+						}
+					}
+				}
+				for (final Map.Entry<String, long[]> result : results.entrySet())
+					csv.printf(Locale.ROOT, "%s,%d,%d,%s,%.3f,%d%n", knob, value, lines, result.getKey(),
+							result.getValue()[0] / 1e6, result.getValue()[1]);
+				csv.flush();
+			}
+		}
+	}
+
+	/**
+	 * Compiles a program phase by phase.
+	 *
+	 * @param source  The source code.
+	 * @param numRegs The number of registers.
+	 * @return The wall time (in nanoseconds) and the peak heap (in bytes) of each
+	 *         phase.
+	 */
+	private static LinkedHashMap<String, long[]> compile(final String source, final int numRegs) {
+		final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		final CompilationContext context = new CompilationContext(null, discard, discard);
+		context.setSource(source);
+		context.setIn(InputStream.nullInputStream());
+		context.keepAssemblyInMemory();
+		if (Compiler.compile(context, new String[] { "--src-file-name=sweep.lang24", "--target-phase=none",
+				"--num-regs=" + numRegs }) != 0)
+			throw new IllegalStateException("Cannot set up the compilation.");
+
+		final List<Step> steps = List.of( //
+				new Step("synan", () -> {
+					try (LexAn lexan = new LexAn(); SynAn synan = new SynAn(lexan)) {
+						Abstr.tree.set(synan.parser.source().ast);
+					}
+				}), //
+				new Step("seman.names", () -> Abstr.tree.get().accept(new NameResolver(), null)), //
+				new Step("seman.lvals", () -> Abstr.tree.get().accept(new LValResolver(), null)), //
+				new Step("seman.types", () -> Abstr.tree.get().accept(new TypeResolver(), null)), //
+				new Step("memory", () -> {
+					final MemArgument memArgument = new MemArgument(0, 0);
+					memArgument.precedence = 1;
+					Abstr.tree.get().accept(new MemEvaluator(), memArgument);
+					memArgument.precedence = 2;
+					Abstr.tree.get().accept(new MemEvaluator(), memArgument);
+				}), //
+				new Step("imcgen", () -> Abstr.tree.get().accept(new ImcGenerator(), null)), //
+				new Step("imclin", () -> Abstr.tree.get().accept(new ChunkGenerator(), null)), //
+				new Step("asmgen", () -> {
+					try (AsmGen asmgen = new AsmGen()) {
+						asmgen.genAsmCodes();
+					}
+				}), //
+				new Step("livean", () -> {
+					try (LiveAn liveAn = new LiveAn()) {
+						liveAn.analysis();
+					}
+				}), //
+				new Step("regall", () -> {
+					RegAll.K.set(numRegs);
+					try (RegAll regAll = new RegAll()) {
+						regAll.allocate();
+					}
+				}), //
+				new Step("end", () -> new PutItAllTogether().start()));
+
+		final LinkedHashMap<String, long[]> results = new LinkedHashMap<String, long[]>();
+		for (final Step step : steps) {
+			System.gc();
+			heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+			final long start = System.nanoTime();
+			context.call(() -> {
+				step.work().run();
+				return null;
+			});
+			final long time = System.nanoTime() - start;
+			long peak = 0;
+			for (final MemoryPoolMXBean pool : heapPools)
+				peak += pool.getPeakUsage().getUsed();
+			results.put(step.phase(), new long[] { time, peak });
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,27 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.lexan.*;
+import lang24.phase.synan.*;
+
+/**
+ * Syntax analysis: parsing by {@link SynAn} (including lexical analysis and
+ * the construction of the abstract syntax tree).
+ */
+public class SynAnBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("none");
+	}
+
+	@Benchmark
+	public Object synan() {
+		return measure(() -> {
+			try (LexAn lexan = new LexAn(); SynAn synan = new SynAn(lexan)) {
+				return synan.parser.source().ast;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,27 @@
+package lang24.bench;
+
+import org.openjdk.jmh.annotations.*;
+import lang24.phase.abstr.*;
+import lang24.phase.seman.*;
+
+/**
+ * Semantic analysis: type resolution and type checking by
+ * {@link TypeResolver}.
+ */
+public class TypeResolverBenchmark extends PhaseBenchmark {
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		prepare("abstr");
+		context.call(() -> {
+			Abstr.tree.get().accept(new NameResolver(), null);
+			return Abstr.tree.get().accept(new LValResolver(), null);
+		});
+	}
+
+	@Benchmark
+	public Object typeResolver() {
+		return measure(() -> Abstr.tree.get().accept(new TypeResolver(), null));
+	}
+
+}
@@ -0,0 +1,118 @@
+package lang24;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A compilation of a single source with the assembly kept in memory.
+ *
+ * Each compilation is performed within its own {@link CompilationContext}, so
+ * any number of compilations can be performed concurrently within the same
+ * virtual machine (see {@link #compileAll}).
+ */
+public class Compilation {
+
+	/**
+	 * The result of a compilation.
+	 *
+	 * @param name        The name of the source.
+	 * @param exitCode    The exit code of the compiler.
+	 * @param assembly    The generated assembly (or {@code null} if it has not
+	 *                    been generated).
+	 * @param diagnostics Everything the compiler printed out.
+	 */
+	public record Result(String name, int exitCode, String assembly, String diagnostics) {
+	}
+
+	/** The name of the source. */
+	private final String name;
+
+	/** The source code (or {@code null} if it is read from {@link #name}). */
+	private final CharSequence source;
+
+	/** The command line options (without the source file name). */
+	private final String[] opts;
+
+	/**
+	 * Prepares a compilation of the source code given as a string.
+	 *
+	 * @param source The source code.
+	 * @param opts   Command line options (see {@link lang24}).
+	 */
+	public Compilation(final CharSequence source, final String... opts) {
+		this.name = "source.lang24";
+		this.source = source;
+		this.opts = opts;
+	}
+
+	/**
+	 * Prepares a compilation of a source file.
+	 *
+	 * @param source The source file.
+	 * @param opts   Command line options (see {@link lang24}).
+	 */
+	public Compilation(final Path source, final String... opts) {
+		this.name = source.toString();
+		this.source = null;
+		this.opts = opts;
+	}
+
+	/**
+	 * Performs the compilation in the current thread.
+	 *
+	 * @return The result of the compilation.
+	 */
+	public Result compile() {
+		final ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+		final PrintStream stream = new PrintStream(diagnostics, true, StandardCharsets.UTF_8);
+		final CompilationContext context = new CompilationContext(null, stream, stream);
+		context.setIn(new ByteArrayInputStream(new byte[0]));
+		if (source != null)
+			context.setSource(source);
+		context.keepAssemblyInMemory();
+
+		final String[] args = Arrays.copyOf(opts, opts.length + 1);
+		args[opts.length] = "--src-file-name=" + name;
+		int exitCode;
+		try {
+			exitCode = Compiler.compile(context, args);
+		} catch (final Throwable throwable) {
+			throwable.printStackTrace(stream);
+			exitCode = 1;
+		}
+		return new Result(name, exitCode, context.assembly(), diagnostics.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Compiles a number of source files concurrently.
+	 *
+	 * @param sources The source files.
+	 * @param threads The number of threads.
+	 * @param opts    Command line options used for every source file (see
+	 *                {@link lang24}).
+	 * @return The results of compilations in the order of source files.
+	 */
+	public static List<Result> compileAll(final List<Path> sources, final int threads, final String... opts) {
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (final Path source : sources)
+				futures.add(executor.submit(() -> new Compilation(source, opts).compile()));
+			final List<Result> results = new ArrayList<Result>();
+			for (final Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (final InterruptedException | ExecutionException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package lang24;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * The state of a single compilation.
+ *
+ * Everything a compilation produces or counts (the command line options, the
+ * abstract syntax tree, attributes, intermediate and machine code, counters of
+ * nodes, temporary variables and labels, ...) is kept in {@link Local}
+ * variables, i.e., separately for each compilation. A compilation is performed
+ * by running the compiler within its context (see {@link #call}), so several
+ * compilations can be performed at the same time in different threads.
+ *
+ * Code that is run outside of any compilation context uses the default
+ * context.
+ */
+public class CompilationContext {
+
+	/** The default context. */
+	private static final CompilationContext defaultContext = new CompilationContext(null, null, null);
+
+	/** The context of the current thread (or {@code null} for the default context). */
+	private static final ThreadLocal<CompilationContext> currentContext = new ThreadLocal<CompilationContext>();
+
+	/**
+	 * The directory relative file names are resolved against (or {@code null} if
+	 * the current working directory is used).
+	 */
+	private final File workDir;
+
+	/** The standard output (or {@code null} if {@link System#out} is used). */
+	private final PrintStream out;
+
+	/** The standard error (or {@code null} if {@link System#err} is used). */
+	private final PrintStream err;
+
+	/** The standard input (or {@code null} if {@link System#in} is used). */
+	private InputStream in = null;
+
+	/**
+	 * The source code (or {@code null} if the source code is read from the source
+	 * file).
+	 */
+	private CharSequence source = null;
+
+	/** Whether the assembly is kept in memory rather than written out. */
+	private boolean assemblyInMemory = false;
+
+	/** The generated assembly (if kept in memory). */
+	private String assembly = null;
+
+	/** Values of context-local variables. */
+	private final ConcurrentHashMap<Local<?>, Object> values = new ConcurrentHashMap<Local<?>, Object>();
+
+	/**
+	 * Constructs a new compilation context.
+	 *
+	 * @param workDir The directory relative file names are resolved against (or
+	 *                {@code null} if the current working directory is used).
+	 * @param out     The standard output (or {@code null} if {@link System#out}
+	 *                is used).
+	 * @param err     The standard error (or {@code null} if {@link System#err}
+	 *                is used).
+	 */
+	public CompilationContext(final File workDir, final PrintStream out, final PrintStream err) {
+		this.workDir = workDir;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Returns the context of the current thread.
+	 *
+	 * @return The context of the current thread.
+	 */
+	public static CompilationContext current() {
+		final CompilationContext context = currentContext.get();
+		return context == null ? defaultContext : context;
+	}
+
+	/**
+	 * Performs a computation within this context in the current thread.
+	 *
+	 * @param <Result> The result of the computation.
+	 * @param work     The computation.
+	 * @return The result of the computation.
+	 */
+	public <Result> Result call(final Supplier<Result> work) {
+		final CompilationContext outer = currentContext.get();
+		currentContext.set(this);
+		try {
+			return work.get();
+		} finally {
+			currentContext.set(outer);
+		}
+	}
+
+	/**
+	 * Returns the directory relative file names are resolved against.
+	 *
+	 * @return The directory (or {@code null} if the current working directory is
+	 *         used).
+	 */
+	public File workDir() {
+		return workDir;
+	}
+
+	/**
+	 * Returns the standard output of the compilation.
+	 *
+	 * @return The standard output.
+	 */
+	public PrintStream out() {
+		return out == null ? System.out : out;
+	}
+
+	/**
+	 * Returns the standard error of the compilation.
+	 *
+	 * @return The standard error.
+	 */
+	public PrintStream err() {
+		return err == null ? System.err : err;
+	}
+
+	/**
+	 * Returns the standard input of the compilation.
+	 *
+	 * @return The standard input.
+	 */
+	public InputStream in() {
+		return in == null ? System.in : in;
+	}
+
+	/**
+	 * Sets the standard input of the compilation.
+	 *
+	 * @param in The standard input.
+	 */
+	public void setIn(final InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Sets the source code so that it is not read from the source file.
+	 *
+	 * @param source The source code.
+	 */
+	public void setSource(final CharSequence source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns the source code unless it is to be read from the source file.
+	 *
+	 * @return The source code (or {@code null}).
+	 */
+	public CharSequence source() {
+		return source;
+	}
+
+	/**
+	 * Requests the generated assembly to be kept in memory (see
+	 * {@link #assembly()}) instead of being written out.
+	 */
+	public void keepAssemblyInMemory() {
+		assemblyInMemory = true;
+	}
+
+	/**
+	 * Returns whether the generated assembly is to be kept in memory.
+	 *
+	 * @return {@code true} if the assembly is kept in memory.
+	 */
+	public boolean assemblyInMemory() {
+		return assemblyInMemory;
+	}
+
+	/**
+	 * Stores the generated assembly.
+	 *
+	 * @param assembly The generated assembly.
+	 */
+	public void setAssembly(final String assembly) {
+		this.assembly = assembly;
+	}
+
+	/**
+	 * Returns the generated assembly if it is kept in memory.
+	 *
+	 * @return The generated assembly (or {@code null} if it has not been
+	 *         generated).
+	 */
+	public String assembly() {
+		return assembly;
+	}
+
+	/**
+	 * A context-local variable: each compilation context has its own,
+	 * independently initialized copy of the variable.
+	 *
+	 * @param <Value> The type of the variable.
+	 */
+	public static class Local<Value> {
+
+		/** The initial value of the variable. */
+		private final Supplier<? extends Value> initial;
+
+		/**
+		 * Constructs a new context-local variable.
+		 *
+		 * @param initial The initial value of the variable.
+		 */
+		public Local(final Supplier<? extends Value> initial) {
+			this.initial = initial;
+		}
+
+		/**
+		 * Returns the value of the variable in the current context.
+		 *
+		 * @return The value of the variable.
+		 */
+		@SuppressWarnings("unchecked")
+		public Value get() {
+			return (Value) current().values.computeIfAbsent(this, __ -> initial.get());
+		}
+
+		/**
+		 * Sets the value of the variable in the current context.
+		 *
+		 * @param value The value of the variable.
+		 */
+		public void set(final Value value) {
+			if (value == null)
+				current().values.remove(this);
+			else
+				current().values.put(this, value);
+		}
+
+	}
+
+}
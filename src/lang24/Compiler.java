@@ -5,9 +5,12 @@ import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.util.*;
 import lang24.common.report.*;
+import lang24.phase.Jobs;
+import lang24.phase.Stats;
 import lang24.phase.end.PutItAllTogether;
 import lang24.phase.lexan.*;
 import lang24.phase.livean.LiveAn;
+import lang24.phase.regall.InterferenceGraph;
 import lang24.phase.regall.RegAll;
 import lang24.phase.synan.*;
 import lang24.phase.abstr.*;
@@ -33,12 +36,21 @@ public class Compiler {
 	private static final Vector<String> phaseNames = new Vector<String>(
 			Arrays.asList("none", "all", "lexan", "synan", "abstr", "seman", "memory", "imcgen", "imclin", "asmgen", "livean", "regall"));
 
+	/** All valid interpreters of the linearized intermediate code. */
+	private static final Vector<String> interpreterNames = new Vector<String>(Arrays.asList("tree", "closure", "jvm", "none"));
+
 	/** Names of command line options. */
 	private static final HashSet<String> cmdLineOptNames = new HashSet<String>(
-			Arrays.asList("--src-file-name", "--dst-file-name", "--target-phase", "--logged-phase", "--xml", "--xsl", "--num-regs"));
+			Arrays.asList("--src-file-name", "--dst-file-name", "--target-phase", "--logged-phase", "--xml", "--xsl", "--num-regs",
+					"--regall", "--regall-linear-limit", "--regall-matrix-limit", "--jobs", "--stats", "--interpreter", "--profile",
+					"--trace"));
 
-	/** Values of command line options indexed by their command line option name. */
-	private static final HashMap<String, String> cmdLineOptValues = new HashMap<String, String>();
+	/**
+	 * Values of command line options indexed by their command line option name (in
+	 * the current compilation).
+	 */
+	private static final CompilationContext.Local<HashMap<String, String>> cmdLineOptValues = new CompilationContext.Local<HashMap<String, String>>(
+			HashMap::new);
 
 	/**
 	 * Returns the value of a command line option.
@@ -47,7 +59,20 @@ public class Compiler {
 	 * @return Command line option value.
 	 */
 	public static final String cmdLineOptValue(final String cmdLineOptName) {
-		return cmdLineOptValues.get(cmdLineOptName);
+		return cmdLineOptValues.get().get(cmdLineOptName);
+	}
+
+	/**
+	 * Returns a file named relative to the working directory of the current
+	 * compilation.
+	 * 
+	 * @param fileName The file name.
+	 * @return The file.
+	 */
+	public static final File file(final String fileName) {
+		final File workDir = CompilationContext.current().workDir();
+		final File file = new File(fileName);
+		return (workDir == null || file.isAbsolute()) ? file : new File(workDir, fileName);
 	}
 
 	/**
@@ -56,6 +81,32 @@ public class Compiler {
 	 * @param opts Command line arguments (see {@link lang24}).
 	 */
 	public static void main(final String[] opts) {
+		final int exitCode = compile(new CompilationContext(null, null, null), opts);
+		if (exitCode != 0)
+			System.exit(exitCode);
+	}
+
+	/**
+	 * Compiles a single source file by running all phases one after another
+	 * within the specified compilation context.
+	 * 
+	 * @param context The compilation context (should not be reused).
+	 * @param opts    Command line arguments (see {@link lang24}).
+	 * @return The exit code of the compiler.
+	 */
+	public static int compile(final CompilationContext context, final String[] opts) {
+		return context.call(() -> compile(opts));
+	}
+
+	/**
+	 * Compiles a single source file within the current compilation context.
+	 * 
+	 * @param opts Command line arguments (see {@link lang24}).
+	 * @return The exit code of the compiler.
+	 */
+	private static int compile(final String[] opts) {
+		final HashMap<String, String> cmdLineOptValues = Compiler.cmdLineOptValues.get();
+		int exitCode = 1;
 		try {
 			Report.info("This is LANG'24 compiler:");
 
@@ -79,6 +130,14 @@ public class Compiler {
 							Report.warning("Illegal phase specification in '" + opts[optc] + "' ignored.");
 							continue;
 						}
+						if (cmdLineOptName.equals("--interpreter") && (!interpreterNames.contains(cmdLineOptValue))) {
+							Report.warning("Illegal interpreter specification in '" + opts[optc] + "' ignored.");
+							continue;
+						}
+						if (cmdLineOptName.equals("--regall") && (!RegAll.allocatorNames.contains(cmdLineOptValue))) {
+							Report.warning("Illegal register allocator specification in '" + opts[optc] + "' ignored.");
+							continue;
+						}
 
 						cmdLineOptValues.put(cmdLineOptName, cmdLineOptValue);
 					} else {
@@ -102,7 +161,7 @@ public class Compiler {
 				try {
 					// Source file has not been specified, so consider using the last modified
 					// lang24 file in the working directory.
-					final String currWorkDir = new File(".").getCanonicalPath();
+					final String currWorkDir = file(".").getCanonicalPath();
 					FileTime latestTime = FileTime.fromMillis(0);
 					Path latestPath = null;
 					for (final Path path : java.nio.file.Files.walk(Paths.get(currWorkDir))
@@ -127,13 +186,16 @@ public class Compiler {
 			}
 			if (cmdLineOptValues.get("--dst-file-name") == null) {
 				cmdLineOptValues.put("--dst-file-name",
-						// TODO: Insert the appropriate file suffix.
-						cmdLineOptValues.get("--src-file-name").replaceFirst("\\.[^./]*$", "") + "");
+						cmdLineOptValues.get("--src-file-name").replaceFirst("\\.[^./]*$", "") + ".mms");
 			}
 			if (cmdLineOptValues.get("--target-phase") == null)
 				cmdLineOptValues.put("--target-phase", "all");
 			if (cmdLineOptValues.get("--logged-phase") == null)
 				cmdLineOptValues.put("--logged-phase", "none");
+			if (cmdLineOptValues.get("--interpreter") == null)
+				cmdLineOptValues.put("--interpreter", "tree");
+			if (cmdLineOptValues.get("--stats") != null)
+				Stats.start(cmdLineOptValues.get("--stats"), cmdLineOptValues.get("--src-file-name"));
 
 			// Carry out the compilation phase by phase.
 			while (true) {
@@ -152,30 +214,31 @@ public class Compiler {
 
 				// Syntax analysis.
 				try (LexAn lexan = new LexAn(); SynAn synan = new SynAn(lexan)) {
-					SynAn.tree = synan.parser.source();
-					synan.log(SynAn.tree);
+					SynAn.tree.set(synan.parser.source());
+					Stats.size("astNodes", lang24.data.ast.tree.AstNode.numNodes());
+					synan.log(SynAn.tree.get());
 				}
 				if (cmdLineOptValues.get("--target-phase").equals("synan"))
 					break;
 
 				// Abstract syntax.
 				try (Abstr abstr = new Abstr()) {
-					Abstr.tree = SynAn.tree.ast;
-					SynAn.tree = null;
+					Abstr.tree.set(SynAn.tree.get().ast);
+					SynAn.tree.set(null);
 					AbstrLogger logger = new AbstrLogger(abstr.logger);
-					Abstr.tree.accept(logger, "AstDefn");
+					Abstr.tree.get().accept(logger, "AstDefn");
 				}
 				if (cmdLineOptValues.get("--target-phase").equals("abstr"))
 					break;
 
 				// Semantic analysis.
 				try (SemAn seman = new SemAn()) {
-					Abstr.tree.accept(new NameResolver(), null);
-					Abstr.tree.accept(new LValResolver(), null);
-					Abstr.tree.accept(new TypeResolver(), null);
+					Abstr.tree.get().accept(new NameResolver(), null);
+					Abstr.tree.get().accept(new LValResolver(), null);
+					Abstr.tree.get().accept(new TypeResolver(), null);
 					AbstrLogger logger = new AbstrLogger(seman.logger);
 					logger.addSubvisitor(new SemAnLogger(seman.logger));
-					Abstr.tree.accept(logger, "AstDefn");
+					Abstr.tree.get().accept(logger, "AstDefn");
 				}
 				if (cmdLineOptValues.get("--target-phase").equals("seman"))
 					break;
@@ -184,26 +247,26 @@ public class Compiler {
 				try (Memory memory = new Memory()) {
 					MemArgument memArgument = new MemArgument(0, 0);
 					memArgument.precedence = 1;
-					Abstr.tree.accept(new MemEvaluator(), memArgument);
+					Abstr.tree.get().accept(new MemEvaluator(), memArgument);
 
 					memArgument.precedence = 2;
-					Abstr.tree.accept(new MemEvaluator(), memArgument);
+					Abstr.tree.get().accept(new MemEvaluator(), memArgument);
 					AbstrLogger logger = new AbstrLogger(memory.logger);
 					logger.addSubvisitor(new SemAnLogger(memory.logger));
 					logger.addSubvisitor(new MemLogger(memory.logger));
-					Abstr.tree.accept(logger, "AstDefn");
+					Abstr.tree.get().accept(logger, "AstDefn");
 				}
 				if (cmdLineOptValues.get("--target-phase").equals("memory"))
 					break;
 
 				// Intermediate code generation.
 				try (ImcGen imcGen = new ImcGen()) {
-					Abstr.tree.accept(new ImcGenerator(), null);
+					Abstr.tree.get().accept(new ImcGenerator(), null);
 					AbstrLogger logger = new AbstrLogger(imcGen.logger);
 					logger.addSubvisitor(new SemAnLogger(imcGen.logger));
 					logger.addSubvisitor(new MemLogger(imcGen.logger));
 					logger.addSubvisitor(new ImcLogger(imcGen.logger));
-					Abstr.tree.accept(logger, "AstDefn");
+					Abstr.tree.get().accept(logger, "AstDefn");
 				}
 
 				if (cmdLineOptValues.get("--target-phase").equals("imcgen"))
@@ -211,22 +274,63 @@ public class Compiler {
 
 				// Linearization of intermediate code.
 				try (ImcLin imclin = new ImcLin()) {
-					Abstr.tree.accept(new ChunkGenerator(), null);
+					Abstr.tree.get().accept(new ChunkGenerator(), null);
+					for (lang24.data.lin.LinCodeChunk codeChunk : ImcLin.codeChunks())
+						Stats.size(codeChunk.frame.label.name, "imcStmts", codeChunk.stmts().size());
 					imclin.log();
 				}
 
 				// Interpreter
 				if (cmdLineOptValues.get("--target-phase").equals("imclin")) {
+					if (cmdLineOptValues.get("--interpreter").equals("none"))
+						break;
+					Profiler profiler = null;
+					Tracer tracer = null;
+					boolean exited = false;
+					if (cmdLineOptValues.get("--profile") != null) {
+						if (cmdLineOptValues.get("--interpreter").equals("tree"))
+							profiler = new Profiler(ImcLin.codeChunks());
+						else
+							Report.warning("Profiling is supported by the tree interpreter only.");
+					}
+					if (cmdLineOptValues.get("--trace") != null) {
+						if (cmdLineOptValues.get("--interpreter").equals("tree"))
+							tracer = new Tracer(ImcLin.codeChunks(),
+									Integer.parseInt(cmdLineOptValues.get("--trace")));
+						else
+							Report.warning("Tracing is supported by the tree interpreter only.");
+					}
 					try {
-						Interpreter interpreter = new Interpreter(ImcLin.dataChunks(), ImcLin.codeChunks());
-						System.out.println("EXIT CODE: " + interpreter.run("_main"));
+						final long result = switch (cmdLineOptValues.get("--interpreter")) {
+						case "closure" ->
+							new ClosureInterpreter(ImcLin.dataChunks(), ImcLin.codeChunks()).run("_main");
+						case "jvm" -> new JvmInterpreter(ImcLin.dataChunks(), ImcLin.codeChunks()).run("_main");
+						default -> {
+							final Interpreter interpreter = new Interpreter(ImcLin.dataChunks(),
+									ImcLin.codeChunks(), profiler);
+							interpreter.trace(tracer);
+							yield interpreter.run("_main");
+						}
+						};
+						CompilationContext.current().out().println("EXIT CODE: " + result);
+					} catch (ProgramExit e) {
+						exited = true;
 					} catch (Throwable e) {
 						Report.warning(e.getMessage());
 					}
+					if (profiler != null)
+						profiler.write(cmdLineOptValues.get("--profile"), Abstr.tree.get());
+					// The program called _exit: so does the compiler.
+					if (exited) {
+						exitCode = ProgramExit.EXIT_CODE;
+						return exitCode;
+					}
 					break;
 				}
 
 				// Machine code generation.
+				if (cmdLineOptValues.get("--jobs") != null)
+					Jobs.jobs.set(Integer.parseInt(cmdLineOptValues.get("--jobs")));
 				try (AsmGen asmgen = new AsmGen()) {
 					asmgen.genAsmCodes();
 					asmgen.log();
@@ -244,7 +348,13 @@ public class Compiler {
 					break;
 
 				// Register Allocation.
-				RegAll.K = Integer.parseInt(cmdLineOptValues.get("--num-regs"));
+				RegAll.K.set(Integer.parseInt(cmdLineOptValues.get("--num-regs")));
+				if (cmdLineOptValues.get("--regall") != null)
+					RegAll.allocatorName.set(cmdLineOptValues.get("--regall"));
+				if (cmdLineOptValues.get("--regall-linear-limit") != null)
+					RegAll.linearLimit.set(Integer.parseInt(cmdLineOptValues.get("--regall-linear-limit")));
+				if (cmdLineOptValues.get("--regall-matrix-limit") != null)
+					InterferenceGraph.matrixLimit.set(Integer.parseInt(cmdLineOptValues.get("--regall-matrix-limit")));
 				try (RegAll regAll = new RegAll()){
 					regAll.allocate();
 					regAll.log();
@@ -252,7 +362,10 @@ public class Compiler {
 				if (cmdLineOptValues.get("--target-phase").equals("regall"))
 					break;
 
-				new PutItAllTogether().start();
+				// Assembly.
+				try (PutItAllTogether end = new PutItAllTogether()) {
+					end.start();
+				}
 
 				break;
 			}
@@ -262,9 +375,13 @@ public class Compiler {
 			// 1. The generated translation of the source file might be erroneous :-o
 			// 2. The source file might not be what the programmer intended it to be ;-)
 			Report.info("Done.");
+			exitCode = 0;
+			return exitCode;
 		} catch (final Report.Error error) {
-			System.err.println(error.getMessage());
-			System.exit(1);
+			CompilationContext.current().err().println(error.getMessage());
+			return exitCode;
+		} finally {
+			Stats.finish(exitCode);
 		}
 	}
 
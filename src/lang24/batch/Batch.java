@@ -0,0 +1,290 @@
+package lang24.batch;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+import lang24.*;
+import lang24.common.report.*;
+import lang24.phase.imclin.*;
+
+/**
+ * The batch runner (see {@link lang24.batch}).
+ */
+public class Batch {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Batch() {
+		throw new Report.InternalError();
+	}
+
+	/** All valid interpreters. */
+	private static final Vector<String> interpreterNames = new Vector<String>(Arrays.asList("tree", "closure", "jvm"));
+
+	/** A compiled program. */
+	private static final class Program {
+
+		/** The source file. */
+		final Path source;
+
+		/** The context the program has been compiled within. */
+		final CompilationContext context;
+
+		/** Everything the compiler printed out. */
+		final ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+
+		/** The exit code of the compiler. */
+		int exitCode = 1;
+
+		/** Whether the compilation has not completed in time. */
+		volatile boolean timedOut = false;
+
+		Program(final Path source) {
+			this.source = source;
+			final PrintStream stream = new PrintStream(diagnostics, true, StandardCharsets.UTF_8);
+			this.context = new CompilationContext(null, stream, stream);
+			this.context.setIn(new ByteArrayInputStream(new byte[0]));
+		}
+
+		/** Compiles the program up to and including linearization. */
+		void compile() {
+			try {
+				exitCode = Compiler.compile(context, new String[] { "--src-file-name=" + source,
+						"--target-phase=imclin", "--interpreter=none" });
+			} catch (final Throwable throwable) {
+				throwable.printStackTrace(new PrintStream(diagnostics, true, StandardCharsets.UTF_8));
+				exitCode = 1;
+			}
+		}
+
+	}
+
+	/**
+	 * A run of a program.
+	 *
+	 * @param program  The program.
+	 * @param name     The name of the run (the name of the expected output).
+	 * @param input    The input.
+	 * @param expected The expected output.
+	 */
+	private record Test(Program program, String name, byte[] input, byte[] expected) {
+	}
+
+	/**
+	 * The result of a run.
+	 *
+	 * @param test    The run.
+	 * @param passed  Whether the run has passed.
+	 * @param message Why the run has failed (or {@code null}).
+	 * @param nanos   The time of the run (in nanoseconds).
+	 * @param stmts   The number of statements executed (or {@code -1} if not
+	 *                counted).
+	 */
+	private record Result(Test test, boolean passed, String message, long nanos, long stmts) {
+	}
+
+	/**
+	 * Runs all tests and reports the results.
+	 *
+	 * @param opts Command line arguments (see {@link lang24.batch}).
+	 */
+	public static void main(final String[] opts) {
+		String interpreter = "tree";
+		long timeout = 60;
+		long maxStmts = Long.MAX_VALUE;
+		int maxDepth = Integer.MAX_VALUE;
+		long maxHeap = Long.MAX_VALUE;
+		final Vector<Path> sources = new Vector<Path>();
+		try {
+			for (final String opt : opts) {
+				if (opt.startsWith("--interpreter=")) {
+					interpreter = opt.replaceFirst("^[^=]*=", "");
+					if (!interpreterNames.contains(interpreter))
+						throw new Report.Error("Illegal interpreter specification in '" + opt + "'.");
+				} else if (opt.startsWith("--timeout="))
+					timeout = Long.parseLong(opt.replaceFirst("^[^=]*=", ""));
+				else if (opt.startsWith("--max-stmts="))
+					maxStmts = Long.parseLong(opt.replaceFirst("^[^=]*=", ""));
+				else if (opt.startsWith("--max-depth="))
+					maxDepth = Integer.parseInt(opt.replaceFirst("^[^=]*=", ""));
+				else if (opt.startsWith("--max-heap="))
+					maxHeap = Long.parseLong(opt.replaceFirst("^[^=]*=", ""));
+				else if (opt.startsWith("--"))
+					Report.warning("Command line option '" + opt + "' ignored.");
+				else
+					addSources(sources, Paths.get(opt));
+			}
+			if (Arrays.stream(opts).allMatch(opt -> opt.startsWith("--")))
+				addSources(sources, Paths.get("."));
+		} catch (final Report.Error error) {
+			System.err.println(error.getMessage());
+			System.exit(1);
+		} catch (final NumberFormatException | IOException ex) {
+			System.err.println(new Report.Error("Illegal command line: " + ex.getMessage()).getMessage());
+			System.exit(1);
+		}
+
+		// Compile every program with an expected output once. Compilations run on
+		// platform threads so that one that never completes cannot starve the runs.
+		final ExecutorService compiler = Executors.newThreadPerTaskExecutor(Thread.ofPlatform().daemon().factory());
+		final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		final long compileStart = System.nanoTime();
+		final Vector<Test> tests = new Vector<Test>();
+		final HashMap<Program, Future<?>> compilations = new HashMap<Program, Future<?>>();
+		for (final Path source : sources) {
+			final Vector<Test> programTests;
+			try {
+				programTests = tests(source);
+			} catch (final IOException ex) {
+				Report.warning("Cannot read the tests of '" + source + "'.");
+				continue;
+			}
+			if (programTests.isEmpty())
+				continue;
+			tests.addAll(programTests);
+			final Program program = programTests.get(0).program();
+			compilations.put(program, compiler.submit(program::compile));
+		}
+		final long compileDeadline = compileStart + TimeUnit.SECONDS.toNanos(timeout);
+		for (final Map.Entry<Program, Future<?>> compilation : compilations.entrySet()) {
+			try {
+				compilation.getValue().get(Math.max(0, compileDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (final TimeoutException __) {
+				compilation.getKey().timedOut = true;
+			} catch (final InterruptedException | ExecutionException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		final long compileNanos = System.nanoTime() - compileStart;
+
+		// Run them all at once.
+		final long runStart = System.nanoTime();
+		final String engine = interpreter;
+		final ExecutionBudget budget = new ExecutionBudget(maxStmts, maxDepth, maxHeap,
+				TimeUnit.SECONDS.toMillis(timeout));
+		final Vector<Future<Result>> runs = new Vector<Future<Result>>();
+		for (final Test test : tests)
+			runs.add(executor.submit(() -> run(test, engine, budget)));
+		// A second more than the timeout so that the runs limited by the budget can
+		// stop by themselves.
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout + 1);
+		int passed = 0;
+		int failed = 0;
+		for (int r = 0; r < runs.size(); r++) {
+			Result result;
+			try {
+				result = runs.get(r).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (final TimeoutException __) {
+				result = new Result(tests.get(r), false, "Timed out.", System.nanoTime() - runStart, -1);
+			} catch (final InterruptedException | ExecutionException ex) {
+				result = new Result(tests.get(r), false, String.valueOf(ex.getMessage()), 0, -1);
+			}
+			if (result.passed())
+				passed++;
+			else
+				failed++;
+			System.out.printf("%s %-40s %10.3f ms%s%s%n", result.passed() ? "PASS" : "FAIL", result.test().name(),
+					result.nanos() / 1e6, result.stmts() < 0 ? "" : String.format(" %12d stmts", result.stmts()),
+					result.message() == null ? "" : "  " + result.message());
+		}
+		final long runNanos = System.nanoTime() - runStart;
+		System.out.printf("%d runs: %d passed, %d failed (compilation %.3f ms, runs %.3f ms)%n", tests.size(), passed,
+				failed, compileNanos / 1e6, runNanos / 1e6);
+		System.out.flush();
+
+		// Compilations and runs that have timed out cannot be stopped otherwise.
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/** Adds a source file or all source files in a directory. */
+	private static void addSources(final Vector<Path> sources, final Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.lang24")) {
+				final Vector<Path> found = new Vector<Path>();
+				stream.forEach(found::add);
+				Collections.sort(found);
+				sources.addAll(found);
+			}
+		} else
+			sources.add(path);
+	}
+
+	/** Finds all expected outputs of a program and the corresponding inputs. */
+	private static Vector<Test> tests(final Path source) throws IOException {
+		final Path dir = source.toAbsolutePath().getParent();
+		final String name = source.getFileName().toString().replaceFirst("\\.[^./]*$", "");
+		final Pattern pattern = Pattern.compile(Pattern.quote(name + "_izhod") + "(.*)\\.txt");
+		final Vector<Test> tests = new Vector<Test>();
+		final Program program = new Program(source);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			final Vector<Path> outputs = new Vector<Path>();
+			stream.forEach(outputs::add);
+			Collections.sort(outputs);
+			for (final Path output : outputs) {
+				final Matcher matcher = pattern.matcher(output.getFileName().toString());
+				if (!matcher.matches())
+					continue;
+				final Path input = dir.resolve(name + "_vhod" + matcher.group(1) + ".txt");
+				tests.add(new Test(program, source.resolveSibling(output.getFileName()).toString(),
+						Files.exists(input) ? Files.readAllBytes(input) : new byte[0], Files.readAllBytes(output)));
+			}
+		}
+		return tests;
+	}
+
+	/**
+	 * Runs a program with an input and compares its output to the expected one.
+	 * Runs by the tree interpreter are limited by the budget, the others only by
+	 * the overall timeout.
+	 */
+	private static Result run(final Test test, final String interpreter, final ExecutionBudget budget) {
+		final Program program = test.program();
+		if (program.timedOut)
+			return new Result(test, false, "Compilation timed out.", 0, -1);
+		if (program.exitCode != 0)
+			return new Result(test, false, "Compilation failed: " + program.diagnostics.toString(StandardCharsets.UTF_8)
+					.lines().filter(line -> !line.startsWith(":-) ")).findFirst().orElse("?"), 0, -1);
+
+		final InputStream in = new ByteArrayInputStream(test.input());
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(output, false, StandardCharsets.UTF_8);
+		String message = null;
+		long stmts = -1;
+		final long start = System.nanoTime();
+		try {
+			switch (interpreter) {
+			case "closure" -> program.context.call(
+					() -> new ClosureInterpreter(ImcLin.dataChunks(), ImcLin.codeChunks(), in, out).run("_main"));
+			case "jvm" -> program.context
+					.call(() -> new JvmInterpreter(ImcLin.dataChunks(), ImcLin.codeChunks(), in, out).run("_main"));
+			default -> {
+				final ExecutionResult result = program.context.call(() -> new Interpreter(ImcLin.dataChunks(),
+						ImcLin.codeChunks(), null, in, out).run("_main", budget));
+				stmts = result.stmts();
+				if (!result.status().finished())
+					message = result.message();
+			}
+			}
+		} catch (final ProgramExit __) {
+		} catch (final Throwable throwable) {
+			message = throwable.getMessage() == null ? throwable.toString() : throwable.getMessage();
+		}
+		final long nanos = System.nanoTime() - start;
+		out.flush();
+
+		if (message != null)
+			return new Result(test, false, message, nanos, stmts);
+		final byte[] actual = output.toByteArray();
+		if (!Arrays.equals(actual, test.expected())) {
+			int line = 1;
+			for (int b = 0; b < Math.min(actual.length, test.expected().length) && actual[b] == test.expected()[b]; b++)
+				if (actual[b] == '\n')
+					line++;
+			return new Result(test, false, "Output differs at line " + line + ".", nanos, stmts);
+		}
+		return new Result(test, true, null, nanos, stmts);
+	}
+
+}
@@ -0,0 +1,31 @@
+/**
+ * The batch runner: runs programs with their test inputs within a single
+ * virtual machine and checks their outputs.
+ *
+ * The batch runner is run as
+ *
+ * <p>
+ * <code>$ java lang24.batch.Batch [--interpreter=</code><i>engine</i><code>] [--timeout=</code><i>seconds</i><code>] [--max-stmts=</code><i>number</i><code>] [--max-depth=</code><i>number</i><code>] [--max-heap=</code><i>bytes</i><code>] </code><i>files-or-directories...</i>
+ * </p>
+ *
+ * where each argument is either a source file or a directory whose source
+ * files are all taken (the current directory if none is given). A program
+ * <i>name</i><code>.lang24</code> is tested against each expected output
+ * <i>name</i><code>_izhod</code><i>suffix</i><code>.txt</code> with the input
+ * taken from <i>name</i><code>_vhod</code><i>suffix</i><code>.txt</code> (or
+ * empty if there is no such file); programs without an expected output are
+ * skipped.
+ *
+ * Every program is compiled once; all runs are then performed concurrently,
+ * each on its own virtual thread with its own interpreter (memory,
+ * temporaries, input and output). The runner prints out the result and the
+ * time of every run and exits with exit code 0 if all runs pass.
+ *
+ * Runs by the <code>tree</code> interpreter are stopped cleanly once they
+ * execute more statements, call functions deeper or grow the heap larger than
+ * allowed, or once the timeout expires; for them, the number of statements
+ * executed is printed out as well, which, unlike the time, does not depend on
+ * the machine. Runs by other interpreters are only given up on after the
+ * timeout.
+ */
+package lang24.batch;
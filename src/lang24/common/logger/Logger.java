@@ -1,20 +1,24 @@
 package lang24.common.logger;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
-import org.w3c.dom.*;
+import javax.xml.stream.*;
 import lang24.common.report.*;
 
 /**
  * A logger generating an XML/XSL log of an individual compiler phase.
- * 
+ *
+ * The log is written out while it is being produced: an element is written as
+ * soon as its first child element begins or as soon as it ends, whichever comes
+ * first, so that only the attributes of the active element are kept in memory.
+ * Attributes are written in the order of their names (as a DOM serializer
+ * would do), all attributes must therefore be added to an element before its
+ * first child element begins.
+ *
  * @author bostjan.slivnik@fri.uni-lj.si
  */
-public class Logger implements AutoCloseable {
+public final class Logger implements AutoCloseable {
 
 	/** The name of the XML file to be produced. */
 	private final String xmlFileName;
@@ -22,15 +26,21 @@ public class Logger implements AutoCloseable {
 	/** The name of the relating XSL file (to be included in the XML header). */
 	private final String xslFileName;
 
-	/** The entire XML document being constructed. */
-	private final Document doc;
+	/** The output stream of the XML file (or {@code null} if it cannot be written). */
+	private final OutputStream stream;
 
-	/** The stack of the XML documents (used during construction). */
-	private final Stack<Element> elements = new Stack<Element>();
+	/** The XML writer (or {@code null} if the XML file cannot be written). */
+	private final XMLStreamWriter writer;
+
+	/** The stack of tag names of open XML elements. */
+	private final Stack<String> elements = new Stack<String>();
+
+	/** The attributes of the active XML element unless it has already been written. */
+	private TreeMap<String, String> attributes = null;
 
 	/**
 	 * Constructs a new logger.
-	 * 
+	 *
 	 * @param phaseName   The name of the phase being logged.
 	 * @param xmlFileName The name of the XML file to be produced.
 	 * @param xslFileName The name of the relating XSL file.
@@ -40,59 +50,61 @@ public class Logger implements AutoCloseable {
 		this.xslFileName = xslFileName;
 
 		// Prepare a new log document.
+		OutputStream stream = null;
+		XMLStreamWriter writer = null;
 		try {
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-		} catch (final ParserConfigurationException ex) {
-			throw new Report.InternalError();
+			stream = new BufferedOutputStream(new FileOutputStream(xmlFileName));
+			stream.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>".getBytes(StandardCharsets.UTF_8));
+			writer = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+
+			// Add XSL declaration.
+			writer.writeProcessingInstruction("xml-stylesheet", "type=\"text/xsl\" href=\"" + this.xslFileName + "\"");
+		} catch (final IOException | XMLStreamException ex) {
+			Report.warning("Cannot open log file '" + xmlFileName + "'.");
+			if (stream != null)
+				try {
+					stream.close();
+				} catch (final IOException closeEx) {
+				}
+			stream = null;
+			writer = null;
 		}
+		this.stream = stream;
+		this.writer = writer;
 
 		// Create the root element representing the entire phase.
-		final Element phase = doc.createElement(phaseName);
-		doc.appendChild(phase);
-		elements.push(phase);
-
-		// Add XSL declaration.
-		final ProcessingInstruction xsl = doc.createProcessingInstruction("xml-stylesheet",
-				"type=\"text/xsl\" href=\"" + this.xslFileName + "\"");
-		doc.insertBefore(xsl, phase);
+		begElement(phaseName);
 	}
 
 	@Override
 	public void close() {
-		try {
-			elements.pop();
-		} catch (EmptyStackException ex) {
-			throw new Report.InternalError();
-		}
+		endElement();
 		if (!elements.empty())
 			throw new Report.InternalError();
 
-		// Dump the log document out.
+		// Dump the rest of the log document out.
+		if (writer == null)
+			return;
 		try {
-			final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			final javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
-			final DOMSource source = new DOMSource(doc);
-			final StreamResult result = new StreamResult(new File(xmlFileName));
-			transformer.transform(source, result);
-		} catch (final TransformerException ex) {
-			Report.warning("Cannot open log file '" + xmlFileName + "'.");
+			writer.writeEndDocument();
+			writer.close();
+			stream.close();
+		} catch (final IOException | XMLStreamException ex) {
+			Report.warning("Cannot write log file '" + xmlFileName + "'.");
 		}
 	}
 
 	/**
 	 * Starts a new XML element (within the active XML element) and makes it active.
 	 * Only one XML element can be active at each moment.
-	 * 
+	 *
 	 * @param tagName The tag name of a new XML element.
 	 */
 	public void begElement(final String tagName) {
-		try {
-			final Element element = doc.createElement(tagName);
-			elements.peek().appendChild(element);
-			elements.push(element);
-		} catch (final EmptyStackException ex) {
-			throw new Report.InternalError();
-		}
+		if (attributes != null)
+			writeElement(false);
+		elements.push(tagName);
+		attributes = new TreeMap<String, String>();
 	}
 
 	/**
@@ -100,25 +112,74 @@ public class Logger implements AutoCloseable {
 	 * XML element can be active at each moment.
 	 */
 	public void endElement() {
-		try {
-			elements.pop();
-		} catch (final EmptyStackException ex) {
+		if (elements.empty())
 			throw new Report.InternalError();
+		if (attributes != null)
+			writeElement(true);
+		else if (writer != null) {
+			try {
+				writer.writeEndElement();
+			} catch (final XMLStreamException ex) {
+				throw new Report.Error("Cannot write log file '" + xmlFileName + "'.");
+			}
 		}
+		elements.pop();
 	}
 
 	/**
-	 * Adds an attribute to the active XML element.
-	 * 
+	 * Adds an attribute to the active XML element. Attributes must be added
+	 * before the first child element of the active XML element begins.
+	 *
 	 * @param attrName  The name of an attribute.
 	 * @param attrValue The value of an attribute.
 	 */
 	public void addAttribute(final String attrName, final String attrValue) {
-		try {
-			elements.peek().setAttribute(attrName, attrValue);
-		} catch (final EmptyStackException ex) {
+		if (attributes == null)
 			throw new Report.InternalError();
+		attributes.put(attrName, attrValue);
+	}
+
+	/**
+	 * Writes out the start tag of the active XML element.
+	 *
+	 * @param empty Whether the active XML element has no child elements.
+	 */
+	private void writeElement(final boolean empty) {
+		if (writer != null) {
+			try {
+				if (empty)
+					writer.writeEmptyElement(elements.peek());
+				else
+					writer.writeStartElement(elements.peek());
+				for (final Map.Entry<String, String> attribute : attributes.entrySet())
+					writer.writeAttribute(attribute.getKey(), xmlChars(attribute.getValue()));
+			} catch (final XMLStreamException ex) {
+				throw new Report.Error("Cannot write log file '" + xmlFileName + "'.");
+			}
+		}
+		attributes = null;
+	}
+
+	/**
+	 * Replaces characters that cannot appear in an XML document (e.g., the
+	 * terminating null character of string constants) with {@code U+FFFD}.
+	 *
+	 * @param value The value of an attribute (or {@code null}).
+	 * @return The value that can be written out.
+	 */
+	private static String xmlChars(final String value) {
+		if (value == null)
+			return "";
+		StringBuilder chars = null;
+		for (int c = 0; c < value.length(); c++) {
+			final char ch = value.charAt(c);
+			if ((ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r') || ch == 0xFFFE || ch == 0xFFFF) {
+				if (chars == null)
+					chars = new StringBuilder(value);
+				chars.setCharAt(c, '\uFFFD');
+			}
 		}
+		return chars == null ? value : chars.toString();
 	}
 
 }
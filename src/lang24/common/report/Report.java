@@ -1,5 +1,8 @@
 package lang24.common.report;
 
+import java.util.concurrent.atomic.*;
+import lang24.*;
+
 /**
  * Generating reports.
  * 
@@ -12,8 +15,9 @@ public class Report {
 		throw new Report.InternalError();
 	}
 
-	/** Counter of information messages printed out. */
-	private static int numOfInfos = 0;
+	/** Counter of information messages printed out (in the current compilation). */
+	private static final CompilationContext.Local<AtomicInteger> numOfInfos = new CompilationContext.Local<AtomicInteger>(
+			AtomicInteger::new);
 
 	/**
 	 * Returns the number of information messages printed out.
@@ -21,7 +25,7 @@ public class Report {
 	 * @return The number of information messages printed out.
 	 */
 	public static int numOfInfos() {
-		return numOfInfos;
+		return numOfInfos.get().get();
 	}
 
 	/**
@@ -30,8 +34,8 @@ public class Report {
 	 * @param message The information message to be printed out.
 	 */
 	public static void info(final String message) {
-		numOfInfos++;
-		System.out.println(":-) " + message);
+		numOfInfos.get().incrementAndGet();
+		CompilationContext.current().out().println(":-) " + message);
 	}
 
 	/**
@@ -42,12 +46,13 @@ public class Report {
 	 * @param message  The information message to be printed.
 	 */
 	public static void info(final Locatable location, final String message) {
-		numOfInfos++;
-		System.out.println(":-) " + "[" + location.location() + "] " + message);
+		numOfInfos.get().incrementAndGet();
+		CompilationContext.current().out().println(":-) " + "[" + location.location() + "] " + message);
 	}
 
-	/** Counter of warnings printed out. */
-	private static int numOfWarnings = 0;
+	/** Counter of warnings printed out (in the current compilation). */
+	private static final CompilationContext.Local<AtomicInteger> numOfWarnings = new CompilationContext.Local<AtomicInteger>(
+			AtomicInteger::new);
 
 	/**
 	 * Returns the number of warnings printed out.
@@ -55,7 +60,7 @@ public class Report {
 	 * @return The number of warnings printed out.
 	 */
 	public static int numOfWarnings() {
-		return numOfWarnings;
+		return numOfWarnings.get().get();
 	}
 
 	/**
@@ -64,8 +69,8 @@ public class Report {
 	 * @param message The warning message to be printed out.
 	 */
 	public static void warning(final String message) {
-		numOfWarnings++;
-		System.err.println(":-o " + message);
+		numOfWarnings.get().incrementAndGet();
+		CompilationContext.current().err().println(":-o " + message);
 	}
 
 	/**
@@ -75,8 +80,8 @@ public class Report {
 	 * @param message  The warning message to be printed out.
 	 */
 	public static void warning(final Locatable location, final String message) {
-		numOfWarnings++;
-		System.err.println(":-o " + "[" + location.location() + "] " + message);
+		numOfWarnings.get().incrementAndGet();
+		CompilationContext.current().err().println(":-o " + "[" + location.location() + "] " + message);
 	}
 
 	/**
@@ -0,0 +1,71 @@
+package lang24.daemon;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import lang24.common.report.*;
+
+/**
+ * The thin client of the compile daemon.
+ */
+public class Client {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Client() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Submits a compile request to the daemon and reproduces its response.
+	 * 
+	 * @param opts Command line arguments (see {@link lang24.daemon}).
+	 */
+	public static void main(final String[] opts) {
+		String socketOpt = null;
+		boolean stop = false;
+		final Vector<String> compilerOpts = new Vector<String>();
+		for (final String opt : opts) {
+			if (opt.startsWith("--socket="))
+				socketOpt = opt.replaceFirst("^[^=]*=", "");
+			else if (opt.equals("--stop"))
+				stop = true;
+			else
+				compilerOpts.add(opt);
+		}
+		final Path socketPath = Daemon.socketPath(socketOpt);
+
+		int exitCode;
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+			out.writeUTF(new File(".").getCanonicalPath());
+			if (stop)
+				out.writeInt(-1);
+			else {
+				out.writeInt(compilerOpts.size());
+				for (final String opt : compilerOpts)
+					out.writeUTF(opt);
+			}
+			out.flush();
+
+			while (true) {
+				final int tag = in.readByte();
+				if (tag == Daemon.EXIT) {
+					exitCode = in.readInt();
+					break;
+				}
+				final PrintStream stream = tag == Daemon.STDERR ? System.err : System.out;
+				stream.write(Daemon.readBytes(in));
+				stream.flush();
+			}
+		} catch (final IOException ex) {
+			System.err.println(new Report.Error("Cannot reach the compile daemon at '" + socketPath + "'.").getMessage());
+			exitCode = 1;
+		}
+		System.exit(exitCode);
+	}
+
+}
@@ -0,0 +1,187 @@
+package lang24.daemon;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import lang24.*;
+import lang24.common.report.*;
+
+/**
+ * The compile daemon.
+ * 
+ * A request consists of the working directory of the client and the command
+ * line options of the compiler (or {@code -1} options to stop the daemon). A
+ * response is a sequence of frames, each starting with its tag: whatever the
+ * compiler prints out to the standard output or to the standard error is sent
+ * as soon as it is printed, and the exit code of the compiler is sent last.
+ */
+public class Daemon {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Daemon() {
+		throw new Report.InternalError();
+	}
+
+	/** The tag of the frame with the exit code (followed by the exit code). */
+	static final int EXIT = 0;
+
+	/** The tag of the frame with standard output (followed by a block of bytes). */
+	static final int STDOUT = 1;
+
+	/** The tag of the frame with standard error (followed by a block of bytes). */
+	static final int STDERR = 2;
+
+	/**
+	 * Returns the socket file named by the {@code --socket} option or the default
+	 * socket file in the temporary directory.
+	 * 
+	 * @param socketOpt The value of the {@code --socket} option (or {@code null}).
+	 * @return The socket file.
+	 */
+	static Path socketPath(final String socketOpt) {
+		if (socketOpt != null)
+			return Paths.get(socketOpt);
+		return Paths.get(System.getProperty("java.io.tmpdir"), "lang24-" + System.getProperty("user.name") + ".sock");
+	}
+
+	/**
+	 * Reads a block of bytes preceded by its length.
+	 * 
+	 * @param in The stream.
+	 * @return The bytes.
+	 * @throws IOException If the bytes cannot be read.
+	 */
+	static byte[] readBytes(final DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * The daemon's main loop accepting compile requests.
+	 * 
+	 * @param opts Command line arguments (see {@link lang24.daemon}).
+	 */
+	public static void main(final String[] opts) {
+		String socketOpt = null;
+		for (final String opt : opts) {
+			if (opt.startsWith("--socket="))
+				socketOpt = opt.replaceFirst("^[^=]*=", "");
+			else
+				Report.warning("Command line option '" + opt + "' ignored.");
+		}
+		final Path socketPath = socketPath(socketOpt);
+
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			Files.deleteIfExists(socketPath);
+			server.bind(UnixDomainSocketAddress.of(socketPath));
+			Report.info("LANG'24 compile daemon listening on '" + socketPath + "'.");
+			boolean running = true;
+			while (running) {
+				try (SocketChannel channel = server.accept()) {
+					running = serve(channel);
+				} catch (final IOException ex) {
+					Report.warning("Compile request failed: " + ex.getMessage());
+				}
+			}
+		} catch (final IOException ex) {
+			System.err.println(new Report.Error("Cannot listen on '" + socketPath + "'.").getMessage());
+			System.exit(1);
+		} finally {
+			try {
+				Files.deleteIfExists(socketPath);
+			} catch (final IOException __) {
+			}
+		}
+		Report.info("LANG'24 compile daemon stopped.");
+	}
+
+	/**
+	 * Serves a single request.
+	 * 
+	 * @param channel The connection to the client.
+	 * @return {@code false} if the daemon should stop, {@code true} otherwise.
+	 * @throws IOException If the request cannot be read or the response written.
+	 */
+	private static boolean serve(final SocketChannel channel) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+		final String workDir = in.readUTF();
+		final int numOpts = in.readInt();
+		if (numOpts < 0) {
+			out.writeByte(EXIT);
+			out.writeInt(0);
+			out.flush();
+			return false;
+		}
+		final String[] opts = new String[numOpts];
+		for (int opt = 0; opt < numOpts; opt++)
+			opts[opt] = in.readUTF();
+
+		// Compile within a context of its own.
+		final PrintStream compOut = new PrintStream(new FrameStream(out, STDOUT), true);
+		final PrintStream compErr = new PrintStream(new FrameStream(out, STDERR), true);
+		final CompilationContext context = new CompilationContext(new File(workDir), compOut, compErr);
+		context.setIn(new ByteArrayInputStream(new byte[0]));
+		int exitCode;
+		try {
+			exitCode = lang24.Compiler.compile(context, opts);
+		} catch (final Throwable throwable) {
+			throwable.printStackTrace(compErr);
+			exitCode = 1;
+		}
+
+		out.writeByte(EXIT);
+		out.writeInt(exitCode);
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * A stream sending everything written to it as frames of a response.
+	 */
+	private static class FrameStream extends OutputStream {
+
+		/** The response. */
+		private final DataOutputStream out;
+
+		/** The tag of frames. */
+		private final int tag;
+
+		/**
+		 * Constructs a new stream sending frames of a response.
+		 * 
+		 * @param out The response.
+		 * @param tag The tag of frames.
+		 */
+		private FrameStream(final DataOutputStream out, final int tag) {
+			this.out = out;
+			this.tag = tag;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			synchronized (out) {
+				out.writeByte(tag);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+/**
+ * The compile daemon: a long-lived compiler serving compile requests over a
+ * Unix domain socket, and a thin client submitting them.
+ * 
+ * The daemon is started as
+ * 
+ * <p>
+ * <code>$ java lang24.daemon.Daemon [--socket=</code><i>socket-file</i><code>]</code>
+ * </p>
+ * 
+ * and the compiler is then run as
+ * 
+ * <p>
+ * <code>$ java lang24.daemon.Client [--socket=</code><i>socket-file</i><code>] </code><i>command-line-options...</i>
+ * </p>
+ * 
+ * where the command line options are those of {@link lang24.Compiler}. The
+ * client prints out the diagnostics of the compiler and exits with its exit
+ * code; all files (logs and the generated code) are written as if the compiler
+ * was run in the working directory of the client. The daemon is stopped by
+ * <code>$ java lang24.daemon.Client --stop</code>.
+ * 
+ * Requests are served one at a time; each compilation is performed within a
+ * fresh {@link lang24.CompilationContext}.
+ */
+package lang24.daemon;
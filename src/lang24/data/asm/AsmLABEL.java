@@ -16,6 +16,15 @@ public class AsmLABEL extends AsmOPER {
 		this.label = label;
 	}
 
+	/**
+	 * Returns the label.
+	 *
+	 * @return The label.
+	 */
+	public MemLabel label() {
+		return label;
+	}
+
 	@Override
 	public String toString() {
 		return label.name;
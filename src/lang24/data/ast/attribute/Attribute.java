@@ -1,6 +1,7 @@
 package lang24.data.ast.attribute;
 
 import java.util.*;
+import lang24.*;
 import lang24.data.ast.tree.*;
 
 /**
@@ -13,14 +14,14 @@ import lang24.data.ast.tree.*;
  */
 public class Attribute<Node extends AstNode, Value> {
 
-	/** Mapping of nodes to values. */
-	private final Vector<Value> mapping;
+	/** Mapping of nodes to values (separate for each compilation). */
+	private final CompilationContext.Local<Vector<Value>> mapping;
 
 	/**
 	 * Constructs a new attribute.
 	 */
 	public Attribute() {
-		this.mapping = new Vector<Value>();
+		this.mapping = new CompilationContext.Local<Vector<Value>>(Vector::new);
 	}
 
 	/**
@@ -31,6 +32,7 @@ public class Attribute<Node extends AstNode, Value> {
 	 * @return The value.
 	 */
 	public Value put(final Node node, final Value value) {
+		final Vector<Value> mapping = this.mapping.get();
 		int id = node.id();
 		while (id >= mapping.size())
 			mapping.setSize(id + 1000);
@@ -45,6 +47,7 @@ public class Attribute<Node extends AstNode, Value> {
 	 * @return The value (or {@code null} if the value is not found).
 	 */
 	public Value get(final Node node) {
+		final Vector<Value> mapping = this.mapping.get();
 		int id = node.id();
 		while (id >= mapping.size())
 			return null;
@@ -1,5 +1,7 @@
 package lang24.data.ast.tree;
 
+import java.util.concurrent.atomic.*;
+import lang24.*;
 import lang24.common.report.*;
 import lang24.data.ast.visitor.*;
 
@@ -10,8 +12,19 @@ import lang24.data.ast.visitor.*;
  */
 public abstract class AstNode implements Locatable {
 
-	/** The number of nodes constructed so far. */
-	private static int numNodes = 0;
+	/** The number of nodes constructed so far (in the current compilation). */
+	private static final CompilationContext.Local<AtomicInteger> numNodes = new CompilationContext.Local<AtomicInteger>(
+			AtomicInteger::new);
+
+	/**
+	 * Returns the number of nodes constructed so far (in the current
+	 * compilation).
+	 *
+	 * @return The number of nodes constructed so far.
+	 */
+	public static int numNodes() {
+		return numNodes.get().get();
+	}
 
 	/** The unique id of this node. */
 	public final int id;
@@ -25,7 +38,7 @@ public abstract class AstNode implements Locatable {
 	 * @param location The location.
 	 */
 	public AstNode(final Locatable location) {
-		id = numNodes++;
+		id = numNodes.get().getAndIncrement();
 		this.location = location.location();
 	}
 
@@ -1,5 +1,8 @@
 package lang24.data.mem;
 
+import java.util.concurrent.atomic.*;
+import lang24.*;
+
 /**
  * A label.
  * 
@@ -10,13 +13,13 @@ public class MemLabel {
 	/** The name of a label. */
 	public final String name;
 
-	/** Counter of anonymous labels. */
-	private static long count = 0;
+	/** Counter of anonymous labels (in the current compilation). */
+	private static final CompilationContext.Local<AtomicLong> count = new CompilationContext.Local<AtomicLong>(
+			AtomicLong::new);
 
 	/** Creates a new anonymous label. */
 	public MemLabel() {
-		this.name = "L" + count;
-		count++;
+		this.name = "L" + count.get().getAndIncrement();
 	}
 
 	/**
@@ -1,5 +1,9 @@
 package lang24.data.mem;
 
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import lang24.*;
+
 /**
  * A temporary variable.
  *
@@ -10,13 +14,45 @@ public class MemTemp {
 	/** The name of a temporary variable. */
 	public final long temp;
 
-	/** Counter of temporary variables. */
-	private static long count = 0;
+	/** Counter of temporary variables (in the current compilation). */
+	private static final CompilationContext.Local<AtomicLong> count = new CompilationContext.Local<AtomicLong>(
+			AtomicLong::new);
+
+	/**
+	 * Counter of temporary variables of the current thread (or {@code null} if
+	 * the global counter is used).
+	 */
+	private static final ThreadLocal<long[]> localCount = new ThreadLocal<long[]>();
 
 	/** Creates a new temporary variable. */
 	public MemTemp() {
-		this.temp = count;
-		count++;
+		final long[] local = localCount.get();
+		this.temp = local == null ? count.get().getAndIncrement() : local[0]++;
+	}
+
+	/**
+	 * Performs a computation in which all temporary variables created by the
+	 * current thread are numbered consecutively starting with the specified
+	 * number, regardless of temporary variables created by other threads.
+	 *
+	 * @param <Result> The result of the computation.
+	 * @param first    The name of the first temporary variable created.
+	 * @param work     The computation.
+	 * @return The result of the computation.
+	 */
+	public static <Result> Result numbered(long first, Supplier<Result> work) {
+		final long[] outer = localCount.get();
+		localCount.set(new long[] { first });
+		try {
+			return work.get();
+		} finally {
+			localCount.set(outer);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(temp);
 	}
 
 	@Override
@@ -24,4 +60,3 @@ public class MemTemp {
 		return "T" + temp;
 	}
 }
-
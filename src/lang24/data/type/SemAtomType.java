@@ -11,4 +11,13 @@ public abstract class SemAtomType extends SemSimpleType {
 	public SemAtomType() {
 	}
 
+	/**
+	 * Constructs a new predefined data type with atom values.
+	 * 
+	 * @param id The unique id of this node.
+	 */
+	protected SemAtomType(final int id) {
+		super(id);
+	}
+
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ public class SemBoolType extends SemAtomType {
 
 	/** Constructs a new boolean type. */
 	private SemBoolType() {
+		super(1);
 	}
 
 	@Override
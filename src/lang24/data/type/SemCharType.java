@@ -14,6 +14,7 @@ public class SemCharType extends SemAtomType {
 
 	/** Constructs a new charater type. */
 	private SemCharType() {
+		super(2);
 	}
 
 	@Override
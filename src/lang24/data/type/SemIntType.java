@@ -14,6 +14,7 @@ public class SemIntType extends SemAtomType {
 
 	/** Constructs a new integer type. */
 	private SemIntType() {
+		super(3);
 	}
 
 	@Override
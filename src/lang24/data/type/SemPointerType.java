@@ -11,7 +11,7 @@ import lang24.data.type.visitor.*;
 public class SemPointerType extends SemSimpleType {
 
 	/** An object of {@code SemPointerType(null)} class. */
-	public static final SemPointerType type = new SemPointerType(SemVoidType.type);
+	public static final SemPointerType type = new SemPointerType(SemVoidType.type, 4);
 
 	/** The base type (or {@code null} if it denotes <code>nil</code>). */
 	public final SemType baseType;
@@ -27,6 +27,17 @@ public class SemPointerType extends SemSimpleType {
 		this.baseType = baseType;
 	}
 
+	/**
+	 * Constructs a predefined pointer type.
+	 * 
+	 * @param baseType The base type.
+	 * @param id       The unique id of this node.
+	 */
+	private SemPointerType(final SemType baseType, final int id) {
+		super(id);
+		this.baseType = baseType;
+	}
+
 	@Override
 	public String toString() {
 		return "^" + (baseType == null ? "" : baseType.toString());
@@ -11,4 +11,13 @@ public abstract class SemSimpleType extends SemValueType {
 	public SemSimpleType() {
 	}
 
+	/**
+	 * Constructs a new predefined data type with simple values.
+	 * 
+	 * @param id The unique id of this node.
+	 */
+	protected SemSimpleType(final int id) {
+		super(id);
+	}
+
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package lang24.data.type;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
+import lang24.*;
 import lang24.data.type.visitor.*;
 
 /**
@@ -10,15 +12,31 @@ import lang24.data.type.visitor.*;
  */
 public abstract class SemType {
 
-	/** The number of nodes constructed so far. */
-	private static int numNodes = 0;
+	/**
+	 * The number of predefined types, i.e., types that are shared by all
+	 * compilations and numbered in advance.
+	 */
+	protected static final int NUM_PREDEFINED = 5;
+
+	/** The number of nodes constructed so far (in the current compilation). */
+	private static final CompilationContext.Local<AtomicInteger> numNodes = new CompilationContext.Local<AtomicInteger>(
+			() -> new AtomicInteger(NUM_PREDEFINED));
 
 	/** The unique id of this node. */
 	public final int id;
 
 	/** Constructs a new type. */
 	public SemType() {
-		id = numNodes++;
+		id = numNodes.get().getAndIncrement();
+	}
+
+	/**
+	 * Constructs a new predefined type.
+	 * 
+	 * @param id The unique id of this node (less than {@link #NUM_PREDEFINED}).
+	 */
+	protected SemType(final int id) {
+		this.id = id;
 	}
 
 	/**
@@ -11,4 +11,13 @@ public abstract class SemValueType extends SemType {
 	public SemValueType() {
 	}
 
+	/**
+	 * Constructs a new predefined data type with values.
+	 * 
+	 * @param id The unique id of this node.
+	 */
+	protected SemValueType(final int id) {
+		super(id);
+	}
+
 }
\ No newline at end of file
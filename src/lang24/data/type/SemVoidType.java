@@ -14,6 +14,7 @@ public class SemVoidType extends SemType {
 
 	/** Constructs a void type. */
 	private SemVoidType() {
+		super(0);
 	}
 
 	@Override
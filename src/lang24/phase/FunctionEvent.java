@@ -0,0 +1,44 @@
+package lang24.phase;
+
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event spanning the processing of a single function by a
+ * back-end phase (see {@link Jobs}).
+ *
+ * The event is meant to be used in the usual way, i.e., constructed and begun
+ * before the function is processed and its fields filled in only if
+ * {@link #shouldCommit()} returns {@code true} afterwards, so that nothing but
+ * the construction (which is optimized away) is done when recording is off.
+ */
+@Name("lang24.Function")
+@Label("Function")
+@Category({ "LANG'24", "Compiler" })
+@Description("A function processed by a back-end phase of the LANG'24 compiler.")
+public class FunctionEvent extends Event {
+
+	/** The phase name. */
+	@Label("Phase")
+	public String phase;
+
+	/** The function's entry label. */
+	@Label("Function")
+	public String function;
+
+	/** The number of instructions. */
+	@Label("Instructions")
+	public int instrs;
+
+	/** The number of temporary variables. */
+	@Label("Temporaries")
+	public int temps;
+
+	/** The number of register allocation rounds ending with a spill. */
+	@Label("Spill Rounds")
+	public int spillRounds;
+
+	/** Constructs a new event. */
+	public FunctionEvent() {
+	}
+
+}
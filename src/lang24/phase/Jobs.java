@@ -0,0 +1,118 @@
+package lang24.phase;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import lang24.*;
+import lang24.data.asm.*;
+import lang24.data.lin.*;
+import lang24.data.mem.*;
+
+/**
+ * Per-function work of the back-end phases.
+ *
+ * Once the intermediate code has been linearized, functions are translated
+ * independently of each other. The work is distributed over a fork-join pool
+ * of {@link #jobs} worker threads (see {@code --jobs}) and the results are
+ * collected in the source order of functions. Each worker thread processes a
+ * function within the compilation context of the caller.
+ *
+ * To make the result independent of the number of threads and of scheduling,
+ * temporary variables created while processing a function are numbered from a
+ * range determined only by the back-end stage and the position of the function
+ * in the source, see {@link MemTemp#numbered}.
+ */
+public class Jobs {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Jobs() {
+	}
+
+	/** The number of worker threads (in the current compilation). */
+	public static final CompilationContext.Local<Integer> jobs = new CompilationContext.Local<Integer>(() -> 1);
+
+	/** The stage of the back end creating temporary variables. */
+	public enum Stage {
+		/** Machine code generation. */
+		ASMGEN,
+		/** Liveness analysis. */
+		LIVEAN,
+		/** Register allocation. */
+		REGALL,
+	}
+
+	/** The number of temporary variables reserved per function and stage. */
+	private static final long RANGE = 1L << 32;
+
+	/**
+	 * The worker threads, one pool per number of threads (created when first
+	 * needed and shared by all compilations asking for the same number).
+	 */
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	/**
+	 * Processes all functions, each one possibly in a different thread.
+	 *
+	 * If processing of any function fails, the error of the first such function
+	 * (in the source order) is rethrown once all functions are processed.
+	 *
+	 * @param <Item>     The function representation.
+	 * @param <Result>   The result of processing a function.
+	 * @param stage      The stage of the back end.
+	 * @param functions  The functions in the source order.
+	 * @param work       The processing of a single function.
+	 * @return The results in the source order.
+	 */
+	public static <Item, Result> Vector<Result> forEachFunction(final Stage stage, final List<Item> functions,
+			final Function<Item, Result> work) {
+		final int numFunctions = functions.size();
+		final Vector<Result> results = new Vector<Result>(numFunctions);
+		results.setSize(numFunctions);
+		final Throwable[] errors = new Throwable[numFunctions];
+		final CompilationContext context = CompilationContext.current();
+		final int jobs = Jobs.jobs.get();
+
+		final IntConsumer task = (final int f) -> {
+			final long first = RANGE * (1 + (long) f * Stage.values().length + stage.ordinal());
+			try {
+				results.set(f, context.call(() -> Stats.function(f, name(functions.get(f)),
+						() -> MemTemp.numbered(first, () -> work.apply(functions.get(f))))));
+			} catch (final Throwable error) {
+				errors[f] = error;
+			}
+		};
+
+		if (jobs <= 1 || numFunctions <= 1) {
+			for (int f = 0; f < numFunctions; f++)
+				task.accept(f);
+		} else {
+			final ForkJoinPool pool = pools.computeIfAbsent(jobs, ForkJoinPool::new);
+			final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numFunctions];
+			for (int f = 0; f < numFunctions; f++) {
+				final int function = f;
+				tasks[f] = pool.submit(() -> task.accept(function));
+			}
+			for (final ForkJoinTask<?> forkJoinTask : tasks)
+				forkJoinTask.join();
+		}
+
+		for (final Throwable error : errors) {
+			if (error instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (error instanceof Error javaError)
+				throw javaError;
+		}
+		return results;
+	}
+
+	/** Returns the name of a function as reported in statistics. */
+	private static String name(final Object function) {
+		return switch (function) {
+		case LinCodeChunk chunk -> chunk.frame.label.name;
+		case Code code -> code.frame.label.name;
+		default -> function.toString();
+		};
+	}
+
+}
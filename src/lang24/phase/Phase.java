@@ -12,6 +12,9 @@ public abstract class Phase implements AutoCloseable {
 	/** The logger used to produce the log of this phase. */
 	public final Logger logger;
 
+	/** The flight recorder event spanning this phase. */
+	private final PhaseEvent event = new PhaseEvent();
+
 	/**
 	 * Constructs a new phase of a compiler. If logging of this phase has been
 	 * requested, it prepares a logger using the phase name for naming the XML and
@@ -20,8 +23,22 @@ public abstract class Phase implements AutoCloseable {
 	 * @param phaseName The phase name.
 	 */
 	protected Phase(final String phaseName) {
+		this(phaseName, true);
+	}
+
+	/**
+	 * Constructs a new phase of a compiler that is logged only if requested and
+	 * if the phase produces a log at all (i.e., there is an XSL file for it).
+	 * 
+	 * @param phaseName The phase name.
+	 * @param loggable  Whether the phase produces a log.
+	 */
+	protected Phase(final String phaseName, final boolean loggable) {
+		Stats.begPhase(phaseName);
+		event.phase = phaseName;
+		event.begin();
 		final String loggedPhase = lang24.Compiler.cmdLineOptValue("--logged-phase");
-		if (loggedPhase.matches(phaseName + "|all")) {
+		if (loggable && loggedPhase.matches(phaseName + "|all")) {
 			// Prepare the name of the xml file.
 			String xmlFileName = lang24.Compiler.cmdLineOptValue("--xml");
 			if (xmlFileName == null) {
@@ -35,7 +52,7 @@ public abstract class Phase implements AutoCloseable {
 				xslDirName = "";
 			}
 
-			logger = new Logger(phaseName, xmlFileName, xslDirName + phaseName + ".xsl");
+			logger = new Logger(phaseName, lang24.Compiler.file(xmlFileName).getPath(), xslDirName + phaseName + ".xsl");
 		} else {
 			logger = null;
 		}
@@ -45,6 +62,8 @@ public abstract class Phase implements AutoCloseable {
 	public void close() {
 		if (logger != null)
 			logger.close();
+		Stats.endPhase();
+		event.commit();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package lang24.phase;
+
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event spanning a compiler phase (see {@link Phase}).
+ */
+@Name("lang24.Phase")
+@Label("Compiler Phase")
+@Category({ "LANG'24", "Compiler" })
+@Description("A phase of the LANG'24 compiler.")
+public class PhaseEvent extends Event {
+
+	/** The phase name. */
+	@Label("Phase")
+	public String phase;
+
+	/** Constructs a new event. */
+	public PhaseEvent() {
+	}
+
+}
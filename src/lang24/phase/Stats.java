@@ -0,0 +1,299 @@
+package lang24.phase;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.*;
+
+import lang24.*;
+import lang24.common.report.*;
+
+/**
+ * Statistics of a compilation (see {@code --stats}).
+ *
+ * For every phase (see {@link Phase}) and for every function processed by the
+ * back-end phases (see {@link Jobs}), the wall time, the CPU time and the
+ * number of bytes allocated are recorded together with the sizes of the
+ * intermediate representations (see {@link #size}). The live heap is measured
+ * after each phase. The statistics are written out as JSON once the
+ * compilation is over.
+ *
+ * Unless statistics are requested, all methods of this class return without
+ * doing anything.
+ */
+public class Stats {
+
+	/** The statistics of the current compilation (or {@code null} if not collected). */
+	private static final CompilationContext.Local<Stats> stats = new CompilationContext.Local<Stats>(() -> null);
+
+	/** The function the current thread is processing (if any). */
+	private static final ThreadLocal<Record> function = new ThreadLocal<Record>();
+
+	/** The thread management interface. */
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	/**
+	 * The measurements of a phase or of a function.
+	 */
+	private static class Record {
+
+		/** The name of the phase or of the function. */
+		private final String name;
+
+		/** The position of the function in the source (or {@code -1}). */
+		private final int index;
+
+		/** The thread the measurement is being performed in. */
+		private final Thread thread = Thread.currentThread();
+
+		/** The wall time (in nanoseconds). */
+		private long wallNanos = -System.nanoTime();
+
+		/** The CPU time (in nanoseconds). */
+		private long cpuNanos = -threads.getCurrentThreadCpuTime();
+
+		/** The number of bytes allocated. */
+		private long allocatedBytes = -threads.getCurrentThreadAllocatedBytes();
+
+		/** The live heap after the phase (in bytes, or {@code -1} if not measured). */
+		private long liveHeapBytes = -1;
+
+		/** Whether the measurement is over. */
+		private boolean closed = false;
+
+		/** The sizes of the intermediate representations. */
+		private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<String, Long>();
+
+		/** The functions processed within the phase. */
+		private final Vector<Record> functions = new Vector<Record>();
+
+		private Record(final String name, final int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		/** Ends the measurement. */
+		private void close() {
+			wallNanos += System.nanoTime();
+			cpuNanos += threads.getCurrentThreadCpuTime();
+			allocatedBytes += threads.getCurrentThreadAllocatedBytes();
+			closed = true;
+		}
+
+	}
+
+	/** The name of the file the statistics are written to. */
+	private final String fileName;
+
+	/** The measurement of the entire compilation. */
+	private final Record compilation;
+
+	/** All phases in the order they have started. */
+	private final Vector<Record> phases = new Vector<Record>();
+
+	/** Phases that have started but not ended yet. */
+	private final Stack<Record> openPhases = new Stack<Record>();
+
+	private Stats(final String fileName, final String srcFileName) {
+		this.fileName = fileName;
+		this.compilation = new Record(srcFileName, -1);
+	}
+
+	/**
+	 * Starts collecting statistics of the current compilation.
+	 *
+	 * @param fileName    The name of the file the statistics are written to.
+	 * @param srcFileName The name of the source file.
+	 */
+	public static void start(final String fileName, final String srcFileName) {
+		stats.set(new Stats(fileName, srcFileName));
+	}
+
+	/**
+	 * Starts measuring a phase.
+	 *
+	 * @param phaseName The name of the phase.
+	 */
+	public static void begPhase(final String phaseName) {
+		final Stats stats = Stats.stats.get();
+		if (stats == null)
+			return;
+		final Record phase = new Record(phaseName, -1);
+		stats.phases.add(phase);
+		stats.openPhases.push(phase);
+	}
+
+	/**
+	 * Ends measuring the phase that started last and measures the live heap.
+	 */
+	public static void endPhase() {
+		final Stats stats = Stats.stats.get();
+		if (stats == null)
+			return;
+		final Record phase = stats.openPhases.pop();
+		phase.close();
+		phase.functions.sort(Comparator.comparingInt(record -> record.index));
+		System.gc();
+		phase.liveHeapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Processes a function within the current phase and measures it.
+	 *
+	 * @param <Result> The result of processing a function.
+	 * @param index    The position of the function in the source.
+	 * @param name     The name of the function.
+	 * @param work     The processing of the function.
+	 * @return The result of processing the function.
+	 */
+	public static <Result> Result function(final int index, final String name, final Supplier<Result> work) {
+		final Stats stats = Stats.stats.get();
+		if (stats == null || stats.openPhases.empty())
+			return work.get();
+		final Record phase = stats.openPhases.peek();
+		final Record record = new Record(name, index);
+		function.set(record);
+		try {
+			return work.get();
+		} finally {
+			function.remove();
+			record.close();
+			phase.functions.add(record);
+
+			// Work done by other threads is added to the phase.
+			if (record.thread != phase.thread) {
+				synchronized (phase) {
+					phase.cpuNanos += record.cpuNanos;
+					phase.allocatedBytes += record.allocatedBytes;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the size of an intermediate representation of the function being
+	 * processed by the current thread or, if none, of the current phase.
+	 *
+	 * @param name  The name of the size.
+	 * @param value The size.
+	 */
+	public static void size(final String name, final long value) {
+		final Stats stats = Stats.stats.get();
+		if (stats == null)
+			return;
+		final Record record = function.get() != null ? function.get()
+				: (stats.openPhases.empty() ? stats.compilation : stats.openPhases.peek());
+		synchronized (record) {
+			record.sizes.put(name, value);
+		}
+	}
+
+	/**
+	 * Records the size of an intermediate representation of a function processed
+	 * by the current phase.
+	 *
+	 * @param function The name of the function.
+	 * @param name     The name of the size.
+	 * @param value    The size.
+	 */
+	public static void size(final String function, final String name, final long value) {
+		final Stats stats = Stats.stats.get();
+		if (stats == null || stats.openPhases.empty())
+			return;
+		final Record phase = stats.openPhases.peek();
+		synchronized (phase.functions) {
+			Record record = null;
+			for (final Record known : phase.functions)
+				if (known.name.equals(function))
+					record = known;
+			if (record == null) {
+				record = new Record(function, phase.functions.size());
+				record.wallNanos = record.cpuNanos = record.allocatedBytes = -1;
+				record.closed = true;
+				phase.functions.add(record);
+			}
+			record.sizes.put(name, value);
+		}
+	}
+
+	/**
+	 * Ends collecting statistics of the current compilation and writes them out.
+	 *
+	 * @param exitCode The exit code of the compiler.
+	 */
+	public static void finish(final int exitCode) {
+		final Stats stats = Stats.stats.get();
+		if (stats == null)
+			return;
+		Stats.stats.set(null);
+		stats.compilation.close();
+
+		try (final PrintWriter json = new PrintWriter(
+				new BufferedWriter(new FileWriter(lang24.Compiler.file(stats.fileName))))) {
+			json.println("{");
+			json.printf("  \"source\": %s,%n", string(stats.compilation.name));
+			json.printf("  \"exitCode\": %d,%n", exitCode);
+			json.printf("  \"jobs\": %d,%n", Jobs.jobs.get());
+			json.printf("  \"wallNanos\": %d,%n", stats.compilation.wallNanos);
+			json.printf("  \"cpuNanos\": %d,%n", stats.compilation.cpuNanos);
+			json.printf("  \"allocatedBytes\": %d,%n", stats.compilation.allocatedBytes);
+			json.printf("  \"sizes\": %s,%n", sizes(stats.compilation));
+			json.println("  \"phases\": [");
+			final List<Record> phases = stats.phases.stream().filter(phase -> phase.closed).toList();
+			for (int p = 0; p < phases.size(); p++) {
+				final Record phase = phases.get(p);
+				json.println("    {");
+				json.printf("      \"name\": %s,%n", string(phase.name));
+				json.printf("      \"wallNanos\": %d,%n", phase.wallNanos);
+				json.printf("      \"cpuNanos\": %d,%n", phase.cpuNanos);
+				json.printf("      \"allocatedBytes\": %d,%n", phase.allocatedBytes);
+				json.printf("      \"liveHeapBytes\": %d,%n", phase.liveHeapBytes);
+				json.printf("      \"sizes\": %s,%n", sizes(phase));
+				json.print("      \"functions\": [");
+				for (int f = 0; f < phase.functions.size(); f++) {
+					final Record function = phase.functions.get(f);
+					json.printf("%n        { \"name\": %s, ", string(function.name));
+					if (function.wallNanos >= 0)
+						json.printf("\"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d, ",
+								function.wallNanos, function.cpuNanos, function.allocatedBytes);
+					json.printf("\"sizes\": %s }%s", sizes(function), f + 1 < phase.functions.size() ? "," : "");
+				}
+				json.println(phase.functions.isEmpty() ? "]" : String.format("%n      ]"));
+				json.println(p + 1 < phases.size() ? "    }," : "    }");
+			}
+			json.println("  ]");
+			json.println("}");
+		} catch (final IOException ex) {
+			Report.warning("Cannot write statistics file '" + stats.fileName + "'.");
+		}
+	}
+
+	/** Returns the sizes of a record as a JSON object. */
+	private static String sizes(final Record record) {
+		final StringJoiner sizes = new StringJoiner(", ", "{", "}");
+		for (final Map.Entry<String, Long> size : record.sizes.entrySet())
+			sizes.add(string(size.getKey()) + ": " + size.getValue());
+		return sizes.toString();
+	}
+
+	/** Returns a string as a JSON string. */
+	private static String string(final String value) {
+		final StringBuilder string = new StringBuilder("\"");
+		for (int c = 0; c < value.length(); c++) {
+			final char ch = value.charAt(c);
+			switch (ch) {
+			case '"' -> string.append("\\\"");
+			case '\\' -> string.append("\\\\");
+			default -> {
+				if (ch < 0x20)
+					string.append(String.format("\\u%04x", (int) ch));
+				else
+					string.append(ch);
+			}
+			}
+		}
+		return string.append('"').toString();
+	}
+
+}
@@ -1,5 +1,6 @@
 package lang24.phase.abstr;
 
+import lang24.*;
 import lang24.data.ast.tree.*;
 import lang24.phase.*;
 
@@ -10,8 +11,8 @@ import lang24.phase.*;
  */
 public class Abstr extends Phase {
 
-	/** The abstract syntax tree. */
-	public static AstNode tree;
+	/** The abstract syntax tree (of the current compilation). */
+	public static final CompilationContext.Local<AstNode> tree = new CompilationContext.Local<AstNode>(() -> null);
 
 	/**
 	 * Phase construction.
@@ -70,10 +70,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		typDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(typDefn.id));
 		logger.addAttribute("label", typDefn.getClass().getSimpleName());
 		logger.addAttribute("name", typDefn.name);
+		typDefn.location().log(logger);
 		typDefn.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			typDefn.accept(subvisitor, null);
@@ -85,10 +85,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		varDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(varDefn.id));
 		logger.addAttribute("label", varDefn.getClass().getSimpleName());
 		logger.addAttribute("name", varDefn.name);
+		varDefn.location().log(logger);
 
 		varDefn.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -101,10 +101,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		funDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(funDefn.id));
 		logger.addAttribute("label", funDefn.getClass().getSimpleName());
 		logger.addAttribute("name", funDefn.name);
+		funDefn.location().log(logger);
 		if (funDefn.pars != null)
 			funDefn.pars.accept(this, "AstParDefn");
 		if (funDefn.stmt != null)
@@ -122,10 +122,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		refParDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(refParDefn.id));
 		logger.addAttribute("label", refParDefn.getClass().getSimpleName());
 		logger.addAttribute("name", refParDefn.name);
+		refParDefn.location().log(logger);
 		refParDefn.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			refParDefn.accept(subvisitor, null);
@@ -137,10 +137,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		valParDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(valParDefn.id));
 		logger.addAttribute("label", valParDefn.getClass().getSimpleName());
 		logger.addAttribute("name", valParDefn.name);
+		valParDefn.location().log(logger);
 		valParDefn.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			valParDefn.accept(subvisitor, null);
@@ -154,9 +154,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		arrExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(arrExpr.id));
 		logger.addAttribute("label", arrExpr.getClass().getSimpleName());
+		arrExpr.location().log(logger);
 		arrExpr.arr.accept(this, null);
 		arrExpr.idx.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -169,10 +169,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		atomExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(atomExpr.id));
 		logger.addAttribute("label", atomExpr.getClass().getSimpleName());
 		logger.addAttribute("name", atomExpr.value);
+		atomExpr.location().log(logger);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			atomExpr.accept(subvisitor, null);
 		logger.endElement();
@@ -183,10 +183,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		binExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(binExpr.id));
 		logger.addAttribute("label", binExpr.getClass().getSimpleName());
 		logger.addAttribute("name", binExpr.oper.name());
+		binExpr.location().log(logger);
 		binExpr.fstExpr.accept(this, null);
 		binExpr.sndExpr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -199,10 +199,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		callExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(callExpr.id));
 		logger.addAttribute("label", callExpr.getClass().getSimpleName());
 		logger.addAttribute("name", callExpr.name);
+		callExpr.location().log(logger);
 		if (callExpr.args != null)
 			callExpr.args.accept(this, "AstExpr");
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -215,9 +215,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		castExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(castExpr.id));
 		logger.addAttribute("label", castExpr.getClass().getSimpleName());
+		castExpr.location().log(logger);
 		castExpr.type.accept(this, null);
 		castExpr.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -230,10 +230,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		cmpExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(cmpExpr.id));
 		logger.addAttribute("label", cmpExpr.getClass().getSimpleName());
 		logger.addAttribute("name", "." + cmpExpr.name);
+		cmpExpr.location().log(logger);
 		cmpExpr.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			cmpExpr.accept(subvisitor, null);
@@ -245,10 +245,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		nameExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(nameExpr.id));
 		logger.addAttribute("label", nameExpr.getClass().getSimpleName());
 		logger.addAttribute("name", nameExpr.name);
+		nameExpr.location().log(logger);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			nameExpr.accept(subvisitor, null);
 		logger.endElement();
@@ -259,10 +259,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		pfxExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(pfxExpr.id));
 		logger.addAttribute("label", pfxExpr.getClass().getSimpleName());
 		logger.addAttribute("name", pfxExpr.oper.name());
+		pfxExpr.location().log(logger);
 		pfxExpr.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			pfxExpr.accept(subvisitor, null);
@@ -274,10 +274,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		sfxExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(sfxExpr.id));
 		logger.addAttribute("label", sfxExpr.getClass().getSimpleName());
 		logger.addAttribute("name", sfxExpr.oper.name());
+		sfxExpr.location().log(logger);
 		sfxExpr.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			sfxExpr.accept(subvisitor, null);
@@ -289,9 +289,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		sizeofExpr.location().log(logger);
 		logger.addAttribute("id", Integer.toString(sizeofExpr.id));
 		logger.addAttribute("label", sizeofExpr.getClass().getSimpleName());
+		sizeofExpr.location().log(logger);
 		sizeofExpr.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			sizeofExpr.accept(subvisitor, null);
@@ -305,9 +305,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		assignStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(assignStmt.id));
 		logger.addAttribute("label", assignStmt.getClass().getSimpleName());
+		assignStmt.location().log(logger);
 		assignStmt.dst.accept(this, null);
 		assignStmt.src.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -320,9 +320,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		blockStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(blockStmt.id));
 		logger.addAttribute("label", blockStmt.getClass().getSimpleName());
+		blockStmt.location().log(logger);
 		if (blockStmt.stmts != null)
 			blockStmt.stmts.accept(this, "AstStmt");
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -335,9 +335,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		exprStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(exprStmt.id));
 		logger.addAttribute("label", exprStmt.getClass().getSimpleName());
+		exprStmt.location().log(logger);
 		exprStmt.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			exprStmt.accept(subvisitor, null);
@@ -349,9 +349,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		ifStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(ifStmt.id));
 		logger.addAttribute("label", ifStmt.getClass().getSimpleName());
+		ifStmt.location().log(logger);
 		ifStmt.cond.accept(this, null);
 		ifStmt.thenStmt.accept(this, null);
 		if (ifStmt.elseStmt != null)
@@ -366,9 +366,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		retStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(retStmt.id));
 		logger.addAttribute("label", retStmt.getClass().getSimpleName());
+		retStmt.location().log(logger);
 		retStmt.expr.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			retStmt.accept(subvisitor, null);
@@ -380,9 +380,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		whileStmt.location().log(logger);
 		logger.addAttribute("id", Integer.toString(whileStmt.id));
 		logger.addAttribute("label", whileStmt.getClass().getSimpleName());
+		whileStmt.location().log(logger);
 		whileStmt.cond.accept(this, null);
 		whileStmt.stmt.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -397,9 +397,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		arrType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(arrType.id));
 		logger.addAttribute("label", arrType.getClass().getSimpleName());
+		arrType.location().log(logger);
 		arrType.elemType.accept(this, null);
 		arrType.size.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -412,10 +412,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		atomType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(atomType.id));
 		logger.addAttribute("label", atomType.getClass().getSimpleName());
 		logger.addAttribute("name", atomType.type.name());
+		atomType.location().log(logger);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			atomType.accept(subvisitor, null);
 		logger.endElement();
@@ -426,10 +426,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		nameType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(nameType.id));
 		logger.addAttribute("label", nameType.getClass().getSimpleName());
 		logger.addAttribute("name", nameType.name);
+		nameType.location().log(logger);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			nameType.accept(subvisitor, null);
 		logger.endElement();
@@ -440,9 +440,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		ptrType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(ptrType.id));
 		logger.addAttribute("label", ptrType.getClass().getSimpleName());
+		ptrType.location().log(logger);
 		ptrType.baseType.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			ptrType.accept(subvisitor, null);
@@ -454,9 +454,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		strType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(strType.id));
 		logger.addAttribute("label", strType.getClass().getSimpleName());
+		strType.location().log(logger);
 		if (strType.cmps != null)
 			strType.cmps.accept(this, "AstCmpDefn");
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -469,9 +469,9 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		uniType.location().log(logger);
 		logger.addAttribute("id", Integer.toString(uniType.id));
 		logger.addAttribute("label", uniType.getClass().getSimpleName());
+		uniType.location().log(logger);
 		if (uniType.cmps != null)
 			uniType.cmps.accept(this, "AstCmpDefn");
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
@@ -484,10 +484,10 @@ public class AbstrLogger implements AstVisitor<Object, String> {
 		if (logger == null)
 			return null;
 		logger.begElement("node");
-		cmpDefn.location().log(logger);
 		logger.addAttribute("id", Integer.toString(cmpDefn.id));
 		logger.addAttribute("label", cmpDefn.getClass().getSimpleName());
 		logger.addAttribute("name", cmpDefn.name);
+		cmpDefn.location().log(logger);
 		cmpDefn.type.accept(this, null);
 		for (AstVisitor<?, ?> subvisitor : subvisitors)
 			cmpDefn.accept(subvisitor, null);
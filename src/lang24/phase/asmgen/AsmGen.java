@@ -3,6 +3,7 @@ package lang24.phase.asmgen;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import lang24.CompilationContext;
 import lang24.common.report.Report;
 import lang24.data.imc.code.stmt.ImcStmt;
 import lang24.data.lin.*;
@@ -16,21 +17,12 @@ import lang24.phase.imclin.*;
  */
 public class AsmGen extends Phase {
 
-	public static MemTemp FP;
-
-	public static Vector<Code> codes = new Vector<Code>();  // the final target is to fill this table
-
-	private static final Vector<AsmInstr> instructionsPerFunction = new Vector<>();  // temporary target is to fill this field
+	public static final CompilationContext.Local<Vector<Code>> codes = new CompilationContext.Local<Vector<Code>>(Vector::new);  // the final target is to fill this table
 
 	public AsmGen() {
 		super("asmgen");
 	}
 
-	public static void addInstruction(AsmInstr instr){
-//		logAddedInstruction(instr);
-		instructionsPerFunction.add(instr);
-	}
-
 	private Code replaceWithFp(Code code) {
 
 		MemTemp FP = code.frame.FP;  // $253
@@ -54,47 +46,58 @@ public class AsmGen extends Phase {
 		Report.info("With uses: " + instr.uses().stream().map(MemTemp::toString).collect(Collectors.joining(", ")));
 	}
 
-	public static void addSomeInstructions(List<AsmInstr> instrs){
-		instrs.forEach(AsmGen::addInstruction);
+	/**
+	 * Generates code of all functions (see {@link Jobs}).
+	 */
+	public void genAsmCodes() {
+		codes.get().addAll(Jobs.forEachFunction(Jobs.Stage.ASMGEN, ImcLin.codeChunks(),
+				codeChunk -> {
+					FunctionEvent event = new FunctionEvent();
+					event.begin();
+					Code code = replaceWithFp(processLinCodeChunkIntoCode(codeChunk));
+					Stats.size("asmInstrs", code.instrs.size());
+					if (event.shouldCommit()) {
+						event.phase = "asmgen";
+						event.function = code.frame.label.name;
+						event.instrs = code.instrs.size();
+						event.temps = numTemps(code);
+						event.commit();
+					}
+					return code;
+				}));
 	}
 
-	private final CodeGenerator codeGenerator = new CodeGenerator();
-
-	public void genAsmCodes() {
-		for (LinCodeChunk codeChunk : ImcLin.codeChunks()) {
-			FP = codeChunk.frame.FP;
-			Code code = processLinCodeChunkIntoCode(codeChunk);
-			codes.add(replaceWithFp(code));
+	private static int numTemps(Code code) {
+		HashSet<MemTemp> temps = new HashSet<>();
+		for (AsmInstr instr : code.instrs) {
+			temps.addAll(instr.uses());
+			temps.addAll(instr.defs());
 		}
-
+		return temps.size();
 	}
 
 	/**
 	 * processes each Code fragment
 	 */
 	private Code processLinCodeChunkIntoCode(LinCodeChunk linCodeChunk) {
-		CodeGenerator.FP = linCodeChunk.frame.FP;
-		CodeGenerator.RV = linCodeChunk.frame.RV;
+		CodeGenerator codeGenerator = new CodeGenerator(linCodeChunk.frame);
 
-		processStatements(linCodeChunk.stmts());  // processes each statement
+		processStatements(codeGenerator, linCodeChunk.stmts());  // processes each statement
 
-		Code code = new Code(linCodeChunk.frame,
+		return new Code(linCodeChunk.frame,
 				linCodeChunk.entryLabel,
 				linCodeChunk.exitLabel,
-				instructionsPerFunction);  // creates new instance of code
-
-		instructionsPerFunction.clear();  // clean vector of instructions per this functions
-		return code;  // return the result
+				codeGenerator.instructions());  // creates new instance of code
 	}
 
-	private void processStatements(Vector<ImcStmt> stmts) {
+	private void processStatements(CodeGenerator codeGenerator, Vector<ImcStmt> stmts) {
 		stmts.forEach(s -> codeGenerator.visit(s, null));
 	}
 
 	public void log() {
 		if (logger == null)
 			return;
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes.get()) {
 			logger.begElement("code");
 			logger.addAttribute("prologue", code.entryLabel.name);
 			logger.addAttribute("body", code.entryLabel.name);
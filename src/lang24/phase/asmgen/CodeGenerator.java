@@ -9,6 +9,7 @@ import lang24.data.imc.code.ImcInstr;
 import lang24.data.imc.code.expr.*;
 import lang24.data.imc.code.stmt.*;
 import lang24.data.imc.visitor.ImcVisitor;
+import lang24.data.mem.MemFrame;
 import lang24.data.mem.MemLabel;
 import lang24.data.mem.MemTemp;
 
@@ -16,20 +17,39 @@ import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static lang24.phase.asmgen.AsmGen.addInstruction;
-import static lang24.phase.asmgen.AsmGen.addSomeInstructions;
-
 public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
-    public static MemTemp FP;
-    public static MemTemp RV;
+    public final MemTemp FP;
+    public final MemTemp RV;
     private final String one = "1";
     private final String zero = "0";
     private final HashMap<MemTemp, ImcNAME> nameTempMap = new HashMap<>();  // todo: probably we should remove it
+    private final Vector<AsmInstr> instructions = new Vector<>();  // instructions of the function being generated
+
+    public CodeGenerator(MemFrame frame) {
+        this.FP = frame.FP;
+        this.RV = frame.RV;
+    }
+
+    public Vector<AsmInstr> instructions() {
+        return instructions;
+    }
 
+    private void addInstruction(AsmInstr instr) {
+        instructions.add(instr);
+    }
+
+    private void addSomeInstructions(List<AsmInstr> instrs) {
+        instructions.addAll(instrs);
+    }
 
 
     public static AsmOPER generateAsmOper(String oper, InstrArgument... args) {
+        return generateAsmOper(null, oper, args);
+    }
+
+    // FP is printed as $253 rather than as a temp
+    private static AsmOPER generateAsmOper(MemTemp FP, String oper, InstrArgument... args) {
         Vector<MemTemp> defns = new Vector<>();
         Vector<MemTemp> uses = new Vector<>();
         Vector<MemLabel> jumps = new Vector<>();
@@ -57,7 +77,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
         String instr = String.format("%s %s", oper,
                 Arrays.stream(args)
-                        .map(InstrArgument::toString)
+                        .map(arg -> arg.toString(FP))
                         .collect(Collectors.joining(",")));
 
         boolean isMove = (oper.equals(Instructions.ADD) &&                                    // ADD T1 T2 0
@@ -84,7 +104,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
     @Override
     public MemTemp visit(ImcJUMP jump, ImcInstr caller) {
-        AsmOPER jmpInstr = generateAsmOper(Instructions.JMP, new InstrArgument(jump.label));
+        AsmOPER jmpInstr = generateAsmOper(FP, Instructions.JMP, new InstrArgument(jump.label));
         addInstruction(jmpInstr);
         return null;
     }
@@ -95,7 +115,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
 
         // will run if condition is positive???
-        AsmOPER bpInstr = generateAsmOper(Instructions.BP,
+        AsmOPER bpInstr = generateAsmOper(FP, Instructions.BP,
                 new InstrArgument(conditionResult),
                 new InstrArgument(cjump.posLabel));
 
@@ -131,12 +151,12 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
         AsmOPER oper = null;
 
         if(instr.equals(Instructions.STO)) {
-            oper = generateAsmOper(instr,
+            oper = generateAsmOper(FP, instr,
                     new InstrArgument(src),
                     new InstrArgument(dst, InstrArgument.Type.Defn),
                     new InstrArgument(offset));
         } else {
-            oper = generateAsmOper(instr,
+            oper = generateAsmOper(FP, instr,
                     new InstrArgument(dst, InstrArgument.Type.Defn),
                     new InstrArgument(src),
                     new InstrArgument(offset));
@@ -154,7 +174,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
         AsmOPER PUSHJInstr = new AsmOPER("PUSHJ $8," + call.label.name, null, null, new Vector<>(List.of(call.label)));
         MemTemp stackPointerTemp = new MemTemp();
 
-        AsmOPER addInstr = generateAsmOper(Instructions.ADD,
+        AsmOPER addInstr = generateAsmOper(FP, Instructions.ADD,
                 new InstrArgument(stackPointerTemp, InstrArgument.Type.Defn),
                 new InstrArgument(Instructions.SP),
                 new InstrArgument("0"));
@@ -209,13 +229,13 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
         InstrArgument thirdArgument  = new InstrArgument(sndResult);
 
         // widely used results
-        AsmOPER cmpResult = generateAsmOper(Instructions.CMP, firstArgument, secondArgument, thirdArgument);
+        AsmOPER cmpResult = generateAsmOper(FP, Instructions.CMP, firstArgument, secondArgument, thirdArgument);
 
 
         switch (binOp.oper) {
             // Boolean responsibilities
             case OR  -> {
-                AsmOPER result = generateAsmOper(Instructions.OR,
+                AsmOPER result = generateAsmOper(FP, Instructions.OR,
                         firstArgument, secondArgument, thirdArgument
 
                 );
@@ -225,13 +245,13 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
             }
             case AND -> {
 
-                AsmOPER result = generateAsmOper(Instructions.AND, firstArgument, secondArgument, thirdArgument);
+                AsmOPER result = generateAsmOper(FP, Instructions.AND, firstArgument, secondArgument, thirdArgument);
 
                 finalTemp = result.defs().firstElement();
                 addInstruction(result);
             }
             case NEQ -> {
-                AsmOPER result = generateAsmOper(Instructions.CMP,
+                AsmOPER result = generateAsmOper(FP, Instructions.CMP,
                         firstArgument, secondArgument, thirdArgument
 
                 );
@@ -240,7 +260,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addInstruction(result);
             }
             case EQU -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ZSZ,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ZSZ,
                         firstArgument, secondArgument, new InstrArgument(one)
                 );
 
@@ -248,7 +268,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addSomeInstructions(List.of(cmpResult, finalResult));
             }
             case LTH -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ZSN,  // zero or set if negative
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ZSN,  // zero or set if negative
                         firstArgument,
                         firstArgument,
                         new InstrArgument(one)
@@ -258,7 +278,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addSomeInstructions(List.of(cmpResult, finalResult));
             }
             case GTH -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ZSP,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ZSP,
                         firstArgument,
                          secondArgument,
                         new InstrArgument(one)
@@ -268,7 +288,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addSomeInstructions(List.of(cmpResult, finalResult));
             }
             case LEQ -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ZSNP,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ZSNP,
                         firstArgument,
                          secondArgument,
                         new InstrArgument(one)
@@ -278,7 +298,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addSomeInstructions(List.of(cmpResult, finalResult));
             }
             case GEQ -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ZSNN,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ZSNN,
                         firstArgument,
                          secondArgument,
                         new InstrArgument(one)
@@ -290,7 +310,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
             // Arithmetical responsibilities
             case ADD -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.ADD,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.ADD,
                         firstArgument, secondArgument, thirdArgument
                 );
 
@@ -299,7 +319,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
             }
 
             case SUB -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.SUB,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.SUB,
                         firstArgument, secondArgument, thirdArgument
                 );
 
@@ -307,7 +327,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 addInstruction(finalResult);
             }
             case MUL -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.MUL,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.MUL,
                         firstArgument, secondArgument, thirdArgument
 
                 );
@@ -317,7 +337,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
             }
 
             case DIV -> {
-                AsmOPER finalResult = generateAsmOper(Instructions.DIV,
+                AsmOPER finalResult = generateAsmOper(FP, Instructions.DIV,
                         firstArgument, secondArgument, thirdArgument
                 );
 
@@ -327,19 +347,19 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
             case MOD -> {
                 MemTemp newTemp = new MemTemp();
 
-                AsmOPER divResult = generateAsmOper(Instructions.DIV,
+                AsmOPER divResult = generateAsmOper(FP, Instructions.DIV,
                         new InstrArgument(newTemp, InstrArgument.Type.Defn),
                         new InstrArgument((MemTemp) fstResult ),  // todo: fix it
                         new InstrArgument(sndResult )
                 );
 
-                AsmOPER mulResult = generateAsmOper(Instructions.MUL,
+                AsmOPER mulResult = generateAsmOper(FP, Instructions.MUL,
                         new InstrArgument(newTemp, InstrArgument.Type.Defn),
                         new InstrArgument(newTemp),
                         new InstrArgument(sndResult )
                 );
 
-                AsmOPER subResult = generateAsmOper(Instructions.SUB,
+                AsmOPER subResult = generateAsmOper(FP, Instructions.SUB,
                         new InstrArgument(newTemp, InstrArgument.Type.Defn),
                         new InstrArgument((MemTemp) fstResult ),
                         new InstrArgument(newTemp)
@@ -370,7 +390,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
         switch (unOp.oper) {
             case NOT -> {
 
-                AsmOPER addResult = generateAsmOper(Instructions.CMP,
+                AsmOPER addResult = generateAsmOper(FP, Instructions.CMP,
                         new InstrArgument(result , InstrArgument.Type.Defn),
                         new InstrArgument(result ),
                         new InstrArgument(zero)
@@ -384,7 +404,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
                 ImcCONST zeroConst = new ImcCONST(0);
                 MemTemp zeroConstTemp = zeroConst.accept(this, null);
 
-                AsmOPER addResult = generateAsmOper(Instructions.SUB,
+                AsmOPER addResult = generateAsmOper(FP, Instructions.SUB,
                         new InstrArgument(result , InstrArgument.Type.Defn),
                         new InstrArgument(zeroConstTemp),
                         new InstrArgument(result)
@@ -419,7 +439,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
 
         MemTemp dst = src.equals(FP) ? new MemTemp() : src;
 
-        AsmOPER oper = generateAsmOper(Instructions.LDO,
+        AsmOPER oper = generateAsmOper(FP, Instructions.LDO,
                 new InstrArgument(dst, InstrArgument.Type.Defn),
                 new InstrArgument(src),
                 new InstrArgument(offset)
@@ -475,7 +495,7 @@ public class CodeGenerator implements ImcVisitor<MemTemp, ImcInstr> {
     public MemTemp visit(ImcNAME name, ImcInstr caller) {
         MemTemp newMem = new MemTemp();
 
-        AsmOPER setOper = generateAsmOper(Instructions.LDA,
+        AsmOPER setOper = generateAsmOper(FP, Instructions.LDA,
                 new InstrArgument(newMem, InstrArgument.Type.Defn),
                 new InstrArgument(name.label));
 
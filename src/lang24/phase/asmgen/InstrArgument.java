@@ -64,9 +64,13 @@ public class InstrArgument {
 
     @Override
     public String toString() {
+        return toString(null);
+    }
+
+    public String toString(MemTemp FP) {
         if(isMemTemp()) {
 
-            if(valueTemp.equals(CodeGenerator.FP))
+            if(valueTemp.equals(FP))
                 return Instructions.FP;
 
             return "`" + (type == Type.Use ? "s" : "d") + id;
@@ -1,11 +1,14 @@
 package lang24.phase.end;
 
+import lang24.CompilationContext;
+import lang24.Compiler;
 import lang24.common.report.Report;
 import lang24.data.asm.AsmInstr;
 import lang24.data.asm.AsmLABEL;
 import lang24.data.asm.AsmOPER;
 import lang24.data.asm.Code;
 import lang24.data.lin.LinDataChunk;
+import lang24.phase.Phase;
 import lang24.phase.asmgen.AsmGen;
 import lang24.phase.imclin.ImcLin;
 import lang24.phase.regall.RegAll;
@@ -13,12 +16,13 @@ import lang24.phase.regall.RegAll;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 
-public class PutItAllTogether {
-    private final static String fileName = "out.mms";
+public class PutItAllTogether extends Phase {
     private final static String staticVariablesReplace = "{{static_variables}}";
     private final static String localSizeReplace = "{{local_size}}";
     private final static String framePlusTempSizeReplace = "{{frame_temp_size}}";
@@ -26,14 +30,20 @@ public class PutItAllTogether {
     private final static String bodyLabelReplace = "{{body_label}}";
     private final static String functionNameReplace = "{{function_name}}";
     private final static String labelToReplace = "{{label}}";
+    // one free list head per size class of the heap (see HeapAllocator)
+    private final static int freeListsSize = 8 * 64;
     private String functionName = "";
 
+    public PutItAllTogether() {
+        super("end", false);
+    }
+
 
     public void start() {
         saveToAsmFile();
     }
 
-    public void storeStaticData(FileWriter writer) throws IOException {
+    public void storeStaticData(Writer writer) throws IOException {
         List<String> staticVariables = new ArrayList<>();
         for(LinDataChunk data : ImcLin.dataChunks()) {
             String init = data.init == null ? "" : data.init;
@@ -45,8 +55,8 @@ public class PutItAllTogether {
         writer.write(getStaticPartFormatString(stringToAdd));
     }
 
-    public void addMainFunction(FileWriter writer) throws IOException {
-        int initialSize = 160;
+    public void addMainFunction(Writer writer) throws IOException {
+        int initialSize = 160 + freeListsSize;
         int size = ImcLin.dataChunks()
                 .stream()
                 .map(c -> (int)c.size)
@@ -57,18 +67,31 @@ public class PutItAllTogether {
     }
 
     public void saveToAsmFile() {
-        try {
-            File file = new File(fileName);
-            if(file.exists()) {
-                file.delete();
-            }
+        CompilationContext context = CompilationContext.current();
+        if (context.assemblyInMemory()) {
+            StringWriter writer = new StringWriter();
+            writeAsm(writer);
+            context.setAssembly(writer.toString());
+            return;
+        }
 
-            FileWriter writer = new FileWriter(fileName);
+        File file = Compiler.file(Compiler.cmdLineOptValue("--dst-file-name"));
+        if(file.exists()) {
+            file.delete();
+        }
+        try (FileWriter writer = new FileWriter(file)) {
+            writeAsm(writer);
+        } catch (IOException ex) {
+            throw new Report.Error("Saving to mms file exception: " + ex.getMessage());
+        }
+    }
 
+    private void writeAsm(Writer writer) {
+        try {
             storeStaticData(writer);
             addMainFunction(writer);
 
-            for(Code code : AsmGen.codes) {
+            for(Code code : AsmGen.codes.get()) {
                 functionName = code.frame.label.name;
                 Report.info("PIAT: " + functionName);
 
@@ -80,20 +103,19 @@ public class PutItAllTogether {
             }
 
             writer.write(stdLibString);
-            writer.close();
         } catch (IOException ex) {
             throw new Report.Error("Saving to mms file exception: " + ex.getMessage());
         }
     }
 
-    private void addPrologue(Code code, FileWriter writer) throws IOException {
+    private void addPrologue(Code code, Writer writer) throws IOException {
         long localsSize = code.frame.locsSize;
         long frameSizeAndTempSize = code.frame.size + code.tempSize;
         String bodyLabel = code.entryLabel.name;
         writer.write(getPrologueFunctionFormatString(functionName, functionName, localsSize, frameSizeAndTempSize, bodyLabel));
     }
 
-    private void addEpilogue(Code code, FileWriter writer) throws IOException {
+    private void addEpilogue(Code code, Writer writer) throws IOException {
         long localsSize = code.frame.locsSize;
         writer.write(getEpilogueFunctionFormatString(functionName, code.exitLabel.name, localsSize));
     }
@@ -117,7 +139,7 @@ public class PutItAllTogether {
                 stringBuilder.append("\t\tSWYM\n");
             }
             else {
-                String[] instrParts = oper.toString(RegAll.tempToReg).split(" ", 2);
+                String[] instrParts = oper.toString(RegAll.tempToReg.get()).split(" ", 2);
                 stringBuilder.append(String.format("\t%s\t%s\n", instrParts[0], instrParts[1]));
             }
         }
@@ -144,6 +166,8 @@ public class PutItAllTogether {
                     LOC	exit+104
             code		BYTE	1,10,0
                     LOC	code+24
+            FreeLists	OCTA	0
+                    LOC	FreeLists+512
             %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
                 
             """;
@@ -171,7 +195,7 @@ public class PutItAllTogether {
                     INCML	$0,0
                     INCMH	$0,0
                     INCH	$0,8192
-                    SET	$0,$252
+                    SET	$252,$0
             %	Frame Pointer ($253), Stack Pointer($254)
             %	@Stack_Segment (0x0015 50F7 DCA7 0000 -> 0x7FFF FFFF FFFF FFF8)
                     SETL	$0,65528
@@ -297,6 +321,57 @@ public class PutItAllTogether {
                     LDB	$0,$0,0
                     STO	$0,$254,0
                     POP
+            
+            %	Allocate memory: blocks of 2^k bytes (k >= 3) preceded by a header
+            %	holding the size requested, reused from the free list of class k
+            _new		SWYM
+                    LDO	$0,$254,8
+                    SET	$1,8
+                    SET	$2,3
+            _newClass	CMP	$3,$1,$0
+                    BNN	$3,_newFound
+                    CMP	$3,$2,62
+                    BNN	$3,_newFound
+                    SL	$1,$1,1
+                    ADD	$2,$2,1
+                    JMP	_newClass
+            _newFound	LDA	$3,FreeLists
+                    SL	$4,$2,3
+                    LDO	$5,$3,$4
+                    BZ	$5,_newFresh
+            %	Take the block off the free list
+                    LDO	$6,$5,0
+                    STO	$6,$3,$4
+                    JMP	_newDone
+            %	Cut a fresh block off the end of the heap
+            _newFresh	ADD	$5,$252,8
+                    ADD	$252,$5,$1
+            _newDone	SUB	$6,$5,8
+                    STO	$0,$6,0
+                    STO	$5,$254,0
+                    POP
+            
+            %	Free memory: put the block on the free list of its class
+            _del		SWYM
+                    LDO	$0,$254,8
+                    BZ	$0,_delDone
+                    SUB	$1,$0,8
+                    LDO	$1,$1,0
+                    SET	$2,8
+                    SET	$3,3
+            _delClass	CMP	$4,$2,$1
+                    BNN	$4,_delFound
+                    CMP	$4,$3,62
+                    BNN	$4,_delFound
+                    SL	$2,$2,1
+                    ADD	$3,$3,1
+                    JMP	_delClass
+            _delFound	LDA	$4,FreeLists
+                    SL	$5,$3,3
+                    LDO	$6,$4,$5
+                    STO	$6,$0,0
+                    STO	$0,$4,$5
+            _delDone	POP
             %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
             \s
             """;
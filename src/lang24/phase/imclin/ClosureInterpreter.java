@@ -0,0 +1,592 @@
+package lang24.phase.imclin;
+
+import java.io.*;
+import java.util.*;
+import lang24.*;
+import lang24.common.report.*;
+import lang24.data.mem.*;
+import lang24.data.imc.code.expr.*;
+import lang24.data.imc.code.stmt.*;
+import lang24.data.lin.*;
+
+/**
+ * An interpreter of the linearized intermediate code that compiles every code
+ * chunk into closures before running it (see {@code --interpreter=closure}).
+ *
+ * Each statement of a code chunk is compiled once into a {@link Stmt} that
+ * returns the index of the next statement, and each expression into an
+ * {@link Expr}. Jump targets are resolved to statement indices, names of data
+ * chunks to addresses and temporaries to indices into the register file of a
+ * frame, so that nothing is looked up while the program runs. The program
+ * behaves exactly as if run by {@link Interpreter}.
+ */
+public class ClosureInterpreter {
+
+	/** The index returned by a statement that returns from the function. */
+	private static final int RETURN = -1;
+
+	/** The index returned by a statement that has pushed a new frame. */
+	private static final int CALL = -2;
+
+	/** A pending move storing the result of a call to memory. */
+	private static final int PENDING_MEM = -2;
+
+	/** No pending move. */
+	private static final int PENDING_NONE = -1;
+
+	/** A compiled expression. */
+	private interface Expr {
+
+		/**
+		 * Evaluates the expression.
+		 *
+		 * @param frame The frame of the function being executed.
+		 * @return The value.
+		 */
+		long eval(Frame frame);
+
+	}
+
+	/** A compiled statement. */
+	private interface Stmt {
+
+		/**
+		 * Executes the statement.
+		 *
+		 * @param frame The frame of the function being executed.
+		 * @return The index of the next statement, {@link #RETURN} or {@link #CALL}.
+		 */
+		int exec(Frame frame);
+
+	}
+
+	/** A compiled function. */
+	private static final class Function {
+
+		/** The code chunk. */
+		final LinCodeChunk chunk;
+
+		/** Dense numbers of the function's temporaries. */
+		final HashMap<MemTemp, Integer> indices = new HashMap<MemTemp, Integer>();
+
+		/** The function's temporaries by their dense numbers. */
+		final Vector<MemTemp> temps = new Vector<MemTemp>();
+
+		/** The statements. */
+		Stmt[] stmts;
+
+		/** The index of the first statement. */
+		int entry;
+
+		/** The dense number of the frame pointer. */
+		int fp;
+
+		/** The dense number of the return value. */
+		int rv;
+
+		Function(LinCodeChunk chunk) {
+			this.chunk = chunk;
+		}
+
+		/** Returns the dense number of a temporary. */
+		int index(MemTemp temp) {
+			Integer index = indices.get(temp);
+			if (index == null) {
+				index = temps.size();
+				indices.put(temp, index);
+				temps.add(temp);
+			}
+			return index;
+		}
+
+	}
+
+	/** A frame on the call stack. */
+	private static final class Frame {
+
+		/** The function being executed. */
+		Function function;
+
+		/** Values of temporaries. */
+		long[] regs = new long[0];
+
+		/** Whether temporaries have been written to. */
+		boolean[] defined = new boolean[0];
+
+		/** The index of the next statement to execute. */
+		int pc;
+
+		/** The destination of the result of a call (a temporary, or a pending kind). */
+		int pending;
+
+		/** The address the result of a call is stored to. */
+		long pendingAddr;
+
+		/** Prepares the frame for a new call. */
+		void enter(Function function) {
+			this.function = function;
+			int size = function.temps.size();
+			if (regs.length < size) {
+				regs = new long[size];
+				defined = new boolean[size];
+			} else
+				Arrays.fill(defined, 0, size, false);
+			pc = function.entry;
+			pending = PENDING_NONE;
+		}
+
+	}
+
+	/** The input and output of the program. */
+	private final InterpreterIO io;
+
+	/** The memory. */
+	private final PagedMemory memory = new PagedMemory();
+
+	/** The value of the stack pointer. */
+	private long sp = 0x7FFFFFFFFFFFFFF8L;
+
+	/** The value of the heap pointer. */
+	private long hp = 0x2000000000000000L;
+
+	/** The heap. */
+	private final HeapAllocator heap;
+
+	/** Addresses of data chunks. */
+	private final HashMap<MemLabel, Long> dataMemLabels = new HashMap<MemLabel, Long>();
+
+	/** Compiled functions. */
+	private final HashMap<MemLabel, Function> functions = new HashMap<MemLabel, Function>();
+
+	/** The call stack (frames above {@link #depth} are kept for reuse). */
+	private Frame[] frames = new Frame[16];
+
+	/** The depth of the call stack ({@code -1} if empty). */
+	private int depth = -1;
+
+	/**
+	 * Lays out the data chunks and compiles the code chunks.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 */
+	public ClosureInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks) {
+		this(dataChunks, codeChunks, CompilationContext.current().in(), CompilationContext.current().out());
+	}
+
+	/**
+	 * Lays out the data chunks and compiles the code chunks of a program reading
+	 * and writing the specified streams.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 * @param in         The input of the program.
+	 * @param out        The output of the program.
+	 */
+	public ClosureInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks, InputStream in,
+			OutputStream out) {
+		io = new InterpreterIO(in, out);
+		for (LinDataChunk dataChunk : dataChunks) {
+			dataMemLabels.put(dataChunk.label, hp);
+			if (dataChunk.init != null) {
+				for (int c = 0; c < dataChunk.init.length(); c++)
+					memory.store(hp + 8 * c, dataChunk.init.charAt(c));
+				memory.store(hp + 8 * dataChunk.init.length(), 0L);
+			}
+			hp += dataChunk.size;
+		}
+		heap = new HeapAllocator(memory, hp);
+
+		for (LinCodeChunk codeChunk : codeChunks)
+			functions.put(codeChunk.frame.label, new Function(codeChunk));
+		for (Function function : functions.values())
+			compile(function);
+	}
+
+	/* Compilation. */
+
+	private void compile(Function function) {
+		LinCodeChunk chunk = function.chunk;
+		Vector<ImcStmt> stmts = chunk.stmts();
+		function.fp = function.index(chunk.frame.FP);
+		function.rv = function.index(chunk.frame.RV);
+
+		HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+		for (int s = 0; s < stmts.size(); s++)
+			if (stmts.get(s) instanceof ImcLABEL imcLabel)
+				labels.put(imcLabel.label, s);
+		if (!labels.containsKey(chunk.entryLabel))
+			throw new Report.InternalError();
+		function.entry = labels.get(chunk.entryLabel);
+
+		function.stmts = new Stmt[stmts.size() + 1];
+		for (int s = 0; s < stmts.size(); s++)
+			function.stmts[s] = compile(function, labels, stmts.get(s), s + 1);
+		// Running past the last statement fails as in the tree interpreter.
+		int size = stmts.size();
+		function.stmts[size] = frame -> {
+			throw new ArrayIndexOutOfBoundsException("Array index out of range: " + size);
+		};
+	}
+
+	private int target(Function function, HashMap<MemLabel, Integer> labels, MemLabel label) {
+		if (label == function.chunk.exitLabel)
+			return RETURN;
+		Integer target = labels.get(label);
+		if (target == null)
+			throw new Report.InternalError();
+		return target;
+	}
+
+	private Stmt compile(Function function, HashMap<MemLabel, Integer> labels, ImcStmt stmt, int next) {
+		switch (stmt) {
+		case ImcLABEL imcLabel -> {
+			return frame -> next;
+		}
+		case ImcJUMP imcJump -> {
+			int target = target(function, labels, imcJump.label);
+			return frame -> target;
+		}
+		case ImcCJUMP imcCJump -> {
+			Expr cond = compile(function, imcCJump.cond);
+			int pos = target(function, labels, imcCJump.posLabel);
+			int neg = target(function, labels, imcCJump.negLabel);
+			return frame -> cond.eval(frame) != 0 ? pos : neg;
+		}
+		case ImcESTMT imcEStmt -> {
+			if (imcEStmt.expr instanceof ImcCALL imcCall) {
+				Call call = compileCall(function, imcCall);
+				return frame -> {
+					frame.pc = next;
+					return call.call(frame) ? next : CALL;
+				};
+			}
+			Expr expr = compile(function, imcEStmt.expr);
+			return frame -> {
+				expr.eval(frame);
+				return next;
+			};
+		}
+		case ImcMOVE imcMove -> {
+			if (imcMove.dst instanceof ImcMEM imcMem) {
+				Expr addr = compile(function, imcMem.addr);
+				if (imcMove.src instanceof ImcCALL imcCall) {
+					Call call = compileCall(function, imcCall);
+					return frame -> {
+						frame.pending = PENDING_MEM;
+						frame.pendingAddr = addr.eval(frame);
+						frame.pc = next;
+						if (!call.call(frame))
+							return CALL;
+						finishMove(frame);
+						return next;
+					};
+				}
+				Expr src = compile(function, imcMove.src);
+				if (isTempPlusConst(imcMem.addr)) {
+					ImcBINOP imcBinop = (ImcBINOP) imcMem.addr;
+					int temp = function.index(((ImcTEMP) imcBinop.fstExpr).temp);
+					long offset = ((ImcCONST) imcBinop.sndExpr).value;
+					return frame -> {
+						long dst = (frame.defined[temp] ? frame.regs[temp] : inherit(frame, temp)) + offset;
+						memory.store(dst, src.eval(frame));
+						return next;
+					};
+				}
+				return frame -> {
+					long dst = addr.eval(frame);
+					memory.store(dst, src.eval(frame));
+					return next;
+				};
+			}
+			if (imcMove.dst instanceof ImcTEMP imcTemp) {
+				int dst = function.index(imcTemp.temp);
+				if (imcMove.src instanceof ImcCALL imcCall) {
+					Call call = compileCall(function, imcCall);
+					return frame -> {
+						frame.pending = dst;
+						frame.pc = next;
+						if (!call.call(frame))
+							return CALL;
+						finishMove(frame);
+						return next;
+					};
+				}
+				Expr src = compile(function, imcMove.src);
+				return frame -> {
+					frame.regs[dst] = src.eval(frame);
+					frame.defined[dst] = true;
+					return next;
+				};
+			}
+			throw new Report.InternalError();
+		}
+		default -> throw new Report.InternalError();
+		}
+	}
+
+	private Expr compile(Function function, ImcExpr expr) {
+		switch (expr) {
+		case ImcCONST imcConst -> {
+			long value = imcConst.value;
+			return frame -> value;
+		}
+		case ImcTEMP imcTemp -> {
+			int index = function.index(imcTemp.temp);
+			return frame -> frame.defined[index] ? frame.regs[index] : inherit(frame, index);
+		}
+		case ImcNAME imcName -> {
+			Long address = dataMemLabels.get(imcName.label);
+			if (address == null)
+				return frame -> {
+					throw new Report.InternalError();
+				};
+			long value = address;
+			return frame -> value;
+		}
+		case ImcMEM imcMem -> {
+			Expr addr = compile(function, imcMem.addr);
+			if (imcMem.addr instanceof ImcMEM inner) {
+				// As the tree interpreter, load through the inner address first.
+				Expr innerAddr = compile(function, inner.addr);
+				return frame -> {
+					memory.load(innerAddr.eval(frame));
+					return memory.load(addr.eval(frame));
+				};
+			}
+			if (isTempPlusConst(imcMem.addr)) {
+				// The most common case: a variable in a frame.
+				ImcBINOP imcBinop = (ImcBINOP) imcMem.addr;
+				int temp = function.index(((ImcTEMP) imcBinop.fstExpr).temp);
+				long offset = ((ImcCONST) imcBinop.sndExpr).value;
+				return frame -> memory.load((frame.defined[temp] ? frame.regs[temp] : inherit(frame, temp)) + offset);
+			}
+			return frame -> memory.load(addr.eval(frame));
+		}
+		case ImcUNOP imcUnop -> {
+			Expr sub = compile(function, imcUnop.subExpr);
+			return switch (imcUnop.oper) {
+			case NOT -> frame -> sub.eval(frame) == 0 ? 1 : 0;
+			case NEG -> frame -> -sub.eval(frame);
+			};
+		}
+		case ImcBINOP imcBinop -> {
+			Expr fst = compile(function, imcBinop.fstExpr);
+			if (imcBinop.sndExpr instanceof ImcCONST imcConst) {
+				long snd = imcConst.value;
+				switch (imcBinop.oper) {
+				case ADD:
+					return frame -> fst.eval(frame) + snd;
+				case SUB:
+					return frame -> fst.eval(frame) - snd;
+				case MUL:
+					return frame -> fst.eval(frame) * snd;
+				default:
+					break;
+				}
+			}
+			Expr snd = compile(function, imcBinop.sndExpr);
+			return switch (imcBinop.oper) {
+			case OR -> frame -> (fst.eval(frame) != 0) | (snd.eval(frame) != 0) ? 1 : 0;
+			case AND -> frame -> (fst.eval(frame) != 0) & (snd.eval(frame) != 0) ? 1 : 0;
+			case EQU -> frame -> fst.eval(frame) == snd.eval(frame) ? 1 : 0;
+			case NEQ -> frame -> fst.eval(frame) != snd.eval(frame) ? 1 : 0;
+			case LEQ -> frame -> fst.eval(frame) <= snd.eval(frame) ? 1 : 0;
+			case GEQ -> frame -> fst.eval(frame) >= snd.eval(frame) ? 1 : 0;
+			case LTH -> frame -> fst.eval(frame) < snd.eval(frame) ? 1 : 0;
+			case GTH -> frame -> fst.eval(frame) > snd.eval(frame) ? 1 : 0;
+			case ADD -> frame -> fst.eval(frame) + snd.eval(frame);
+			case SUB -> frame -> fst.eval(frame) - snd.eval(frame);
+			case MUL -> frame -> fst.eval(frame) * snd.eval(frame);
+			case DIV -> frame -> fst.eval(frame) / snd.eval(frame);
+			case MOD -> frame -> fst.eval(frame) % snd.eval(frame);
+			};
+		}
+		default -> throw new Report.InternalError();
+		}
+	}
+
+	/** Returns whether an expression is a sum of a temporary and a constant. */
+	private static boolean isTempPlusConst(ImcExpr expr) {
+		return expr instanceof ImcBINOP imcBinop && imcBinop.oper == ImcBINOP.Oper.ADD
+				&& imcBinop.fstExpr instanceof ImcTEMP && imcBinop.sndExpr instanceof ImcCONST;
+	}
+
+	/** A compiled call. */
+	private interface Call {
+
+		/**
+		 * Performs the call.
+		 *
+		 * @param frame The frame of the caller.
+		 * @return Whether the call has already been completed (a built-in function)
+		 *         rather than a new frame pushed.
+		 */
+		boolean call(Frame frame);
+
+	}
+
+	private Call compileCall(Function function, ImcCALL imcCall) {
+		Expr[] args = new Expr[imcCall.args.size()];
+		for (int a = 0; a < args.length; a++)
+			args[a] = compile(function, imcCall.args.get(a));
+		Call builtin = builtin(imcCall.label.name);
+		Function callee = functions.get(imcCall.label);
+		return frame -> {
+			long offset = 0;
+			for (Expr arg : args) {
+				memory.store(sp + offset, arg.eval(frame));
+				offset += 8;
+			}
+			if (builtin != null)
+				return builtin.call(frame);
+			if (callee == null)
+				throw new Report.InternalError();
+			enter(callee);
+			return false;
+		};
+	}
+
+	private Call builtin(String name) {
+		switch (name) {
+		case "_new":
+			return frame -> {
+				memory.store(sp, heap.allocate(memory.load(sp + 1 * 8)));
+				return true;
+			};
+		case "_del":
+			return frame -> {
+				heap.free(memory.load(sp + 1 * 8));
+				return true;
+			};
+		case "_exit":
+			return frame -> {
+				throw new ProgramExit();
+			};
+		case "_putint":
+			return frame -> {
+				io.putInt(memory.load(sp + 1 * 8));
+				return true;
+			};
+		case "_getint":
+			return frame -> {
+				memory.store(sp, io.getInt());
+				return true;
+			};
+		case "_putchar":
+			return frame -> {
+				io.putChar(memory.load(sp + 1 * 8));
+				return true;
+			};
+		case "_getchar":
+			return frame -> {
+				memory.store(sp, io.getChar());
+				return true;
+			};
+		default:
+			return null;
+		}
+	}
+
+	/* Execution. */
+
+	/**
+	 * Reads a temporary not written to in the current frame yet: as in
+	 * {@link Interpreter}, its value is taken from the nearest caller that has
+	 * written to it.
+	 */
+	private long inherit(Frame frame, int index) {
+		MemTemp temp = frame.function.temps.get(index);
+		for (int d = depth - 1; d >= 0; d--) {
+			Frame caller = frames[d];
+			Integer callerIndex = caller.function.indices.get(temp);
+			if (callerIndex != null && caller.defined[callerIndex]) {
+				frame.regs[index] = caller.regs[callerIndex];
+				frame.defined[index] = true;
+				return frame.regs[index];
+			}
+		}
+		throw new Report.Error("Uninitialized temporary variable T" + temp.temp + ".");
+	}
+
+	private void enter(Function function) {
+		depth++;
+		if (depth == frames.length)
+			frames = Arrays.copyOf(frames, 2 * frames.length);
+		if (frames[depth] == null)
+			frames[depth] = new Frame();
+		Frame frame = frames[depth];
+		frame.enter(function);
+		// Create a stack frame.
+		frame.regs[function.fp] = sp;
+		frame.defined[function.fp] = true;
+		sp = sp - function.chunk.frame.size;
+	}
+
+	private void leave() {
+		Frame frame = frames[depth];
+		Function function = frame.function;
+		int rv = function.rv;
+		// Store the result.
+		memory.store(frame.regs[function.fp], frame.defined[rv] ? frame.regs[rv] : inherit(frame, rv));
+		// Destroy a stack frame.
+		sp = sp + function.chunk.frame.size;
+		depth--;
+		if (depth >= 0 && frames[depth].pending != PENDING_NONE)
+			finishMove(frames[depth]);
+	}
+
+	/** Stores the result of a call to the destination of the move waiting for it. */
+	private void finishMove(Frame caller) {
+		long result = memory.load(sp);
+		if (caller.pending == PENDING_MEM)
+			memory.store(caller.pendingAddr, result);
+		else {
+			caller.regs[caller.pending] = result;
+			caller.defined[caller.pending] = true;
+		}
+		caller.pending = PENDING_NONE;
+	}
+
+	/**
+	 * Calls a function and runs until it returns.
+	 *
+	 * @param entryMemLabel The function's entry label.
+	 */
+	public void funCall(MemLabel entryMemLabel) {
+		int base = depth;
+		enter(functions.get(entryMemLabel));
+		while (depth > base) {
+			Frame frame = frames[depth];
+			Stmt[] stmts = frame.function.stmts;
+			int pc = frame.pc;
+			while (pc >= 0)
+				pc = stmts[pc].exec(frame);
+			if (pc == RETURN)
+				leave();
+			// Otherwise a new frame has been pushed and the caller's pc saved.
+		}
+	}
+
+	/**
+	 * Runs a program.
+	 *
+	 * @param entryMemLabel The name of the function to be called.
+	 * @return The value returned by the function.
+	 */
+	public long run(String entryMemLabel) {
+		for (MemLabel label : functions.keySet()) {
+			if (label.name.equals(entryMemLabel)) {
+				try {
+					funCall(label);
+				} finally {
+					io.flush();
+					heap.report();
+				}
+				return memory.load(sp);
+			}
+		}
+		throw new Report.InternalError();
+	}
+
+}
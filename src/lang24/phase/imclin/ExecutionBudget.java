@@ -0,0 +1,19 @@
+package lang24.phase.imclin;
+
+/**
+ * The limits of a program run by {@link Interpreter}: once any of them is
+ * exceeded, the run is stopped (see {@link ExecutionResult.Status}).
+ *
+ * @param maxStmts     The maximal number of statements executed.
+ * @param maxDepth     The maximal depth of the call stack.
+ * @param maxHeapBytes The maximal size of the heap (in bytes, including free
+ *                     blocks and block headers).
+ * @param maxMillis    The maximal wall time of the run (in milliseconds).
+ */
+public record ExecutionBudget(long maxStmts, int maxDepth, long maxHeapBytes, long maxMillis) {
+
+	/** No limits at all. */
+	public static final ExecutionBudget UNLIMITED = new ExecutionBudget(Long.MAX_VALUE, Integer.MAX_VALUE,
+			Long.MAX_VALUE, Long.MAX_VALUE);
+
+}
@@ -0,0 +1,60 @@
+package lang24.phase.imclin;
+
+/**
+ * The outcome of a program run by {@link Interpreter} within an
+ * {@link ExecutionBudget}.
+ *
+ * The number of statements executed does not depend on the machine or on its
+ * load, so it can be used to compare the intermediate code produced by
+ * different versions of the compiler.
+ *
+ * @param status        How the run has ended.
+ * @param exitCode      The value returned by the entry function if the run has
+ *                      completed, {@link ProgramExit#EXIT_CODE} if the program
+ *                      has exited, and {@code 0} otherwise.
+ * @param stmts         The number of statements executed.
+ * @param calls         The number of calls (built-in functions excluded).
+ * @param maxDepth      The maximal depth of the call stack.
+ * @param peakHeapBytes The maximal number of bytes in live heap blocks.
+ * @param message       What has stopped the run (or {@code null} if it has
+ *                      completed or exited).
+ */
+public record ExecutionResult(Status status, long exitCode, long stmts, long calls, int maxDepth, long peakHeapBytes,
+		String message) {
+
+	/** How a run has ended. */
+	public enum Status {
+
+		/** The entry function has returned. */
+		COMPLETED,
+
+		/** The program has called {@code _exit}. */
+		EXITED,
+
+		/** The program has failed with an error. */
+		FAILED,
+
+		/** Too many statements have been executed. */
+		STMT_LIMIT,
+
+		/** The call stack has grown too deep. */
+		DEPTH_LIMIT,
+
+		/** The heap has grown too large. */
+		HEAP_LIMIT,
+
+		/** The run has taken too long. */
+		TIME_LIMIT;
+
+		/**
+		 * Returns whether the program has ended by itself.
+		 *
+		 * @return {@code true} if the run has completed or the program has exited.
+		 */
+		public boolean finished() {
+			return this == COMPLETED || this == EXITED;
+		}
+
+	}
+
+}
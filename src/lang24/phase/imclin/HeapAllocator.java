@@ -0,0 +1,170 @@
+package lang24.phase.imclin;
+
+import lang24.phase.*;
+
+/**
+ * The heap of a program run by an interpreter: the implementation of the
+ * built-in functions {@code _new} and {@code _del}.
+ *
+ * Blocks come in size classes of 2<sup>k</sup> bytes ({@code k} &ge;
+ * {@link #MIN_CLASS}), each class with its own free list. A block is preceded
+ * by an 8-byte header holding the size requested, so that {@code _del} can
+ * find the class of the block. {@code _new} takes a block from the free list
+ * of its class and cuts a fresh one off the end of the heap only if the list
+ * is empty; {@code _del} puts the block on the free list of its class (freeing
+ * {@code 0} has no effect). The free list links are kept in the first word of
+ * free blocks. The runtime emitted by {@link lang24.phase.end.PutItAllTogether}
+ * implements the same algorithm.
+ */
+public class HeapAllocator {
+
+	/** The smallest size class (blocks of 8 bytes). */
+	public static final int MIN_CLASS = 3;
+
+	/** The largest size class. */
+	public static final int MAX_CLASS = 62;
+
+	/** The size of a block header. */
+	public static final long HEADER_SIZE = 8;
+
+	/** The memory. */
+	private final PagedMemory memory;
+
+	/** The address the heap starts at. */
+	private final long start;
+
+	/** The end of the heap. */
+	private long hp;
+
+	/** Heads of free lists indexed by size class ({@code 0} if empty). */
+	private final long[] freeLists = new long[MAX_CLASS + 1];
+
+	/** The number of bytes in live blocks (headers included). */
+	private long bytesInUse = 0;
+
+	/** The largest number of bytes in live blocks so far. */
+	private long peakBytesInUse = 0;
+
+	/** The number of bytes requested by live blocks. */
+	private long bytesRequested = 0;
+
+	/** The number of allocations. */
+	private long allocations = 0;
+
+	/** The number of allocations served from a free list. */
+	private long reuses = 0;
+
+	/**
+	 * Constructs an empty heap.
+	 *
+	 * @param memory The memory.
+	 * @param start  The address the heap starts at.
+	 */
+	public HeapAllocator(final PagedMemory memory, final long start) {
+		this.memory = memory;
+		this.start = start;
+		this.hp = start;
+	}
+
+	/**
+	 * Returns the size class of a block.
+	 *
+	 * @param size The size requested.
+	 * @return The size class.
+	 */
+	public static int sizeClass(final long size) {
+		int k = MIN_CLASS;
+		while (k < MAX_CLASS && (1L << k) < size)
+			k++;
+		return k;
+	}
+
+	/**
+	 * Allocates a block.
+	 *
+	 * @param size The size requested.
+	 * @return The address of the block.
+	 */
+	public long allocate(final long size) {
+		final int k = sizeClass(size);
+		long addr = freeLists[k];
+		if (addr != 0) {
+			freeLists[k] = memory.load(addr);
+			reuses++;
+		} else {
+			addr = hp + HEADER_SIZE;
+			hp = addr + (1L << k);
+		}
+		memory.store(addr - HEADER_SIZE, size);
+		allocations++;
+		bytesInUse += HEADER_SIZE + (1L << k);
+		bytesRequested += Math.max(0, size);
+		peakBytesInUse = Math.max(peakBytesInUse, bytesInUse);
+		return addr;
+	}
+
+	/**
+	 * Frees a block.
+	 *
+	 * @param addr The address of the block (or {@code 0}).
+	 */
+	public void free(final long addr) {
+		if (addr == 0)
+			return;
+		final long size = memory.load(addr - HEADER_SIZE);
+		final int k = sizeClass(size);
+		memory.store(addr, freeLists[k]);
+		freeLists[k] = addr;
+		bytesInUse -= HEADER_SIZE + (1L << k);
+		bytesRequested -= Math.max(0, size);
+	}
+
+	/**
+	 * Returns the number of bytes in live blocks (headers included).
+	 *
+	 * @return The number of bytes in use.
+	 */
+	public long bytesInUse() {
+		return bytesInUse;
+	}
+
+	/**
+	 * Returns the largest number of bytes in live blocks so far.
+	 *
+	 * @return The peak number of bytes in use.
+	 */
+	public long peakBytesInUse() {
+		return peakBytesInUse;
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 *
+	 * @return The number of bytes between the start and the end of the heap.
+	 */
+	public long heapSize() {
+		return hp - start;
+	}
+
+	/**
+	 * Returns the fragmentation of the heap: the share of the heap not holding
+	 * data requested by live blocks, i.e., taken by free blocks, headers and
+	 * rounding up to size classes.
+	 *
+	 * @return The fragmentation (between 0 and 1).
+	 */
+	public double fragmentation() {
+		return heapSize() == 0 ? 0 : 1 - (double) bytesRequested / heapSize();
+	}
+
+	/** Records the statistics of the heap (see {@link Stats}). */
+	public void report() {
+		Stats.size("heapAllocations", allocations);
+		Stats.size("heapReuses", reuses);
+		Stats.size("heapBytesInUse", bytesInUse);
+		Stats.size("heapPeakBytesInUse", peakBytesInUse);
+		Stats.size("heapSize", heapSize());
+		Stats.size("heapFragmentationPercent", Math.round(100 * fragmentation()));
+	}
+
+}
@@ -2,6 +2,7 @@ package lang24.phase.imclin;
 
 import java.util.*;
 
+import lang24.*;
 import lang24.data.ast.tree.defn.AstFunDefn;
 import lang24.data.imc.code.stmt.ImcStmt;
 import lang24.data.lin.*;
@@ -13,10 +14,12 @@ import lang24.phase.*;
 public class ImcLin extends Phase {
 
 	/** All data chunks of the program. */
-	private final static Vector<LinDataChunk> dataChunks = new Vector<LinDataChunk>();
+	private final static CompilationContext.Local<Vector<LinDataChunk>> dataChunks = new CompilationContext.Local<Vector<LinDataChunk>>(
+			Vector::new);
 
 	/** All code chinks of the program. */
-	private final static Vector<LinCodeChunk> codeChunks = new Vector<LinCodeChunk>();
+	private final static CompilationContext.Local<Vector<LinCodeChunk>> codeChunks = new CompilationContext.Local<Vector<LinCodeChunk>>(
+			Vector::new);
 
 
 	/**
@@ -28,9 +31,9 @@ public class ImcLin extends Phase {
 
 	public void log() {
 		LinLogger linLogger = new LinLogger(logger);
-		for (LinDataChunk dataChunk : dataChunks)
+		for (LinDataChunk dataChunk : dataChunks.get())
 			linLogger.log(dataChunk);
-		for (LinCodeChunk codeChunk : codeChunks)
+		for (LinCodeChunk codeChunk : codeChunks.get())
 			linLogger.log(codeChunk);
 	}
 
@@ -40,7 +43,7 @@ public class ImcLin extends Phase {
 	 * @param dataChunk A data chunk.
 	 */
 	public static void addDataChunk(LinDataChunk dataChunk) {
-		dataChunks.add(dataChunk);
+		dataChunks.get().add(dataChunk);
 	}
 
 	/**
@@ -49,7 +52,7 @@ public class ImcLin extends Phase {
 	 * @return A collection of all data chunks of the program.
 	 */
 	public static Vector<LinDataChunk> dataChunks() {
-		return new Vector<LinDataChunk>(dataChunks);
+		return new Vector<LinDataChunk>(dataChunks.get());
 	}
 
 	/**
@@ -58,7 +61,7 @@ public class ImcLin extends Phase {
 	 * @param codeChunk A code chunk.
 	 */
 	public static void addCodeChunk(LinCodeChunk codeChunk) {
-		codeChunks.add(codeChunk);
+		codeChunks.get().add(codeChunk);
 	}
 
 	/**
@@ -67,7 +70,7 @@ public class ImcLin extends Phase {
 	 * @return A collection of all code chunks of the program.
 	 */
 	public static Vector<LinCodeChunk> codeChunks() {
-		return new Vector<LinCodeChunk>(codeChunks);
+		return new Vector<LinCodeChunk>(codeChunks.get());
 	}
 
 }
@@ -1,27 +1,70 @@
 package lang24.phase.imclin;
 
+import java.io.*;
 import java.util.*;
+import lang24.*;
 import lang24.common.report.*;
 import lang24.data.mem.*;
 import lang24.data.imc.code.expr.*;
 import lang24.data.imc.code.stmt.*;
 import lang24.data.imc.visitor.*;
 import lang24.data.lin.*;
+import lang24.phase.*;
 
 /**
  * Interpreter - for testing purposes only.
  */
 public class Interpreter {
 
-	private Scanner scanner = new Scanner(System.in);
+	private final PrintStream out;
+
+	/** The input and output of the program. */
+	private final InterpreterIO io;
 
 	private boolean debug = false;
 
 	private Random random;
 
-	private HashMap<Long, Byte> memory;
+	private PagedMemory memory;
+
+	/** The profile being collected (or {@code null} if not profiling). */
+	private final Profiler profiler;
+
+	/** The trace being recorded (or {@code null} if not tracing). */
+	private Tracer tracer;
+
+	/** The limits of the run. */
+	private ExecutionBudget budget = ExecutionBudget.UNLIMITED;
+
+	/** The time the run must end by (if limited). */
+	private long deadline;
+
+	/** The number of statements executed. */
+	private long executedStmts = 0;
+
+	/** The number of calls (built-in functions excluded). */
+	private long calls = 0;
+
+	/** The maximal depth of the call stack. */
+	private int maxDepth = 0;
+
+	/** Dense numbers of temporaries of each function. */
+	private HashMap<MemLabel, HashMap<MemTemp, Integer>> tempIndices;
+
+	/** The call stack (frames above {@link #depth} are kept for reuse). */
+	private ArrayList<Frame> frames;
+
+	/** The depth of the call stack ({@code -1} if empty). */
+	private int depth;
 
-	private HashMap<MemTemp, Long> temps;
+	/** The value of the stack pointer. */
+	private long sp;
+
+	/** The value of the heap pointer. */
+	private long hp;
+
+	/** The heap. */
+	private HeapAllocator heap;
 
 	private HashMap<MemLabel, Long> dataMemLabels;
 
@@ -29,6 +72,12 @@ public class Interpreter {
 
 	private HashMap<MemLabel, LinCodeChunk> callMemLabels;
 
+	/** Numbers of functions (in the order of code chunks). */
+	private HashMap<MemLabel, Integer> chunkIds;
+
+	/** Statements of each function. */
+	private HashMap<MemLabel, Vector<ImcStmt>> chunkStmts;
+
 	private MemTemp SP;
 
 	private MemTemp FP;
@@ -38,10 +87,39 @@ public class Interpreter {
 	private MemTemp HP; // Heap Pointer
 
 	public Interpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks) {
+		this(dataChunks, codeChunks, null);
+	}
+
+	/**
+	 * Constructs an interpreter collecting an execution profile.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 * @param profiler   The profile to be collected (or {@code null}).
+	 */
+	public Interpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks, Profiler profiler) {
+		this(dataChunks, codeChunks, profiler, CompilationContext.current().in(), CompilationContext.current().out());
+	}
+
+	/**
+	 * Constructs an interpreter reading and writing the specified streams.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 * @param profiler   The profile to be collected (or {@code null}).
+	 * @param in         The input of the program.
+	 * @param out        The output of the program.
+	 */
+	public Interpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks, Profiler profiler,
+			InputStream in, OutputStream out) {
 		random = new Random();
+		this.profiler = profiler;
+		this.out = out instanceof PrintStream printStream ? printStream : new PrintStream(out);
+		this.io = new InterpreterIO(in, out);
 
-		this.memory = new HashMap<Long, Byte>();
-		this.temps = new HashMap<MemTemp, Long>();
+		this.memory = new PagedMemory();
+		this.frames = new ArrayList<Frame>();
+		this.depth = -1;
 
 		SP = new MemTemp();
 		tempST(SP, 0x7FFFFFFFFFFFFFF8l);
@@ -51,7 +129,7 @@ public class Interpreter {
 		this.dataMemLabels = new HashMap<MemLabel, Long>();
 		for (LinDataChunk dataChunk : dataChunks) {
 			if (debug) {
-				System.out.printf("### %s @ %d\n", dataChunk.label.name, tempLD(HP, false));
+				this.out.printf("### %s @ %d\n", dataChunk.label.name, tempLD(HP, false));
 			}
 			this.dataMemLabels.put(dataChunk.label, tempLD(HP, false));
 			if (dataChunk.init != null) {
@@ -62,13 +140,26 @@ public class Interpreter {
 			tempST(HP, tempLD(HP, false) + dataChunk.size, debug);
 		}
 		if (debug)
-			System.out.printf("###\n");
+			this.out.printf("###\n");
+		this.heap = new HeapAllocator(memory, tempLD(HP, false));
 
 		this.jumpMemLabels = new HashMap<MemLabel, Integer>();
 		this.callMemLabels = new HashMap<MemLabel, LinCodeChunk>();
+		this.tempIndices = new HashMap<MemLabel, HashMap<MemTemp, Integer>>();
+		this.chunkStmts = new HashMap<MemLabel, Vector<ImcStmt>>();
+		this.chunkIds = new HashMap<MemLabel, Integer>();
 		for (LinCodeChunk codeChunk : codeChunks) {
 			this.callMemLabels.put(codeChunk.frame.label, codeChunk);
+			this.chunkIds.put(codeChunk.frame.label, chunkIds.size());
 			Vector<ImcStmt> stmts = codeChunk.stmts();
+			HashMap<MemTemp, Integer> indices = new HashMap<MemTemp, Integer>();
+			indices.put(codeChunk.frame.FP, 0);
+			indices.putIfAbsent(codeChunk.frame.RV, indices.size());
+			TempCollector collector = new TempCollector();
+			for (ImcStmt stmt : stmts)
+				stmt.accept(collector, indices);
+			this.tempIndices.put(codeChunk.frame.label, indices);
+			this.chunkStmts.put(codeChunk.frame.label, stmts);
 			for (int stmtOffset = 0; stmtOffset < stmts.size(); stmtOffset++) {
 				if (stmts.get(stmtOffset) instanceof ImcLABEL)
 				{
@@ -80,6 +171,147 @@ public class Interpreter {
 		}
 	}
 
+	/**
+	 * A frame on the call stack: the registers (temporaries) of a function
+	 * being executed and the point where its execution continues.
+	 */
+	private static class Frame {
+
+		/** The function. */
+		LinCodeChunk chunk;
+
+		/** The number of the function. */
+		int chunkId;
+
+		/** The function's statements. */
+		Vector<ImcStmt> stmts;
+
+		/** Dense numbers of the function's temporaries. */
+		HashMap<MemTemp, Integer> indices;
+
+		/** Values of temporaries. */
+		long[] values = new long[0];
+
+		/** Whether temporaries have been written to. */
+		boolean[] defined = new boolean[0];
+
+		/** The offset of the next statement to execute. */
+		int stmtOffset;
+
+		/** The move waiting for the result of a call (if any). */
+		ImcMOVE pendingMove;
+
+		/** The address the result of a call is stored to (if a memory move). */
+		long pendingAddr;
+
+		/** The call path of the function (if profiling). */
+		Profiler.Path path;
+
+		/** Prepares the frame for a new call (in time linear in the frame size). */
+		void enter(LinCodeChunk chunk, Vector<ImcStmt> stmts, HashMap<MemTemp, Integer> indices) {
+			this.chunk = chunk;
+			this.stmts = stmts;
+			this.indices = indices;
+			int size = indices.size();
+			if (values.length < size) {
+				values = new long[size];
+				defined = new boolean[size];
+			} else
+				Arrays.fill(defined, 0, size, false);
+			pendingMove = null;
+		}
+
+	}
+
+	/**
+	 * Numbers all temporaries of a function densely in the order of their first
+	 * appearance.
+	 */
+	private static class TempCollector implements ImcVisitor<Object, HashMap<MemTemp, Integer>> {
+
+		@Override
+		public Object visit(ImcBINOP imcBinop, HashMap<MemTemp, Integer> indices) {
+			imcBinop.fstExpr.accept(this, indices);
+			imcBinop.sndExpr.accept(this, indices);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcCALL imcCall, HashMap<MemTemp, Integer> indices) {
+			for (ImcExpr callArg : imcCall.args)
+				callArg.accept(this, indices);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcCJUMP imcCJump, HashMap<MemTemp, Integer> indices) {
+			return imcCJump.cond.accept(this, indices);
+		}
+
+		@Override
+		public Object visit(ImcCONST imcConst, HashMap<MemTemp, Integer> indices) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcESTMT imcEStmt, HashMap<MemTemp, Integer> indices) {
+			return imcEStmt.expr.accept(this, indices);
+		}
+
+		@Override
+		public Object visit(ImcJUMP imcJump, HashMap<MemTemp, Integer> indices) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcLABEL imcLabel, HashMap<MemTemp, Integer> indices) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcMEM imcMem, HashMap<MemTemp, Integer> indices) {
+			return imcMem.addr.accept(this, indices);
+		}
+
+		@Override
+		public Object visit(ImcMOVE imcMove, HashMap<MemTemp, Integer> indices) {
+			imcMove.dst.accept(this, indices);
+			imcMove.src.accept(this, indices);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcNAME imcName, HashMap<MemTemp, Integer> indices) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcSEXPR imcSExpr, HashMap<MemTemp, Integer> indices) {
+			imcSExpr.stmt.accept(this, indices);
+			imcSExpr.expr.accept(this, indices);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcSTMTS imcStmts, HashMap<MemTemp, Integer> indices) {
+			for (ImcStmt stmt : imcStmts.stmts)
+				stmt.accept(this, indices);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcTEMP imcTemp, HashMap<MemTemp, Integer> indices) {
+			indices.putIfAbsent(imcTemp.temp, indices.size());
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcUNOP imcUnop, HashMap<MemTemp, Integer> indices) {
+			return imcUnop.subExpr.accept(this, indices);
+		}
+
+	}
+
 	/**
 	 * Stores memory
 	 * @param address
@@ -90,13 +322,12 @@ public class Interpreter {
 	}
 	private void memST(Long address, Long value, boolean debug) {
 		if (debug)
-			System.out.printf("### [%d] <- %d\n", address, value);
-		for (int b = 0; b <= 7; b++) {
-			long longval = value % 0x100;
-			byte byteval = (byte) longval;
-			memory.put(address + b, byteval);
-			value = value >> 8;
-		}
+			out.printf("### [%d] <- %d\n", address, value);
+		memory.store(address, value);
+		if (tracer != null)
+			tracer.mem(address, value);
+		if (profiler != null && depth >= 0)
+			Profiler.store(frames.get(depth).path);
 	}
 
 	/**
@@ -108,19 +339,11 @@ public class Interpreter {
 		return memLD(address, debug);
 	}
 	private Long memLD(Long address, boolean debug) {
-		Long value = 0L;
-		for (int b = 7; b >= 0; b--) {
-			Byte byteval = memory.get(address + b);
-			if (byteval == null) {
-				byteval = (byte) (random.nextLong() / 0x100);
-				 throw new Report.Error("INTERPRETER: Uninitialized memory location " +
-				 (address + b) + ".");
-			}
-			long longval = (long) byteval;
-			value = (value * 0x100) + (longval < 0 ? longval + 0x100 : longval);
-		}
+		Long value = memory.load(address);
+		if (profiler != null && depth >= 0)
+			Profiler.load(frames.get(depth).path);
 		if (debug)
-			System.out.printf("### %d <- [%d]\n", value, address);
+			out.printf("### %d <- [%d]\n", value, address);
 		return value;
 	}
 
@@ -133,25 +356,38 @@ public class Interpreter {
 		tempST(temp, value, debug);
 	}
 	private void tempST(MemTemp temp, Long value, boolean debug) {
-		temps.put(temp, value);
+		if (temp == SP)
+			sp = value;
+		else if (temp == HP)
+			hp = value;
+		else {
+			Frame frame = frames.get(depth);
+			Integer index = frame.indices.get(temp);
+			if (index == null)
+				throw new Report.InternalError();
+			frame.values[index] = value;
+			frame.defined[index] = true;
+		}
+		if (tracer != null)
+			tracer.temp(temp.temp, value);
 		if (debug) {
 			if (temp == SP) {
-				System.out.printf("### SP <- %d\n", value);
+				out.printf("### SP <- %d\n", value);
 				return;
 			}
 			if (temp == FP) {
-				System.out.printf("### FP <- %d\n", value);
+				out.printf("### FP <- %d\n", value);
 				return;
 			}
 			if (temp == RV) {
-				System.out.printf("### RV <- %d\n", value);
+				out.printf("### RV <- %d\n", value);
 				return;
 			}
 			if (temp == HP) {
-				System.out.printf("### HP <- %d\n", value);
+				out.printf("### HP <- %d\n", value);
 				return;
 			}
-			System.out.printf("### T%d <- %d\n", temp.temp, value);
+			out.printf("### T%d <- %d\n", temp.temp, value);
 			return;
 		}
 	}
@@ -165,29 +401,51 @@ public class Interpreter {
 		return tempLD(temp, debug);
 	}
 	private Long tempLD(MemTemp temp, boolean debug) {
-		Long value = temps.get(temp);
-		if (value == null) {
-			value = random.nextLong();
-			throw new Report.Error("Uninitialized temporary variable T" + temp.temp + ".");
+		Long value;
+		if (temp == SP)
+			value = sp;
+		else if (temp == HP)
+			value = hp;
+		else {
+			Frame frame = depth < 0 ? null : frames.get(depth);
+			Integer index = frame == null ? null : frame.indices.get(temp);
+			if (index == null)
+				throw new Report.Error("Uninitialized temporary variable T" + temp.temp + ".");
+			if (!frame.defined[index]) {
+				// A callee sees the registers of its callers (e.g., the FP of an
+				// enclosing function), so take the value from the nearest one.
+				Frame caller = null;
+				Integer callerIndex = null;
+				for (int d = depth - 1; d >= 0 && caller == null; d--) {
+					callerIndex = frames.get(d).indices.get(temp);
+					if (callerIndex != null && frames.get(d).defined[callerIndex])
+						caller = frames.get(d);
+				}
+				if (caller == null)
+					throw new Report.Error("Uninitialized temporary variable T" + temp.temp + ".");
+				frame.values[index] = caller.values[callerIndex];
+				frame.defined[index] = true;
+			}
+			value = frame.values[index];
 		}
 		if (debug) {
 			if (temp == SP) {
-				System.out.printf("### %d <- SP\n", value);
+				out.printf("### %d <- SP\n", value);
 				return value;
 			}
 			if (temp == FP) {
-				System.out.printf("### %d <- FP\n", value);
+				out.printf("### %d <- FP\n", value);
 				return value;
 			}
 			if (temp == RV) {
-				System.out.printf("### %d <- RV\n", value);
+				out.printf("### %d <- RV\n", value);
 				return value;
 			}
 			if (temp == HP) {
-				System.out.printf("### %d <- HP\n", value);
+				out.printf("### %d <- HP\n", value);
 				return value;
 			}
-			System.out.printf("### %d <- T%d\n", value, temp.temp);
+			out.printf("### %d <- T%d\n", value, temp.temp);
 			return value;
 		}
 		return value;
@@ -295,7 +553,7 @@ public class Interpreter {
 		@Override
 		public MemLabel visit(ImcCJUMP imcCJump, Object arg) {
 			if (debug)
-				System.out.println(imcCJump);
+				out.println(imcCJump);
 			Long cond = imcCJump.cond.accept(new ExprInterpreter(), null);
 			return (cond != 0) ? imcCJump.posLabel : imcCJump.negLabel;
 		}
@@ -303,7 +561,7 @@ public class Interpreter {
 		@Override
 		public MemLabel visit(ImcESTMT imcEStmt, Object arg) {
 			if (debug)
-				System.out.println(imcEStmt);
+				out.println(imcEStmt);
 			if (imcEStmt.expr instanceof ImcCALL) {
 				call((ImcCALL) imcEStmt.expr);
 				return null;
@@ -315,41 +573,42 @@ public class Interpreter {
 		@Override
 		public MemLabel visit(ImcJUMP imcJump, Object arg) {
 			if (debug)
-				System.out.println(imcJump);
+				out.println(imcJump);
 			return imcJump.label;
 		}
 
 		@Override
 		public MemLabel visit(ImcLABEL imcMemLabel, Object arg) {
 			if (debug)
-				System.out.println(imcMemLabel);
+				out.println(imcMemLabel);
 			return null;
 		}
 
 		@Override
 		public MemLabel visit(ImcMOVE imcMove, Object arg) {
 			if (debug)
-				System.out.println(imcMove);
+				out.println(imcMove);
 			if (imcMove.dst instanceof ImcMEM) {
 				Long dst = ((ImcMEM) (imcMove.dst)).addr.accept(new ExprInterpreter(), null);
-				Long src;
 				if (imcMove.src instanceof ImcCALL) {
-					call((ImcCALL) imcMove.src);
-					src = memLD(tempLD(SP));
+					Frame caller = frames.get(depth);
+					caller.pendingMove = imcMove;
+					caller.pendingAddr = dst;
+					if (call((ImcCALL) imcMove.src))
+						finishMove(caller);
 				} else
-					src = imcMove.src.accept(new ExprInterpreter(), null);
-				memST(dst, src);
+					memST(dst, imcMove.src.accept(new ExprInterpreter(), null));
 				return null;
 			}
 			if (imcMove.dst instanceof ImcTEMP) {
 				ImcTEMP dst = (ImcTEMP) (imcMove.dst);
-				Long src;
 				if (imcMove.src instanceof ImcCALL) {
-					call((ImcCALL) imcMove.src);
-					src = memLD(tempLD(SP));
+					Frame caller = frames.get(depth);
+					caller.pendingMove = imcMove;
+					if (call((ImcCALL) imcMove.src))
+						finishMove(caller);
 				} else
-					src = imcMove.src.accept(new ExprInterpreter(), null);
-				tempST(dst.temp, src);
+					tempST(dst.temp, imcMove.src.accept(new ExprInterpreter(), null));
 				return null;
 			}
 
@@ -359,11 +618,17 @@ public class Interpreter {
 		@Override
 		public MemLabel visit(ImcSTMTS imcStmts, Object arg) {
 			if (debug)
-				System.out.println(imcStmts);
+				out.println(imcStmts);
 			throw new Report.InternalError();
 		}
 
-		private void call(ImcCALL imcCall) {
+		/**
+		 * Performs a call: a built-in function is executed at once while a frame
+		 * is pushed on the call stack for any other function.
+		 *
+		 * @return Whether the call has already been completed.
+		 */
+		private boolean call(ImcCALL imcCall) {
 			Long offset = 0L;
 			for (ImcExpr callArg : imcCall.args) {
 				Long callValue = callArg.accept(new ExprInterpreter(), null);
@@ -372,151 +637,258 @@ public class Interpreter {
 			}
 			if (imcCall.label.name.equals("_new")) {
 				Long size = memLD(tempLD(SP, false) + 1 * 8, false);
-				Long addr = tempLD(HP);
-				tempST(HP, addr + size);
-				memST(tempLD(SP), addr, false);
-				return;
+				memST(tempLD(SP), heap.allocate(size), false);
+				if (heap.heapSize() > budget.maxHeapBytes())
+					throw new BudgetExceeded(ExecutionResult.Status.HEAP_LIMIT,
+							"Heap size limit of " + budget.maxHeapBytes() + " bytes exceeded.");
+				return true;
 			}
 			if (imcCall.label.name.equals("_del")) {
-				return;
+				heap.free(memLD(tempLD(SP, false) + 1 * 8, false));
+				return true;
 			}
 			if (imcCall.label.name.equals("_exit")) {
-				System.exit(1);
+				throw new ProgramExit();
 			}
 			if (imcCall.label.name.equals("_putint")) {
 				Long c = memLD(tempLD(SP, false) + 1 * 8, false);
-				System.out.printf("%d", c);
-				return;
+				io.putInt(c);
+				return true;
 			}
 			if (imcCall.label.name.equals("_getint")) {
-				Long l = scanner.nextLong();
+				Long l = io.getInt();
 				memST(tempLD(SP), (long) l, false);
-				return;
+				return true;
 			}
 			if (imcCall.label.name.equals("_putchar")) {
 				Long c = memLD(tempLD(SP, false) + 1 * 8, false);
-
-
-				System.out.printf("%c", (char) ((long) c) % 0x100);
-				return;
+				io.putChar(c);
+				return true;
 			}
 			if (imcCall.label.name.equals("_getchar")) {
-				char c = '\n';
-				try {
-					c = (char) System.in.read();
-				} catch (Exception __) {
-				}
-				memST(tempLD(SP), (long) c, false);
-				return;
+				long c = io.getChar();
+				memST(tempLD(SP), c, false);
+				return true;
 			}
 
 //			Report.info("Func call expr: " + imcCall.label.name);
-			funCall(imcCall.label);
+			enter(imcCall.label);
+			return false;
 		}
 
 	}
 
 
 
-	/**Public members:**/
-
-	public void funCall(MemLabel entryMemLabel) {
-
-		HashMap<MemTemp, Long> storedMemTemps;
-		MemTemp storedFP = null;
-		MemTemp storedRV = null;
-
+	/**
+	 * Pushes a frame of a function on the call stack and jumps to its body.
+	 */
+	private void enter(MemLabel entryMemLabel) {
 		LinCodeChunk chunk = callMemLabels.get(entryMemLabel);
-
-		/*Check all stmts below*/
-
-//		Report.info("Statements of " + entryMemLabel.name + " function");
-
-//		for(var stmt : chunk.stmts()) {
-//			Report.info("Statement: " + stmt);
-//		}
-
 		MemFrame frame = chunk.frame;
-		Vector<ImcStmt> stmts = chunk.stmts();
-		int stmtOffset;
 
 		/* PROLOGUE */
-		{
-			if (debug)
-				System.out.printf("###\n### CALL: %s\n", entryMemLabel.name);
-
-			// Store registers and FP.
-			storedMemTemps = temps;
-			temps = new HashMap<MemTemp, Long>(temps);
-			// Store RA.
-			// Create a stack frame.
-			FP = frame.FP;
-			RV = frame.RV;
-			tempST(frame.FP, tempLD(SP));
-			tempST(SP, tempLD(SP) - frame.size);
-			// Jump to the body.
-//			Report.info("JumpMemLabels: " + jumpMemLabels.size() + " : " + chunk.entryLabel.name);
-			stmtOffset = jumpMemLabels.get(chunk.entryLabel);
+		if (debug)
+			out.printf("###\n### CALL: %s\n", entryMemLabel.name);
+
+		// Create a frame with fresh registers.
+		depth++;
+		calls++;
+		maxDepth = Math.max(maxDepth, depth + 1);
+		if (depth >= budget.maxDepth())
+			throw new BudgetExceeded(ExecutionResult.Status.DEPTH_LIMIT,
+					"Call depth limit of " + budget.maxDepth() + " exceeded.");
+		if (depth == frames.size())
+			frames.add(new Frame());
+		Frame callee = frames.get(depth);
+		callee.enter(chunk, chunkStmts.get(entryMemLabel), tempIndices.get(entryMemLabel));
+		callee.chunkId = chunkIds.get(entryMemLabel);
+		if (profiler != null)
+			callee.path = profiler.call(depth == 0 ? null : frames.get(depth - 1).path, entryMemLabel);
+		// Create a stack frame.
+		FP = frame.FP;
+		RV = frame.RV;
+		tempST(frame.FP, tempLD(SP));
+		tempST(SP, tempLD(SP) - frame.size);
+		// Jump to the body.
+		callee.stmtOffset = jumpMemLabels.get(chunk.entryLabel);
+	}
+
+	/**
+	 * Pops the frame of the function being executed and completes the call in
+	 * the caller (if any).
+	 */
+	private void leave() {
+		Frame callee = frames.get(depth);
+		MemFrame frame = callee.chunk.frame;
+
+		/* EPILOGUE */
+		// Store the result.
+		memST(tempLD(frame.FP), tempLD(frame.RV));
+		// Destroy a stack frame.
+		tempST(SP, tempLD(SP) + frame.size);
+		// Restore registers and FP.
+		depth--;
+		if (depth >= 0) {
+			FP = frames.get(depth).chunk.frame.FP;
+			RV = frames.get(depth).chunk.frame.RV;
 		}
+		// Return.
 
-		/* BODY */
-		{
-			int pc = 0;
-			MemLabel label = null;
+		if (debug)
+			out.printf("### RETURN: %s\n###\n", callee.chunk.frame.label.name);
 
+		if (depth >= 0 && frames.get(depth).pendingMove != null)
+			finishMove(frames.get(depth));
+	}
 
-			while (label != chunk.exitLabel) {
-				if (debug) {
-					pc++;
-					System.out.printf("### %s (%d):\n", chunk.frame.label.name, pc);
-					if (pc == 1000000)
-						break;
-				}
+	/**
+	 * Stores the result of a call to the destination of the move waiting for it.
+	 */
+	private void finishMove(Frame caller) {
+		ImcMOVE imcMove = caller.pendingMove;
+		caller.pendingMove = null;
+		Long src = memLD(tempLD(SP));
+		if (imcMove.dst instanceof ImcMEM)
+			memST(caller.pendingAddr, src);
+		else
+			tempST(((ImcTEMP) imcMove.dst).temp, src);
+	}
 
-				if (label != null) {
-					Integer offset = jumpMemLabels.get(label);
-					if (offset == null) {
-						throw new Report.InternalError();
-					}
-					stmtOffset = offset;
-				}
+	/**Public members:**/
 
-//				Report.info("Check stmts: " + stmts.size() + " offset: " + stmtOffset);
-				label = stmts.get(stmtOffset).accept(new StmtInterpreter(), null);
+	public void funCall(MemLabel entryMemLabel) {
+		int base = depth;
+		enter(entryMemLabel);
 
-				stmtOffset += 1;
+		/* BODY */
+		StmtInterpreter stmtInterpreter = new StmtInterpreter();
+		int pc = 0;
+		while (depth > base) {
+			Frame frame = frames.get(depth);
+			if (debug) {
+				pc++;
+				out.printf("### %s (%d):\n", frame.chunk.frame.label.name, pc);
 			}
-		}
 
-		/* EPILOGUE */
-		{
-			// Store the result.
-			memST(tempLD(frame.FP), tempLD(frame.RV));
-			// Destroy a stack frame.
-			tempST(SP, tempLD(SP) + frame.size);
-			// Restore registers and FP.
-			FP = storedFP;
-			RV = storedRV;
-			Long hp = tempLD(HP);
-			temps = storedMemTemps;
-			tempST(HP, hp);
-			// Restore RA.
-			// Return.
-
-			if (debug)
-				System.out.printf("### RETURN: %s\n###\n", entryMemLabel.name);
+			if (++executedStmts > budget.maxStmts())
+				throw new BudgetExceeded(ExecutionResult.Status.STMT_LIMIT,
+						"Statement limit of " + budget.maxStmts() + " exceeded.");
+			if ((executedStmts & 0xFFF) == 0 && budget.maxMillis() != Long.MAX_VALUE
+					&& System.nanoTime() - deadline > 0)
+				throw new BudgetExceeded(ExecutionResult.Status.TIME_LIMIT,
+						"Time limit of " + budget.maxMillis() + " ms exceeded.");
+
+			ImcStmt stmt = frame.stmts.get(frame.stmtOffset);
+			if (tracer != null)
+				tracer.stmt(frame.chunkId, frame.stmtOffset);
+			if (profiler != null)
+				Profiler.stmt(frame.path, frame.stmtOffset);
+			MemLabel label = stmt.accept(stmtInterpreter, null);
+			if (profiler != null && stmt instanceof ImcCJUMP imcCJump && label == imcCJump.posLabel)
+				Profiler.taken(frame.path, frame.stmtOffset);
+			frame.stmtOffset += 1;
+
+			if (label == null)
+				continue;
+			if (label == frame.chunk.exitLabel) {
+				leave();
+				continue;
+			}
+			Integer offset = jumpMemLabels.get(label);
+			if (offset == null) {
+				throw new Report.InternalError();
+			}
+			frame.stmtOffset = offset;
 		}
+	}
 
+	/**
+	 * Records the last events of the execution from now on.
+	 *
+	 * @param tracer The trace to be recorded (or {@code null} to stop tracing).
+	 */
+	public void trace(Tracer tracer) {
+		this.tracer = tracer;
 	}
 
 	public long run(String entryMemLabel) {
 		for (MemLabel label : callMemLabels.keySet()) {
 			if (label.name.equals(entryMemLabel)) {
-				funCall(label);
+				if (budget.maxMillis() != Long.MAX_VALUE)
+					deadline = System.nanoTime() + budget.maxMillis() * 1000000;
+				try {
+					funCall(label);
+				} catch (Report.Error error) {
+					// Show how the program got there.
+					if (tracer != null)
+						tracer.dump(CompilationContext.current().err());
+					throw error;
+				} finally {
+					io.flush();
+					heap.report();
+					Stats.size("executedStmts", executedStmts);
+					Stats.size("calls", calls);
+					Stats.size("maxCallDepth", maxDepth);
+				}
 				return memLD(tempLD(SP));
 			}
 		}
 		throw new Report.InternalError();
 	}
 
+	/**
+	 * Runs a program within limits and reports how the run has ended rather than
+	 * throwing an exception.
+	 *
+	 * @param entryMemLabel The name of the function to be called.
+	 * @param budget        The limits of the run.
+	 * @return The outcome of the run.
+	 */
+	public ExecutionResult run(String entryMemLabel, ExecutionBudget budget) {
+		this.budget = budget;
+		ExecutionResult.Status status = ExecutionResult.Status.COMPLETED;
+		long exitCode = 0;
+		String message = null;
+		try {
+			exitCode = run(entryMemLabel);
+		} catch (BudgetExceeded ex) {
+			status = ex.status;
+			message = ex.getMessage();
+		} catch (ProgramExit __) {
+			status = ExecutionResult.Status.EXITED;
+			exitCode = ProgramExit.EXIT_CODE;
+		} catch (Report.Error | RuntimeException ex) {
+			status = ExecutionResult.Status.FAILED;
+			message = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+		} finally {
+			this.budget = ExecutionBudget.UNLIMITED;
+		}
+		return new ExecutionResult(status, exitCode, executedStmts, calls, maxDepth, heap.peakBytesInUse(), message);
+	}
+
+	/**
+	 * Returns the number of statements executed so far.
+	 *
+	 * @return The number of statements.
+	 */
+	public long executedStmts() {
+		return executedStmts;
+	}
+
+	/** Thrown when a limit of the run is exceeded. */
+	private static class BudgetExceeded extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The limit exceeded. */
+		final ExecutionResult.Status status;
+
+		BudgetExceeded(ExecutionResult.Status status, String message) {
+			super(message, null, false, false);
+			this.status = status;
+		}
+
+	}
+
 }
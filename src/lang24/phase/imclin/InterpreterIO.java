@@ -0,0 +1,208 @@
+package lang24.phase.imclin;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * The input and output of a program run by an interpreter: the implementation
+ * of the built-in functions {@code _putint}, {@code _putchar}, {@code _getint}
+ * and {@code _getchar}.
+ *
+ * Output is collected in a byte buffer and written out when the buffer is
+ * full, before the input is read, and when {@link #flush} is called. Input is
+ * read through a byte buffer as well, with integers parsed by hand rather than
+ * by a {@link Scanner}, so that {@code _getint} and {@code _getchar} can be
+ * mixed freely.
+ */
+public class InterpreterIO implements Flushable {
+
+	/** The size of the input and output buffers. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The input. */
+	private final InputStream in;
+
+	/** The output. */
+	private final OutputStream out;
+
+	/** The charset characters beyond ASCII are encoded with. */
+	private final Charset charset;
+
+	/** Encodings of characters beyond ASCII (computed when first needed). */
+	private final byte[][] encodings = new byte[0x100][];
+
+	/** The output buffer. */
+	private final byte[] outBuffer = new byte[BUFFER_SIZE];
+
+	/** The number of bytes in the output buffer. */
+	private int outSize = 0;
+
+	/** The input buffer. */
+	private final byte[] inBuffer = new byte[BUFFER_SIZE];
+
+	/** The position of the next byte in the input buffer. */
+	private int inPos = 0;
+
+	/** The number of bytes in the input buffer. */
+	private int inLimit = 0;
+
+	/** Digits of an integer being written (in reverse order). */
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * Constructs the input and output of a program.
+	 *
+	 * @param in  The input.
+	 * @param out The output (characters beyond ASCII are encoded with its charset
+	 *            if it is a {@link PrintStream} and with the default charset
+	 *            otherwise).
+	 */
+	public InterpreterIO(final InputStream in, final OutputStream out) {
+		this.in = in;
+		this.out = out;
+		this.charset = out instanceof PrintStream printStream ? printStream.charset() : Charset.defaultCharset();
+	}
+
+	/**
+	 * Writes an integer in decimal notation.
+	 *
+	 * @param value The integer.
+	 */
+	public void putInt(final long value) {
+		if (value == Long.MIN_VALUE) {
+			for (final byte b : Long.toString(value).getBytes(StandardCharsets.US_ASCII))
+				put(b);
+			return;
+		}
+		if (value < 0)
+			put('-');
+		long rest = Math.abs(value);
+		int size = 0;
+		do {
+			digits[size++] = (byte) ('0' + rest % 10);
+			rest = rest / 10;
+		} while (rest != 0);
+		while (size > 0)
+			put(digits[--size]);
+	}
+
+	/**
+	 * Writes a character (only the lowest eight bits of its code are used).
+	 *
+	 * @param value The code of the character.
+	 */
+	public void putChar(final long value) {
+		final int c = (char) value % 0x100;
+		if (c < 0x80) {
+			put(c);
+			return;
+		}
+		if (encodings[c] == null)
+			encodings[c] = String.valueOf((char) c).getBytes(charset);
+		for (final byte b : encodings[c])
+			put(b);
+	}
+
+	private void put(final int b) {
+		if (outSize == outBuffer.length)
+			flushBuffer();
+		outBuffer[outSize++] = (byte) b;
+	}
+
+	/**
+	 * Reads an integer: skips white space and reads an optionally signed
+	 * sequence of decimal digits.
+	 *
+	 * @return The integer.
+	 * @throws NoSuchElementException If the input is exhausted.
+	 * @throws InputMismatchException If the input does not contain an integer.
+	 */
+	public long getInt() {
+		int b = peek();
+		while (b >= 0 && Character.isWhitespace(b)) {
+			inPos++;
+			b = peek();
+		}
+		if (b < 0)
+			throw new NoSuchElementException();
+		final StringBuilder token = new StringBuilder();
+		if (b == '-' || b == '+') {
+			token.append((char) b);
+			inPos++;
+			b = peek();
+		}
+		while (b >= '0' && b <= '9') {
+			token.append((char) b);
+			inPos++;
+			b = peek();
+		}
+		if (b >= 0 && !Character.isWhitespace(b)) {
+			token.append((char) b);
+			throw new InputMismatchException(token.toString());
+		}
+		try {
+			return Long.parseLong(token.toString());
+		} catch (final NumberFormatException __) {
+			throw new InputMismatchException(token.toString());
+		}
+	}
+
+	/**
+	 * Reads a single byte.
+	 *
+	 * @return The byte ({@code 0xFFFF} if the input is exhausted and {@code '\n'}
+	 *         if it cannot be read).
+	 */
+	public long getChar() {
+		final int b;
+		try {
+			b = fill() ? inBuffer[inPos++] & 0xFF : -1;
+		} catch (final UncheckedIOException __) {
+			return '\n';
+		}
+		return (char) b;
+	}
+
+	/** Returns the next byte of the input without consuming it (or -1). */
+	private int peek() {
+		return fill() ? inBuffer[inPos] & 0xFF : -1;
+	}
+
+	/** Makes sure the input buffer is not empty unless the input is exhausted. */
+	private boolean fill() {
+		if (inPos < inLimit)
+			return true;
+		// Whatever has been written so far might be a prompt.
+		flush();
+		try {
+			inPos = 0;
+			inLimit = Math.max(0, in.read(inBuffer, 0, inBuffer.length));
+		} catch (final IOException ex) {
+			inLimit = 0;
+			throw new UncheckedIOException(ex);
+		}
+		return inLimit > 0;
+	}
+
+	private void flushBuffer() {
+		try {
+			out.write(outBuffer, 0, outSize);
+		} catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		outSize = 0;
+	}
+
+	/** Writes out the output buffer. */
+	@Override
+	public void flush() {
+		flushBuffer();
+		try {
+			out.flush();
+		} catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,1007 @@
+package lang24.phase.imclin;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+import lang24.*;
+import lang24.common.report.*;
+import lang24.data.mem.*;
+import lang24.data.imc.code.expr.*;
+import lang24.data.imc.code.stmt.*;
+import lang24.data.lin.*;
+
+/**
+ * An interpreter of the linearized intermediate code that translates the
+ * program into JVM bytecode and lets HotSpot run it (see
+ * {@code --interpreter=jvm}).
+ *
+ * Every code chunk becomes a static method of a hidden class taking this
+ * object, the runtime, as its only argument. Temporaries become local
+ * variables, {@link ImcMEM} loads and stores go through the runtime's
+ * {@link PagedMemory}, jumps become branches, and the built-in functions
+ * ({@code _new}, {@code _putint}, {@code _getchar}, ...) become calls of the
+ * runtime's intrinsics. Calls of functions follow the usual convention:
+ * arguments and the result are passed in memory at the stack pointer.
+ *
+ * As in {@link Interpreter}, a function sees the temporaries of its callers
+ * (e.g., the frame pointer of an enclosing function). Temporaries read by a
+ * function that never writes them are therefore kept in the runtime rather
+ * than in local variables; a function writing such a temporary saves its
+ * value on entry and restores it on return. Reading any temporary before it has
+ * been written fails as in {@link Interpreter}; for local variables, this is
+ * checked only where some path through the function reaches a read of a
+ * temporary without writing it first.
+ *
+ * The class file is produced without any library: it uses class file version
+ * 50, for which the JVM verifies the code without stack map frames. If a
+ * function does not fit into a JVM method or the program does not fit into a
+ * class file (e.g., its constant pool grows too large), the program is run by
+ * {@link ClosureInterpreter} instead.
+ */
+public class JvmInterpreter {
+
+	/** The input and output of the program. */
+	private final InterpreterIO io;
+
+	/** The memory. */
+	private final PagedMemory memory = new PagedMemory();
+
+	/** The value of the stack pointer. */
+	private long sp = 0x7FFFFFFFFFFFFFF8L;
+
+	/** The value of the heap pointer. */
+	private long hp = 0x2000000000000000L;
+
+	/** The heap. */
+	private final HeapAllocator heap;
+
+	/** Addresses of data chunks. */
+	private final HashMap<MemLabel, Long> dataMemLabels = new HashMap<MemLabel, Long>();
+
+	/** Temporaries shared among functions, numbered densely. */
+	private final HashMap<MemTemp, Integer> shared = new HashMap<MemTemp, Integer>();
+
+	/** Values of shared temporaries. */
+	private long[] sharedValues;
+
+	/** Whether shared temporaries have been written to. */
+	private boolean[] sharedDefined;
+
+	/** Methods of the translated functions indexed by their entry labels. */
+	private final HashMap<MemLabel, MethodHandle> methods = new HashMap<MemLabel, MethodHandle>();
+
+	/** The interpreter used if the program cannot be translated. */
+	private ClosureInterpreter fallback = null;
+
+	/**
+	 * Lays out the data chunks and translates the code chunks.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 */
+	public JvmInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks) {
+		this(dataChunks, codeChunks, CompilationContext.current().in(), CompilationContext.current().out());
+	}
+
+	/**
+	 * Lays out the data chunks and translates the code chunks of a program
+	 * reading and writing the specified streams.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 * @param in         The input of the program.
+	 * @param out        The output of the program.
+	 */
+	public JvmInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks, InputStream in,
+			OutputStream out) {
+		io = new InterpreterIO(in, out);
+		for (LinDataChunk dataChunk : dataChunks) {
+			dataMemLabels.put(dataChunk.label, hp);
+			if (dataChunk.init != null) {
+				for (int c = 0; c < dataChunk.init.length(); c++)
+					memory.store(hp + 8 * c, dataChunk.init.charAt(c));
+				memory.store(hp + 8 * dataChunk.init.length(), 0L);
+			}
+			hp += dataChunk.size;
+		}
+		heap = new HeapAllocator(memory, hp);
+
+		// Temporaries read but not written by a function are shared.
+		for (LinCodeChunk codeChunk : codeChunks) {
+			TempUses uses = new TempUses();
+			uses.defs.add(codeChunk.frame.FP);
+			uses.uses.add(codeChunk.frame.RV);
+			for (ImcStmt stmt : codeChunk.stmts())
+				stmt.accept(uses, null);
+			for (MemTemp temp : uses.uses)
+				if (!uses.defs.contains(temp))
+					shared.putIfAbsent(temp, shared.size());
+		}
+		sharedValues = new long[shared.size()];
+		sharedDefined = new boolean[shared.size()];
+
+		byte[] classFile;
+		try {
+			classFile = new ClassWriter(codeChunks).write();
+		} catch (CodeTooLarge __) {
+			fallback = new ClosureInterpreter(dataChunks, codeChunks, in, out);
+			return;
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			MethodType type = MethodType.methodType(void.class, JvmInterpreter.class);
+			for (int f = 0; f < codeChunks.size(); f++)
+				methods.put(codeChunks.get(f).frame.label, lookup.findStatic(lookup.lookupClass(), "f" + f, type));
+		} catch (IllegalAccessException | NoSuchMethodException ex) {
+			throw new Report.InternalError();
+		}
+	}
+
+	/**
+	 * Runs a program.
+	 *
+	 * @param entryMemLabel The name of the function to be called.
+	 * @return The value returned by the function.
+	 */
+	public long run(String entryMemLabel) {
+		if (fallback != null)
+			return fallback.run(entryMemLabel);
+		for (MemLabel label : methods.keySet()) {
+			if (label.name.equals(entryMemLabel)) {
+				try {
+					methods.get(label).invokeExact(this);
+				} catch (RuntimeException | Error ex) {
+					throw ex;
+				} catch (Throwable ex) {
+					throw new RuntimeException(ex);
+				} finally {
+					io.flush();
+					heap.report();
+				}
+				return memory.load(sp);
+			}
+		}
+		throw new Report.InternalError();
+	}
+
+	/* The runtime called by the translated code. */
+
+	long load(long address) {
+		return memory.load(address);
+	}
+
+	void store(long address, long value) {
+		memory.store(address, value);
+	}
+
+	long sp() {
+		return sp;
+	}
+
+	void setSp(long sp) {
+		this.sp = sp;
+	}
+
+	long sharedLoad(int index) {
+		if (!sharedDefined[index])
+			throw new Report.Error("Uninitialized temporary variable T" + sharedTemp(index).temp + ".");
+		return sharedValues[index];
+	}
+
+	void sharedStore(int index, long value) {
+		sharedValues[index] = value;
+		sharedDefined[index] = true;
+	}
+
+	long sharedValue(int index) {
+		return sharedValues[index];
+	}
+
+	long sharedDefined(int index) {
+		return sharedDefined[index] ? 1 : 0;
+	}
+
+	void sharedRestore(int index, long value, long defined) {
+		sharedValues[index] = value;
+		sharedDefined[index] = defined != 0;
+	}
+
+	private MemTemp sharedTemp(int index) {
+		for (Map.Entry<MemTemp, Integer> entry : shared.entrySet())
+			if (entry.getValue() == index)
+				return entry.getKey();
+		throw new Report.InternalError();
+	}
+
+	void _new() {
+		memory.store(sp, heap.allocate(memory.load(sp + 1 * 8)));
+	}
+
+	void _del() {
+		heap.free(memory.load(sp + 1 * 8));
+	}
+
+	void _exit() {
+		throw new ProgramExit();
+	}
+
+	void _putint() {
+		io.putInt(memory.load(sp + 1 * 8));
+	}
+
+	void _getint() {
+		memory.store(sp, io.getInt());
+	}
+
+	void _putchar() {
+		io.putChar(memory.load(sp + 1 * 8));
+	}
+
+	void _getchar() {
+		memory.store(sp, io.getChar());
+	}
+
+	static long or(long fst, long snd) {
+		return (fst != 0) | (snd != 0) ? 1 : 0;
+	}
+
+	static long and(long fst, long snd) {
+		return (fst != 0) & (snd != 0) ? 1 : 0;
+	}
+
+	static long equ(long fst, long snd) {
+		return fst == snd ? 1 : 0;
+	}
+
+	static long neq(long fst, long snd) {
+		return fst != snd ? 1 : 0;
+	}
+
+	static long lth(long fst, long snd) {
+		return fst < snd ? 1 : 0;
+	}
+
+	static long gth(long fst, long snd) {
+		return fst > snd ? 1 : 0;
+	}
+
+	static long leq(long fst, long snd) {
+		return fst <= snd ? 1 : 0;
+	}
+
+	static long geq(long fst, long snd) {
+		return fst >= snd ? 1 : 0;
+	}
+
+	static long not(long sub) {
+		return sub == 0 ? 1 : 0;
+	}
+
+	static long internalError() {
+		throw new Report.InternalError();
+	}
+
+	static void uninitialized(long temp) {
+		throw new Report.Error("Uninitialized temporary variable T" + temp + ".");
+	}
+
+	static void fellOff(int size) {
+		// Running past the last statement fails as in the tree interpreter.
+		throw new ArrayIndexOutOfBoundsException("Array index out of range: " + size);
+	}
+
+	/* Translation. */
+
+	/** Thrown if a function does not fit into a JVM method or the program into a class file. */
+	private static class CodeTooLarge extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	/** Collects temporaries used and defined by a function. */
+	private static class TempUses implements lang24.data.imc.visitor.ImcVisitor<Object, Object> {
+
+		final HashSet<MemTemp> uses = new HashSet<MemTemp>();
+
+		final HashSet<MemTemp> defs = new HashSet<MemTemp>();
+
+		@Override
+		public Object visit(ImcBINOP imcBinop, Object arg) {
+			imcBinop.fstExpr.accept(this, arg);
+			imcBinop.sndExpr.accept(this, arg);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcCALL imcCall, Object arg) {
+			for (ImcExpr callArg : imcCall.args)
+				callArg.accept(this, arg);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcCJUMP imcCJump, Object arg) {
+			return imcCJump.cond.accept(this, arg);
+		}
+
+		@Override
+		public Object visit(ImcCONST imcConst, Object arg) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcESTMT imcEStmt, Object arg) {
+			return imcEStmt.expr.accept(this, arg);
+		}
+
+		@Override
+		public Object visit(ImcJUMP imcJump, Object arg) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcLABEL imcLabel, Object arg) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcMEM imcMem, Object arg) {
+			return imcMem.addr.accept(this, arg);
+		}
+
+		@Override
+		public Object visit(ImcMOVE imcMove, Object arg) {
+			if (imcMove.dst instanceof ImcTEMP imcTemp)
+				defs.add(imcTemp.temp);
+			else
+				imcMove.dst.accept(this, arg);
+			imcMove.src.accept(this, arg);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcNAME imcName, Object arg) {
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcSEXPR imcSExpr, Object arg) {
+			imcSExpr.stmt.accept(this, arg);
+			imcSExpr.expr.accept(this, arg);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcSTMTS imcStmts, Object arg) {
+			for (ImcStmt stmt : imcStmts.stmts)
+				stmt.accept(this, arg);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcTEMP imcTemp, Object arg) {
+			uses.add(imcTemp.temp);
+			return null;
+		}
+
+		@Override
+		public Object visit(ImcUNOP imcUnop, Object arg) {
+			return imcUnop.subExpr.accept(this, arg);
+		}
+
+	}
+
+	/** The constant pool of a class file. */
+	private static class ConstantPool {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		final DataOutputStream out = new DataOutputStream(bytes);
+
+		final HashMap<String, Integer> entries = new HashMap<String, Integer>();
+
+		int count = 1;
+
+		private int entry(String key, int size, DataWriter writer) {
+			Integer index = entries.get(key);
+			if (index != null)
+				return index;
+			try {
+				writer.write();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			entries.put(key, count);
+			count += size;
+			return count - size;
+		}
+
+		int utf8(String string) {
+			return entry("U" + string, 1, () -> {
+				out.writeByte(1);
+				out.writeUTF(string);
+			});
+		}
+
+		int classRef(String name) {
+			int nameIndex = utf8(name);
+			return entry("C" + name, 1, () -> {
+				out.writeByte(7);
+				out.writeShort(nameIndex);
+			});
+		}
+
+		int methodRef(String owner, String name, String descriptor) {
+			int classIndex = classRef(owner);
+			int nameIndex = utf8(name);
+			int descriptorIndex = utf8(descriptor);
+			int nameAndTypeIndex = entry("N" + name + ":" + descriptor, 1, () -> {
+				out.writeByte(12);
+				out.writeShort(nameIndex);
+				out.writeShort(descriptorIndex);
+			});
+			return entry("M" + owner + "." + name + ":" + descriptor, 1, () -> {
+				out.writeByte(10);
+				out.writeShort(classIndex);
+				out.writeShort(nameAndTypeIndex);
+			});
+		}
+
+		int longConst(long value) {
+			return entry("J" + value, 2, () -> {
+				out.writeByte(5);
+				out.writeLong(value);
+			});
+		}
+
+		int intConst(int value) {
+			return entry("I" + value, 1, () -> {
+				out.writeByte(3);
+				out.writeInt(value);
+			});
+		}
+
+	}
+
+	private interface DataWriter {
+
+		void write() throws IOException;
+
+	}
+
+	/** Writes the class file of the translated program. */
+	private class ClassWriter {
+
+		static final String RUNTIME = "lang24/phase/imclin/JvmInterpreter";
+
+		static final String PROGRAM = "lang24/phase/imclin/JvmProgram";
+
+		static final String METHOD = "(L" + RUNTIME + ";)V";
+
+		final Vector<LinCodeChunk> codeChunks;
+
+		final ConstantPool pool = new ConstantPool();
+
+		/** Method indices of functions. */
+		final HashMap<MemLabel, Integer> functions = new HashMap<MemLabel, Integer>();
+
+		ClassWriter(Vector<LinCodeChunk> codeChunks) {
+			this.codeChunks = codeChunks;
+			for (int f = 0; f < codeChunks.size(); f++)
+				functions.put(codeChunks.get(f).frame.label, f);
+		}
+
+		byte[] write() {
+			try {
+				int thisClass = pool.classRef(PROGRAM);
+				int superClass = pool.classRef("java/lang/Object");
+				ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+				DataOutputStream methodOut = new DataOutputStream(methodBytes);
+				for (int f = 0; f < codeChunks.size(); f++) {
+					MethodWriter method = new MethodWriter(codeChunks.get(f));
+					byte[] code = method.write();
+					methodOut.writeShort(0x0009); // public static
+					methodOut.writeShort(pool.utf8("f" + f));
+					methodOut.writeShort(pool.utf8(METHOD));
+					methodOut.writeShort(1);
+					methodOut.writeShort(pool.utf8("Code"));
+					methodOut.writeInt(12 + code.length);
+					methodOut.writeShort(method.maxStack);
+					methodOut.writeShort(method.maxLocals);
+					methodOut.writeInt(code.length);
+					methodOut.write(code);
+					methodOut.writeShort(0);
+					methodOut.writeShort(0);
+				}
+
+				if (pool.count > 65535 || codeChunks.size() > 65535)
+					throw new CodeTooLarge();
+
+				ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(classBytes);
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0);
+				out.writeShort(50);
+				out.writeShort(pool.count);
+				out.write(pool.bytes.toByteArray());
+				out.writeShort(0x0031); // public final super
+				out.writeShort(thisClass);
+				out.writeShort(superClass);
+				out.writeShort(0);
+				out.writeShort(0);
+				out.writeShort(codeChunks.size());
+				out.write(methodBytes.toByteArray());
+				out.writeShort(0);
+				return classBytes.toByteArray();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		/** Writes the code of a single function. */
+		private class MethodWriter {
+
+			final LinCodeChunk chunk;
+
+			final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+			/** Local variables of unshared temporaries. */
+			final HashMap<MemTemp, Integer> locals = new HashMap<MemTemp, Integer>();
+
+			/** Local variables telling whether unshared temporaries have been written to. */
+			final HashMap<MemTemp, Integer> flags = new HashMap<MemTemp, Integer>();
+
+			/** Local variables keeping the saved values of shared temporaries. */
+			final HashMap<MemTemp, Integer> saved = new HashMap<MemTemp, Integer>();
+
+			/** Code positions of labels. */
+			final HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+
+			/** Positions of branch offsets and the instructions they belong to. */
+			final Vector<int[]> fixupPositions = new Vector<int[]>();
+
+			/** Labels the branches jump to. */
+			final Vector<MemLabel> fixupLabels = new Vector<MemLabel>();
+
+			/** The local variable for intermediate results. */
+			static final int SCRATCH = 1;
+
+			int maxLocals = 3;
+
+			int stack = 0;
+
+			int maxStack = 0;
+
+			MethodWriter(LinCodeChunk chunk) {
+				this.chunk = chunk;
+			}
+
+			byte[] write() {
+				TempUses uses = new TempUses();
+				uses.defs.add(chunk.frame.FP);
+				uses.uses.add(chunk.frame.RV);
+				Vector<ImcStmt> stmts = chunk.stmts();
+				for (ImcStmt stmt : stmts)
+					stmt.accept(uses, null);
+				HashSet<MemTemp> temps = new HashSet<MemTemp>(uses.uses);
+				temps.addAll(uses.defs);
+				for (MemTemp temp : temps) {
+					if (shared.containsKey(temp)) {
+						if (uses.defs.contains(temp)) {
+							saved.put(temp, maxLocals);
+							maxLocals += 4;
+						}
+					} else {
+						locals.put(temp, maxLocals);
+						maxLocals += 2;
+					}
+				}
+				for (MemTemp temp : maybeUndefined(stmts)) {
+					flags.put(temp, maxLocals);
+					maxLocals += 1;
+				}
+
+				/* PROLOGUE */
+				for (int local : locals.values()) {
+					op(0x09, 2); // lconst_0
+					local(0x37, local, -2); // lstore
+				}
+				for (int flag : flags.values()) {
+					op(0x03, 1); // iconst_0
+					local(0x36, flag, -1); // istore
+				}
+				for (Map.Entry<MemTemp, Integer> save : saved.entrySet()) {
+					int index = shared.get(save.getKey());
+					aload0();
+					intConst(index);
+					invokeVirtual("sharedValue", "(I)J", -2 + 2);
+					local(0x37, save.getValue(), -2);
+					aload0();
+					intConst(index);
+					invokeVirtual("sharedDefined", "(I)J", -2 + 2);
+					local(0x37, save.getValue() + 2, -2);
+				}
+				storeTemp(chunk.frame.FP, () -> loadSp());
+				aload0();
+				loadSp();
+				longConst(chunk.frame.size);
+				op(0x65, -2); // lsub
+				invokeVirtual("setSp", "(J)V", -3);
+				jump(chunk.entryLabel);
+
+				/* BODY */
+				for (ImcStmt stmt : stmts)
+					stmt(stmt);
+				intConst(stmts.size());
+				invokeStatic("fellOff", "(I)V", -1);
+
+				/* EPILOGUE */
+				labels.put(chunk.exitLabel, code.size());
+				aload0();
+				loadTemp(chunk.frame.FP);
+				loadTemp(chunk.frame.RV);
+				invokeVirtual("store", "(JJ)V", -5);
+				aload0();
+				loadSp();
+				longConst(chunk.frame.size);
+				op(0x61, -2); // ladd
+				invokeVirtual("setSp", "(J)V", -3);
+				for (Map.Entry<MemTemp, Integer> save : saved.entrySet()) {
+					aload0();
+					intConst(shared.get(save.getKey()));
+					local(0x16, save.getValue(), 2); // lload
+					local(0x16, save.getValue() + 2, 2); // lload
+					invokeVirtual("sharedRestore", "(IJJ)V", -6);
+				}
+				op(0xb1, 0); // return
+
+				byte[] bytes = code.toByteArray();
+				for (int f = 0; f < fixupPositions.size(); f++) {
+					Integer target = labels.get(fixupLabels.get(f));
+					if (target == null)
+						throw new Report.InternalError();
+					int offset = target - fixupPositions.get(f)[1];
+					int at = fixupPositions.get(f)[0];
+					bytes[at] = (byte) (offset >> 24);
+					bytes[at + 1] = (byte) (offset >> 16);
+					bytes[at + 2] = (byte) (offset >> 8);
+					bytes[at + 3] = (byte) offset;
+				}
+				if (bytes.length > 65535 || maxLocals > 65535 || maxStack > 65535)
+					throw new CodeTooLarge();
+				return bytes;
+			}
+
+			/**
+			 * Returns the unshared temporaries that are read before they are written on
+			 * some path through the function (including the read of the return value in
+			 * the epilogue).
+			 */
+			HashSet<MemTemp> maybeUndefined(Vector<ImcStmt> stmts) {
+				HashMap<MemTemp, Integer> numbers = new HashMap<MemTemp, Integer>();
+				for (MemTemp temp : locals.keySet())
+					numbers.put(temp, numbers.size());
+				HashMap<MemLabel, Integer> targets = new HashMap<MemLabel, Integer>();
+				Vector<TempUses> uses = new Vector<TempUses>();
+				for (int s = 0; s < stmts.size(); s++) {
+					if (stmts.get(s) instanceof ImcLABEL imcLabel)
+						targets.put(imcLabel.label, s);
+					TempUses stmtUses = new TempUses();
+					stmts.get(s).accept(stmtUses, null);
+					uses.add(stmtUses);
+				}
+
+				// Temporaries written on all paths to a statement (null if unreachable).
+				BitSet[] defined = new BitSet[stmts.size()];
+				BitSet atExit = null;
+				ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+				Integer entry = targets.get(chunk.entryLabel);
+				if (entry != null) {
+					defined[entry] = new BitSet();
+					if (numbers.containsKey(chunk.frame.FP))
+						defined[entry].set(numbers.get(chunk.frame.FP));
+					worklist.add(entry);
+				}
+				while (!worklist.isEmpty()) {
+					int s = worklist.poll();
+					BitSet out = (BitSet) defined[s].clone();
+					for (MemTemp temp : uses.get(s).defs)
+						if (numbers.containsKey(temp))
+							out.set(numbers.get(temp));
+					// Jumps to the epilogue (or to unknown labels) lead to -1.
+					int[] next = switch (stmts.get(s)) {
+					case ImcJUMP imcJump -> new int[] { targets.getOrDefault(imcJump.label, -1) };
+					case ImcCJUMP imcCJump -> new int[] { targets.getOrDefault(imcCJump.posLabel, -1),
+							targets.getOrDefault(imcCJump.negLabel, -1) };
+					default -> new int[] { s + 1 };
+					};
+					for (int succ : next) {
+						if (succ < 0) {
+							if (atExit == null)
+								atExit = (BitSet) out.clone();
+							else
+								atExit.and(out);
+							continue;
+						}
+						if (succ == stmts.size())
+							continue;
+						if (defined[succ] == null)
+							defined[succ] = (BitSet) out.clone();
+						else {
+							BitSet merged = (BitSet) defined[succ].clone();
+							merged.and(out);
+							if (merged.equals(defined[succ]))
+								continue;
+							defined[succ] = merged;
+						}
+						worklist.add(succ);
+					}
+				}
+
+				HashSet<MemTemp> maybeUndefined = new HashSet<MemTemp>();
+				for (int s = 0; s < stmts.size(); s++)
+					if (defined[s] != null)
+						for (MemTemp temp : uses.get(s).uses)
+							if (numbers.containsKey(temp) && !defined[s].get(numbers.get(temp)))
+								maybeUndefined.add(temp);
+				MemTemp rv = chunk.frame.RV;
+				if (atExit != null && numbers.containsKey(rv) && !atExit.get(numbers.get(rv)))
+					maybeUndefined.add(rv);
+				return maybeUndefined;
+			}
+
+			/* Statements. */
+
+			void stmt(ImcStmt stmt) {
+				switch (stmt) {
+				case ImcLABEL imcLabel -> labels.put(imcLabel.label, code.size());
+				case ImcJUMP imcJump -> jump(imcJump.label);
+				case ImcCJUMP imcCJump -> {
+					expr(imcCJump.cond);
+					op(0x09, 2); // lconst_0
+					op(0x94, -3); // lcmp
+					op(0x99, -1); // ifeq
+					u2(8);
+					jump(imcCJump.posLabel);
+					jump(imcCJump.negLabel);
+				}
+				case ImcESTMT imcEStmt -> {
+					if (imcEStmt.expr instanceof ImcCALL imcCall)
+						call(imcCall);
+					else {
+						expr(imcEStmt.expr);
+						op(0x58, -2); // pop2
+					}
+				}
+				case ImcMOVE imcMove -> {
+					if (imcMove.dst instanceof ImcMEM imcMem) {
+						if (imcMove.src instanceof ImcCALL imcCall) {
+							expr(imcMem.addr);
+							local(0x37, SCRATCH, -2); // lstore
+							call(imcCall);
+							aload0();
+							local(0x16, SCRATCH, 2); // lload
+							loadResult();
+						} else {
+							aload0();
+							expr(imcMem.addr);
+							expr(imcMove.src);
+						}
+						invokeVirtual("store", "(JJ)V", -5);
+					} else if (imcMove.dst instanceof ImcTEMP imcTemp) {
+						if (imcMove.src instanceof ImcCALL imcCall) {
+							call(imcCall);
+							storeTemp(imcTemp.temp, () -> loadResult());
+						} else
+							storeTemp(imcTemp.temp, () -> expr(imcMove.src));
+					} else
+						throw new Report.InternalError();
+				}
+				default -> throw new Report.InternalError();
+				}
+			}
+
+			void call(ImcCALL imcCall) {
+				for (int a = 0; a < imcCall.args.size(); a++) {
+					aload0();
+					loadSp();
+					longConst(8L * a);
+					op(0x61, -2); // ladd
+					expr(imcCall.args.get(a));
+					invokeVirtual("store", "(JJ)V", -5);
+				}
+				String name = imcCall.label.name;
+				switch (name) {
+				case "_new", "_del", "_exit", "_putint", "_getint", "_putchar", "_getchar" -> {
+					aload0();
+					invokeVirtual(name, "()V", -1);
+				}
+				default -> {
+					Integer callee = functions.get(imcCall.label);
+					if (callee == null) {
+						invokeStatic("internalError", "()J", 2);
+						op(0x58, -2); // pop2
+					} else {
+						aload0();
+						op(0xb8, -1); // invokestatic
+						u2(pool.methodRef(PROGRAM, "f" + callee, METHOD));
+					}
+				}
+				}
+			}
+
+			/* Expressions. */
+
+			void expr(ImcExpr expr) {
+				switch (expr) {
+				case ImcCONST imcConst -> longConst(imcConst.value);
+				case ImcTEMP imcTemp -> loadTemp(imcTemp.temp);
+				case ImcNAME imcName -> {
+					Long address = dataMemLabels.get(imcName.label);
+					if (address == null)
+						invokeStatic("internalError", "()J", 2);
+					else
+						longConst(address);
+				}
+				case ImcMEM imcMem -> {
+					if (imcMem.addr instanceof ImcMEM inner) {
+						// As the tree interpreter, load through the inner address first.
+						aload0();
+						expr(inner.addr);
+						invokeVirtual("load", "(J)J", -1);
+						op(0x58, -2); // pop2
+					}
+					aload0();
+					expr(imcMem.addr);
+					invokeVirtual("load", "(J)J", -1);
+				}
+				case ImcUNOP imcUnop -> {
+					expr(imcUnop.subExpr);
+					switch (imcUnop.oper) {
+					case NEG -> op(0x75, 0); // lneg
+					case NOT -> invokeStatic("not", "(J)J", 0);
+					}
+				}
+				case ImcBINOP imcBinop -> {
+					expr(imcBinop.fstExpr);
+					expr(imcBinop.sndExpr);
+					switch (imcBinop.oper) {
+					case ADD -> op(0x61, -2); // ladd
+					case SUB -> op(0x65, -2); // lsub
+					case MUL -> op(0x69, -2); // lmul
+					case DIV -> op(0x6d, -2); // ldiv
+					case MOD -> op(0x71, -2); // lrem
+					default -> invokeStatic(imcBinop.oper.name().toLowerCase(), "(JJ)J", -2);
+					}
+				}
+				default -> invokeStatic("internalError", "()J", 2);
+				}
+			}
+
+			/* Temporaries. */
+
+			void loadTemp(MemTemp temp) {
+				Integer local = locals.get(temp);
+				if (local != null) {
+					Integer flag = flags.get(temp);
+					if (flag != null) {
+						local(0x15, flag, 1); // iload
+						op(0x9a, -1); // ifne
+						u2(9);
+						op(0x14, 2); // ldc2_w
+						u2(pool.longConst(temp.temp));
+						invokeStatic("uninitialized", "(J)V", -2);
+					}
+					local(0x16, local, 2); // lload
+				} else {
+					aload0();
+					intConst(shared.get(temp));
+					invokeVirtual("sharedLoad", "(I)J", 0);
+				}
+			}
+
+			void storeTemp(MemTemp temp, Runnable value) {
+				Integer local = locals.get(temp);
+				if (local != null) {
+					value.run();
+					local(0x37, local, -2); // lstore
+					Integer flag = flags.get(temp);
+					if (flag != null) {
+						op(0x04, 1); // iconst_1
+						local(0x36, flag, -1); // istore
+					}
+				} else {
+					aload0();
+					intConst(shared.get(temp));
+					value.run();
+					invokeVirtual("sharedStore", "(IJ)V", -4);
+				}
+			}
+
+			void loadSp() {
+				aload0();
+				invokeVirtual("sp", "()J", 1);
+			}
+
+			void loadResult() {
+				aload0();
+				loadSp();
+				invokeVirtual("load", "(J)J", -1);
+			}
+
+			/* Instructions. */
+
+			void op(int opcode, int delta) {
+				code.write(opcode);
+				stack += delta;
+				maxStack = Math.max(maxStack, stack);
+			}
+
+			void u2(int value) {
+				code.write(value >> 8);
+				code.write(value);
+			}
+
+			void aload0() {
+				op(0x2a, 1);
+			}
+
+			void local(int opcode, int index, int delta) {
+				if (index > 255) {
+					op(0xc4, 0); // wide
+					op(opcode, delta);
+					u2(index);
+				} else {
+					op(opcode, delta);
+					code.write(index);
+				}
+			}
+
+			void longConst(long value) {
+				if (value == 0)
+					op(0x09, 2); // lconst_0
+				else if (value == 1)
+					op(0x0a, 2); // lconst_1
+				else {
+					op(0x14, 2); // ldc2_w
+					u2(pool.longConst(value));
+				}
+			}
+
+			void intConst(int value) {
+				if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+					op(0x11, 1); // sipush
+					u2(value);
+				} else {
+					op(0x13, 1); // ldc_w
+					u2(pool.intConst(value));
+				}
+			}
+
+			void invokeVirtual(String name, String descriptor, int delta) {
+				op(0xb6, delta);
+				u2(pool.methodRef(RUNTIME, name, descriptor));
+			}
+
+			void invokeStatic(String name, String descriptor, int delta) {
+				op(0xb8, delta);
+				u2(pool.methodRef(RUNTIME, name, descriptor));
+			}
+
+			void jump(MemLabel label) {
+				int start = code.size();
+				op(0xc8, 0); // goto_w
+				fixupPositions.add(new int[] { code.size(), start });
+				fixupLabels.add(label);
+				code.write(0);
+				code.write(0);
+				code.write(0);
+				code.write(0);
+			}
+
+		}
+
+	}
+
+}
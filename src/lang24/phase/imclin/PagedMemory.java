@@ -0,0 +1,161 @@
+package lang24.phase.imclin;
+
+import java.util.*;
+import lang24.common.report.*;
+
+/**
+ * The memory of the interpreter.
+ *
+ * The address space is divided into pages of {@link #PAGE_SIZE} bytes that are
+ * allocated only when first written to, so that the stack (growing down from
+ * the top of the address space) and the static data and heap (growing up from
+ * {@code 0x2000000000000000}) take only as much space as they actually use.
+ * Values are stored as 8-byte little-endian words. Each page keeps a shadow
+ * bitmap with one bit per byte telling whether the byte has been written to,
+ * so that reading an uninitialized location is still reported.
+ */
+public class PagedMemory {
+
+	/** The number of address bits within a page. */
+	private static final int PAGE_BITS = 12;
+
+	/** The size of a page (in bytes). */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	/** The mask of address bits within a page. */
+	private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+	/** The number of bits of the index of a cached page. */
+	private static final int CACHE_BITS = 6;
+
+	/** The number of recently used pages cached. */
+	private static final int CACHE_SIZE = 1 << CACHE_BITS;
+
+	/** A page of memory. */
+	private static final class Page {
+
+		/** The contents as little-endian words. */
+		final long[] words = new long[PAGE_SIZE / 8];
+
+		/** The shadow bitmap: a bit per byte set once the byte is written to. */
+		final long[] written = new long[PAGE_SIZE / 64];
+
+	}
+
+	/** All pages allocated so far indexed by the page number. */
+	private final HashMap<Long, Page> pages = new HashMap<Long, Page>();
+
+	/** Page numbers of recently used pages (direct-mapped cache). */
+	private final long[] cachedNumbers = new long[CACHE_SIZE];
+
+	/** Recently used pages (direct-mapped cache). */
+	private final Page[] cachedPages = new Page[CACHE_SIZE];
+
+	/** The page number of the page used last. */
+	private long lastNumber = -1;
+
+	/** The page used last. */
+	private Page lastPage = null;
+
+	/** Constructs an empty memory. */
+	public PagedMemory() {
+	}
+
+	/**
+	 * Returns the page containing the specified address.
+	 *
+	 * @param address  The address.
+	 * @param allocate Whether the page should be allocated if it does not exist
+	 *                 yet.
+	 * @return The page (or {@code null} if it does not exist and has not been
+	 *         allocated).
+	 */
+	private Page page(final long address, final boolean allocate) {
+		final long number = address >>> PAGE_BITS;
+		if (number == lastNumber)
+			return lastPage;
+		// The top bits of a multiplicative hash, as the page numbers of the stack and
+		// of the static data differ in the high bits only.
+		final int slot = (int) ((number * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+		Page page = cachedPages[slot];
+		if (page != null && cachedNumbers[slot] == number) {
+			lastNumber = number;
+			lastPage = page;
+			return page;
+		}
+		page = pages.get(number);
+		if (page == null) {
+			if (!allocate)
+				return null;
+			page = new Page();
+			pages.put(number, page);
+		}
+		cachedNumbers[slot] = number;
+		cachedPages[slot] = page;
+		lastNumber = number;
+		lastPage = page;
+		return page;
+	}
+
+	/**
+	 * Stores a word.
+	 *
+	 * @param address The address.
+	 * @param value   The value.
+	 */
+	public void store(final long address, final long value) {
+		final int offset = (int) (address & PAGE_MASK);
+		if ((offset & 7) == 0) {
+			final Page page = page(address, true);
+			page.words[offset >>> 3] = value;
+			page.written[offset >>> 6] |= 0xFFL << (offset & 63);
+			return;
+		}
+		long bytes = value;
+		for (int b = 0; b <= 7; b++) {
+			final long byteAddress = address + b;
+			final int byteOffset = (int) (byteAddress & PAGE_MASK);
+			final Page page = page(byteAddress, true);
+			final int shift = (byteOffset & 7) << 3;
+			page.words[byteOffset >>> 3] = (page.words[byteOffset >>> 3] & ~(0xFFL << shift)) | ((bytes & 0xFFL) << shift);
+			page.written[byteOffset >>> 6] |= 1L << (byteOffset & 63);
+			bytes = bytes >> 8;
+		}
+	}
+
+	/**
+	 * Loads a word.
+	 *
+	 * @param address The address.
+	 * @return The value.
+	 * @throws Report.Error If any byte of the word has never been written to.
+	 */
+	public long load(final long address) {
+		final int offset = (int) (address & PAGE_MASK);
+		if ((offset & 7) == 0) {
+			final Page page = page(address, false);
+			if (page != null && ((page.written[offset >>> 6] >>> (offset & 63)) & 0xFFL) == 0xFFL)
+				return page.words[offset >>> 3];
+		}
+		long value = 0;
+		for (int b = 7; b >= 0; b--) {
+			final long byteAddress = address + b;
+			final int byteOffset = (int) (byteAddress & PAGE_MASK);
+			final Page page = page(byteAddress, false);
+			if (page == null || (page.written[byteOffset >>> 6] & (1L << (byteOffset & 63))) == 0)
+				throw new Report.Error("INTERPRETER: Uninitialized memory location " + byteAddress + ".");
+			value = (value << 8) | ((page.words[byteOffset >>> 3] >>> ((byteOffset & 7) << 3)) & 0xFFL);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the number of pages allocated so far.
+	 *
+	 * @return The number of pages.
+	 */
+	public int numPages() {
+		return pages.size();
+	}
+
+}
@@ -0,0 +1,373 @@
+package lang24.phase.imclin;
+
+import java.io.*;
+import java.util.*;
+import lang24.common.report.*;
+import lang24.data.ast.tree.*;
+import lang24.data.ast.tree.defn.*;
+import lang24.data.ast.tree.stmt.*;
+import lang24.data.ast.visitor.*;
+import lang24.data.imc.code.*;
+import lang24.data.imc.code.expr.*;
+import lang24.data.imc.code.stmt.*;
+import lang24.data.lin.*;
+import lang24.data.mem.*;
+import lang24.phase.imcgen.*;
+import lang24.phase.memory.*;
+
+/**
+ * An execution profile of a program run by {@link Interpreter} (see
+ * {@code --profile}).
+ *
+ * For every function it counts calls, statements executed, memory loads and
+ * stores, and how many times each conditional jump has been taken. Statements
+ * are attributed to source locations through the intermediate code attached to
+ * the abstract syntax tree by {@link ImcGen#stmtImc} and {@link ImcGen#exprImc}
+ * and statements executed are also counted per call path.
+ */
+public class Profiler {
+
+	/** Counters of a single function. */
+	static final class Function {
+
+		/** The function. */
+		final LinCodeChunk chunk;
+
+		/** The number of calls. */
+		long calls;
+
+		/** The number of memory loads. */
+		long loads;
+
+		/** The number of memory stores. */
+		long stores;
+
+		/** The number of executions of each statement. */
+		final long[] stmts;
+
+		/** The number of times each conditional jump has been taken. */
+		final long[] taken;
+
+		Function(final LinCodeChunk chunk) {
+			this.chunk = chunk;
+			final int size = chunk.stmts().size();
+			this.stmts = new long[size];
+			this.taken = new long[size];
+		}
+
+	}
+
+	/** A call path: a node of the calling context tree. */
+	static final class Path {
+
+		/** The function called. */
+		final Function function;
+
+		/** The calling path (or {@code null} for the outermost call). */
+		final Path caller;
+
+		/** Calls made on this path indexed by the called function. */
+		final HashMap<Function, Path> callees = new HashMap<Function, Path>();
+
+		/** The number of statements executed on this path. */
+		long stmts;
+
+		Path(final Function function, final Path caller) {
+			this.function = function;
+			this.caller = caller;
+		}
+
+	}
+
+	/** Counters of functions indexed by their entry labels. */
+	private final HashMap<MemLabel, Function> functions = new HashMap<MemLabel, Function>();
+
+	/** Outermost calls. */
+	private final HashMap<Function, Path> roots = new HashMap<Function, Path>();
+
+	/**
+	 * Constructs an empty profile.
+	 *
+	 * @param codeChunks The code chunks of the program.
+	 */
+	public Profiler(final Vector<LinCodeChunk> codeChunks) {
+		for (final LinCodeChunk codeChunk : codeChunks)
+			functions.put(codeChunk.frame.label, new Function(codeChunk));
+	}
+
+	/**
+	 * Records a call.
+	 *
+	 * @param caller     The call path of the caller (or {@code null} for the
+	 *                   outermost call).
+	 * @param entryLabel The entry label of the function called.
+	 * @return The call path of the callee.
+	 */
+	Path call(final Path caller, final MemLabel entryLabel) {
+		final Function function = functions.get(entryLabel);
+		function.calls++;
+		final HashMap<Function, Path> callees = caller == null ? roots : caller.callees;
+		Path path = callees.get(function);
+		if (path == null) {
+			path = new Path(function, caller);
+			callees.put(function, path);
+		}
+		return path;
+	}
+
+	/**
+	 * Records an execution of a statement.
+	 *
+	 * @param path       The call path of the function executing the statement.
+	 * @param stmtOffset The offset of the statement.
+	 */
+	static void stmt(final Path path, final int stmtOffset) {
+		path.stmts++;
+		path.function.stmts[stmtOffset]++;
+	}
+
+	/**
+	 * Records a conditional jump that has been taken.
+	 *
+	 * @param path       The call path of the function executing the jump.
+	 * @param stmtOffset The offset of the conditional jump.
+	 */
+	static void taken(final Path path, final int stmtOffset) {
+		path.function.taken[stmtOffset]++;
+	}
+
+	/**
+	 * Records a memory load.
+	 *
+	 * @param path The call path of the function loading.
+	 */
+	static void load(final Path path) {
+		path.function.loads++;
+	}
+
+	/**
+	 * Records a memory store.
+	 *
+	 * @param path The call path of the function storing.
+	 */
+	static void store(final Path path) {
+		path.function.stores++;
+	}
+
+	/**
+	 * Writes the profile: the flat profile to the specified file and the
+	 * collapsed call stacks (one line per call path, as accepted by flame graph
+	 * tools) to the file with the same name followed by {@code .folded}.
+	 *
+	 * @param fileName The name of the file.
+	 * @param ast      The abstract syntax tree of the program (or {@code null} if
+	 *                 source locations are not available).
+	 */
+	public void write(final String fileName, final AstNode ast) {
+		final LocationMapper mapper = new LocationMapper();
+		if (ast != null)
+			ast.accept(mapper, null);
+
+		final Vector<Function> sorted = new Vector<Function>(functions.values());
+		sorted.sort(Comparator.comparingLong((Function function) -> -total(function.stmts))
+				.thenComparing(function -> function.chunk.frame.label.name));
+
+		try (final PrintWriter flat = new PrintWriter(
+				new BufferedWriter(new FileWriter(lang24.Compiler.file(fileName))))) {
+			flat.printf("%12s %12s %12s %12s  %s%n", "stmts", "calls", "loads", "stores", "function");
+			for (final Function function : sorted) {
+				if (function.calls == 0)
+					continue;
+				flat.printf("%12d %12d %12d %12d  %s%n", total(function.stmts), function.calls, function.loads,
+						function.stores, mapper.name(function));
+			}
+			for (final Function function : sorted) {
+				if (function.calls == 0)
+					continue;
+				flat.printf("%n%s:%n", mapper.name(function));
+				flat.printf("%12s %12s %12s  %s%n", "stmts", "taken", "not taken", "location");
+				final Vector<ImcStmt> stmts = function.chunk.stmts();
+				final LinkedHashMap<Location, long[]> lines = new LinkedHashMap<Location, long[]>();
+				for (int s = 0; s < stmts.size(); s++) {
+					final Location location = mapper.location(stmts.get(s));
+					final long[] line = lines.computeIfAbsent(location, __ -> new long[3]);
+					line[0] += function.stmts[s];
+					if (stmts.get(s) instanceof ImcCJUMP) {
+						line[1] += function.taken[s];
+						line[2] += function.stmts[s] - function.taken[s];
+					}
+				}
+				final Vector<Map.Entry<Location, long[]>> entries = new Vector<Map.Entry<Location, long[]>>(
+						lines.entrySet());
+				entries.sort(Comparator.comparingLong((Map.Entry<Location, long[]> entry) -> -entry.getValue()[0]));
+				for (final Map.Entry<Location, long[]> entry : entries) {
+					final long[] line = entry.getValue();
+					if (line[0] == 0)
+						continue;
+					flat.printf("%12d %12s %12s  %s%n", line[0], line[1] + line[2] == 0 ? "" : Long.toString(line[1]),
+							line[1] + line[2] == 0 ? "" : Long.toString(line[2]),
+							entry.getKey() == null ? "?" : entry.getKey().toString());
+				}
+			}
+		} catch (final IOException ex) {
+			Report.warning("Cannot write profile file '" + fileName + "'.");
+		}
+
+		try (final PrintWriter folded = new PrintWriter(
+				new BufferedWriter(new FileWriter(lang24.Compiler.file(fileName + ".folded"))))) {
+			for (final Path root : roots.values())
+				fold(folded, root, mapper.name(root.function), mapper);
+		} catch (final IOException ex) {
+			Report.warning("Cannot write profile file '" + fileName + ".folded'.");
+		}
+	}
+
+	private static long total(final long[] counts) {
+		long total = 0;
+		for (final long count : counts)
+			total += count;
+		return total;
+	}
+
+	private static void fold(final PrintWriter folded, final Path path, final String stack,
+			final LocationMapper mapper) {
+		if (path.stmts > 0)
+			folded.println(stack + " " + path.stmts);
+		for (final Path callee : path.callees.values())
+			fold(folded, callee, stack + ";" + mapper.name(callee.function), mapper);
+	}
+
+	/**
+	 * Maps the intermediate code to source locations of the innermost statements
+	 * or expressions it has been generated for.
+	 */
+	private static class LocationMapper implements AstFullVisitor<Object, Object> {
+
+		/** Source locations of the intermediate code. */
+		private final IdentityHashMap<ImcInstr, Location> locations = new IdentityHashMap<ImcInstr, Location>();
+
+		/** Source names of functions indexed by their entry labels. */
+		private final HashMap<MemLabel, String> names = new HashMap<MemLabel, String>();
+
+		String name(final Function function) {
+			final String name = names.get(function.chunk.frame.label);
+			return name == null ? function.chunk.frame.label.name : name;
+		}
+
+		/**
+		 * Returns the source location of a linearized statement. Statements that
+		 * have been rebuilt during linearization are located by their operands.
+		 */
+		Location location(final ImcInstr instr) {
+			final Location location = locations.get(instr);
+			if (location != null)
+				return location;
+			switch (instr) {
+			case ImcMOVE imcMove -> {
+				final Location dst = location(imcMove.dst);
+				return dst != null ? dst : location(imcMove.src);
+			}
+			case ImcESTMT imcEStmt -> {
+				return location(imcEStmt.expr);
+			}
+			case ImcCJUMP imcCJump -> {
+				return location(imcCJump.cond);
+			}
+			case ImcBINOP imcBinop -> {
+				final Location fst = location(imcBinop.fstExpr);
+				return fst != null ? fst : location(imcBinop.sndExpr);
+			}
+			case ImcUNOP imcUnop -> {
+				return location(imcUnop.subExpr);
+			}
+			case ImcMEM imcMem -> {
+				return location(imcMem.addr);
+			}
+			case ImcCALL imcCall -> {
+				for (final ImcExpr arg : imcCall.args) {
+					final Location argLocation = location(arg);
+					if (argLocation != null)
+						return argLocation;
+				}
+				return null;
+			}
+			default -> {
+				return null;
+			}
+			}
+		}
+
+		/** Attributes the intermediate code to a source location. */
+		private void mark(final ImcInstr instr, final Location location) {
+			if (instr == null)
+				return;
+			locations.put(instr, location);
+			switch (instr) {
+			case ImcSTMTS imcStmts -> imcStmts.stmts.forEach(stmt -> mark(stmt, location));
+			case ImcMOVE imcMove -> {
+				mark(imcMove.dst, location);
+				mark(imcMove.src, location);
+			}
+			case ImcESTMT imcEStmt -> mark(imcEStmt.expr, location);
+			case ImcCJUMP imcCJump -> mark(imcCJump.cond, location);
+			case ImcBINOP imcBinop -> {
+				mark(imcBinop.fstExpr, location);
+				mark(imcBinop.sndExpr, location);
+			}
+			case ImcUNOP imcUnop -> mark(imcUnop.subExpr, location);
+			case ImcMEM imcMem -> mark(imcMem.addr, location);
+			case ImcCALL imcCall -> imcCall.args.forEach(arg -> mark(arg, location));
+			case ImcSEXPR imcSExpr -> {
+				mark(imcSExpr.stmt, location);
+				mark(imcSExpr.expr, location);
+			}
+			default -> {
+			}
+			}
+		}
+
+		// Outer statements are marked first so that inner ones override them.
+
+		@Override
+		public Object visit(final AstFunDefn funDefn, final Object arg) {
+			final MemFrame frame = Memory.frames.get(funDefn);
+			if (frame != null)
+				names.put(frame.label, funDefn.name);
+			return AstFullVisitor.super.visit(funDefn, arg);
+		}
+
+		@Override
+		public Object visit(final AstAssignStmt assignStmt, final Object arg) {
+			mark(ImcGen.stmtImc.get(assignStmt), assignStmt.location());
+			return AstFullVisitor.super.visit(assignStmt, arg);
+		}
+
+		@Override
+		public Object visit(final AstExprStmt exprStmt, final Object arg) {
+			mark(ImcGen.stmtImc.get(exprStmt), exprStmt.location());
+			return AstFullVisitor.super.visit(exprStmt, arg);
+		}
+
+		@Override
+		public Object visit(final AstIfStmt ifStmt, final Object arg) {
+			mark(ImcGen.stmtImc.get(ifStmt), ifStmt.location());
+			mark(ImcGen.exprImc.get(ifStmt.cond), ifStmt.cond.location());
+			return AstFullVisitor.super.visit(ifStmt, arg);
+		}
+
+		@Override
+		public Object visit(final AstReturnStmt retStmt, final Object arg) {
+			mark(ImcGen.stmtImc.get(retStmt), retStmt.location());
+			return AstFullVisitor.super.visit(retStmt, arg);
+		}
+
+		@Override
+		public Object visit(final AstWhileStmt whileStmt, final Object arg) {
+			mark(ImcGen.stmtImc.get(whileStmt), whileStmt.location());
+			mark(ImcGen.exprImc.get(whileStmt.cond), whileStmt.cond.location());
+			return AstFullVisitor.super.visit(whileStmt, arg);
+		}
+
+	}
+
+}
@@ -0,0 +1,19 @@
+package lang24.phase.imclin;
+
+/**
+ * Thrown by an interpreter when the program calls {@code _exit}: the program
+ * is terminated with exit code 1 without terminating the virtual machine.
+ */
+public class ProgramExit extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The exit code of the program. */
+	public static final int EXIT_CODE = 1;
+
+	/** Constructs a new exception. */
+	public ProgramExit() {
+		super("Program exited with exit code " + EXIT_CODE + ".", null, false, false);
+	}
+
+}
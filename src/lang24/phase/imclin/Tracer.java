@@ -0,0 +1,140 @@
+package lang24.phase.imclin;
+
+import java.io.*;
+import java.util.*;
+import lang24.data.imc.code.stmt.*;
+import lang24.data.lin.*;
+
+/**
+ * An execution trace of a program run by {@link Interpreter} (see
+ * {@code --trace}).
+ *
+ * Only the last events are kept, in a ring buffer of a fixed capacity: the
+ * statements executed (a function and the offset of the statement) and the
+ * writes to temporaries and to memory. Events are stored as plain numbers, so
+ * tracing costs a few array stores per event; they are turned into text only
+ * when the trace is dumped, either on demand or when the program fails with
+ * an error.
+ */
+public class Tracer {
+
+	/** A statement executed: the function and the offset of the statement. */
+	private static final byte STMT = 0;
+
+	/** A write to a temporary: the temporary and the value. */
+	private static final byte TEMP = 1;
+
+	/** A write to memory: the address and the value. */
+	private static final byte MEM = 2;
+
+	/** The functions by their numbers. */
+	private final Vector<LinCodeChunk> chunks;
+
+	/** The statements of the functions by their numbers. */
+	private final Vector<Vector<ImcStmt>> stmts = new Vector<Vector<ImcStmt>>();
+
+	/** Kinds of events. */
+	private final byte[] kinds;
+
+	/** The first numbers of events. */
+	private final long[] keys;
+
+	/** The second numbers of events. */
+	private final long[] values;
+
+	/** The position of the next event in the ring buffer. */
+	private int next = 0;
+
+	/** The number of events recorded so far. */
+	private long count = 0;
+
+	/**
+	 * Constructs an empty trace.
+	 *
+	 * @param codeChunks The code chunks (functions are numbered in this order).
+	 * @param capacity   The number of events kept.
+	 */
+	public Tracer(final Vector<LinCodeChunk> codeChunks, final int capacity) {
+		this.chunks = codeChunks;
+		for (final LinCodeChunk chunk : codeChunks)
+			stmts.add(chunk.stmts());
+		this.kinds = new byte[Math.max(1, capacity)];
+		this.keys = new long[kinds.length];
+		this.values = new long[kinds.length];
+	}
+
+	private void record(final byte kind, final long key, final long value) {
+		kinds[next] = kind;
+		keys[next] = key;
+		values[next] = value;
+		if (++next == kinds.length)
+			next = 0;
+		count++;
+	}
+
+	/**
+	 * Records a statement executed.
+	 *
+	 * @param chunk      The number of the function.
+	 * @param stmtOffset The offset of the statement.
+	 */
+	void stmt(final int chunk, final int stmtOffset) {
+		record(STMT, chunk, stmtOffset);
+	}
+
+	/**
+	 * Records a write to a temporary.
+	 *
+	 * @param temp  The name of the temporary.
+	 * @param value The value.
+	 */
+	void temp(final long temp, final long value) {
+		record(TEMP, temp, value);
+	}
+
+	/**
+	 * Records a write to memory.
+	 *
+	 * @param address The address.
+	 * @param value   The value.
+	 */
+	void mem(final long address, final long value) {
+		record(MEM, address, value);
+	}
+
+	/**
+	 * Returns the number of events recorded so far (including those no longer
+	 * kept).
+	 *
+	 * @return The number of events.
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Prints out the events kept, the oldest first.
+	 *
+	 * @param out The stream the events are printed to.
+	 */
+	public void dump(final PrintStream out) {
+		final int size = (int) Math.min(count, kinds.length);
+		out.printf("### TRACE: last %d of %d events\n", size, count);
+		for (int e = 0; e < size; e++) {
+			final int pos = (next - size + e + kinds.length) % kinds.length;
+			final long seq = count - size + e;
+			switch (kinds[pos]) {
+			case STMT -> {
+				final int chunk = (int) keys[pos];
+				final int stmtOffset = (int) values[pos];
+				out.printf("### %d %s:%d %s\n", seq, chunks.get(chunk).frame.label.name, stmtOffset,
+						stmts.get(chunk).get(stmtOffset));
+			}
+			case TEMP -> out.printf("### %d T%d <- %d\n", seq, keys[pos], values[pos]);
+			case MEM -> out.printf("### %d [%d] <- %d\n", seq, keys[pos], values[pos]);
+			}
+		}
+		out.flush();
+	}
+
+}
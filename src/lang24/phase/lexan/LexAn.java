@@ -22,8 +22,10 @@ public class LexAn extends Phase {
 		super("lexan");
 
 		final String srcFileName = lang24.Compiler.cmdLineOptValue("--src-file-name");
+		final CharSequence source = lang24.CompilationContext.current().source();
 		try {
-			lexer = new Lang24Lexer(CharStreams.fromFileName(srcFileName));
+			lexer = new Lang24Lexer(source != null ? CharStreams.fromString(source.toString(), srcFileName)
+					: CharStreams.fromPath(lang24.Compiler.file(srcFileName).toPath()));
 			lexer.setTokenFactory(new LocLogTokenFactory());
 		} catch (IOException __) {
 			throw new Report.Error("Cannot open file '" + srcFileName + "'.");
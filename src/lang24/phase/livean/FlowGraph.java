@@ -0,0 +1,271 @@
+package lang24.phase.livean;
+
+import java.util.*;
+
+import lang24.data.asm.*;
+import lang24.data.mem.*;
+import lang24.phase.asmgen.*;
+
+/**
+ * Control flow graph of a function body split into basic blocks.
+ *
+ * A block starts at the first instruction, at every label and after every
+ * instruction that jumps to a label within the function. Jumps to labels
+ * outside of the function (calls, the epilogue, data addresses loaded by
+ * {@code LDA}) do not create edges. Every instruction except the unconditional
+ * {@code JMP} falls through to the next one.
+ *
+ * All temporaries of the function are numbered densely so that sets of
+ * temporaries can be represented as bit vectors.
+ */
+public class FlowGraph {
+
+	/** The function body. */
+	public final Code code;
+
+	/** The instructions of the function body. */
+	public final AsmInstr[] instrs;
+
+	/** The index of the first instruction of each block. */
+	public final int[] blockBeg;
+
+	/** The index following the last instruction of each block. */
+	public final int[] blockEnd;
+
+	/** Successors of each block. */
+	public final int[][] succs;
+
+	/** Predecessors of each block. */
+	public final int[][] preds;
+
+	/** Temporaries indexed by their dense number. */
+	public final MemTemp[] temps;
+
+	/** Dense numbers of temporaries. */
+	private final HashMap<MemTemp, Integer> tempIndex = new HashMap<MemTemp, Integer>();
+
+	/** The block each instruction belongs to. */
+	private final int[] blockOf;
+
+	/**
+	 * Builds the control flow graph of a function body.
+	 *
+	 * @param code The function body.
+	 */
+	public FlowGraph(Code code) {
+		this.code = code;
+		this.instrs = code.instrs.toArray(new AsmInstr[0]);
+		final int numInstrs = instrs.length;
+
+		// Number temporaries and find labels.
+		final Vector<MemTemp> tempList = new Vector<MemTemp>();
+		final HashMap<MemLabel, Integer> labelIndex = new HashMap<MemLabel, Integer>();
+		for (int i = 0; i < numInstrs; i++) {
+			final AsmInstr instr = instrs[i];
+			if (instr instanceof AsmLABEL label)
+				labelIndex.put(label.label(), i);
+			for (final MemTemp temp : instr.uses())
+				if (tempIndex.putIfAbsent(temp, tempList.size()) == null)
+					tempList.add(temp);
+			for (final MemTemp temp : instr.defs())
+				if (tempIndex.putIfAbsent(temp, tempList.size()) == null)
+					tempList.add(temp);
+		}
+		this.temps = tempList.toArray(new MemTemp[0]);
+
+		// Find leaders.
+		final boolean[] leader = new boolean[numInstrs + 1];
+		final int[][] targets = new int[numInstrs][];
+		if (numInstrs > 0)
+			leader[0] = true;
+		for (int i = 0; i < numInstrs; i++) {
+			final AsmInstr instr = instrs[i];
+			if (instr instanceof AsmLABEL)
+				leader[i] = true;
+			final Vector<MemLabel> jumps = instr.jumps();
+			int numTargets = 0;
+			final int[] instrTargets = new int[jumps.size()];
+			for (final MemLabel label : jumps) {
+				final Integer target = labelIndex.get(label);
+				if (target != null)
+					instrTargets[numTargets++] = target;
+			}
+			targets[i] = Arrays.copyOf(instrTargets, numTargets);
+			if (numTargets > 0 || isUncondJump(instr))
+				leader[i + 1] = true;
+		}
+
+		// Split into blocks.
+		int numBlocks = 0;
+		for (int i = 0; i < numInstrs; i++)
+			if (leader[i])
+				numBlocks++;
+		this.blockBeg = new int[numBlocks];
+		this.blockEnd = new int[numBlocks];
+		this.blockOf = new int[numInstrs];
+		int block = -1;
+		for (int i = 0; i < numInstrs; i++) {
+			if (leader[i]) {
+				block++;
+				blockBeg[block] = i;
+			}
+			blockEnd[block] = i + 1;
+			blockOf[i] = block;
+		}
+
+		// Connect blocks.
+		this.succs = new int[numBlocks][];
+		final int[] numPreds = new int[numBlocks];
+		for (int b = 0; b < numBlocks; b++) {
+			final int last = blockEnd[b] - 1;
+			final boolean fallsThrough = !isUncondJump(instrs[last]) && b + 1 < numBlocks;
+			final int[] blockSuccs = new int[targets[last].length + 1];
+			int numSuccs = 0;
+			if (fallsThrough)
+				blockSuccs[numSuccs++] = b + 1;
+			for (final int target : targets[last]) {
+				final int succ = blockOf[target];
+				boolean present = false;
+				for (int s = 0; s < numSuccs; s++)
+					present |= blockSuccs[s] == succ;
+				if (!present)
+					blockSuccs[numSuccs++] = succ;
+			}
+			succs[b] = Arrays.copyOf(blockSuccs, numSuccs);
+			for (final int succ : succs[b])
+				numPreds[succ]++;
+		}
+		this.preds = new int[numBlocks][];
+		for (int b = 0; b < numBlocks; b++)
+			preds[b] = new int[numPreds[b]];
+		Arrays.fill(numPreds, 0);
+		for (int b = 0; b < numBlocks; b++)
+			for (final int succ : succs[b])
+				preds[succ][numPreds[succ]++] = b;
+	}
+
+	/**
+	 * Returns the number of basic blocks.
+	 *
+	 * @return The number of basic blocks.
+	 */
+	public int numBlocks() {
+		return blockBeg.length;
+	}
+
+	/**
+	 * Returns the number of temporaries used or defined in the function body.
+	 *
+	 * @return The number of temporaries.
+	 */
+	public int numTemps() {
+		return temps.length;
+	}
+
+	/**
+	 * Returns the dense number of a temporary.
+	 *
+	 * @param temp The temporary.
+	 * @return The dense number of the temporary or {@code -1} if it does not
+	 *         appear in the function body.
+	 */
+	public int tempIndex(MemTemp temp) {
+		final Integer index = tempIndex.get(temp);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the block the specified instruction belongs to.
+	 *
+	 * @param instrIndex The index of the instruction.
+	 * @return The index of the block.
+	 */
+	public int blockOf(int instrIndex) {
+		return blockOf[instrIndex];
+	}
+
+	/**
+	 * Returns the loop nesting depth of each block.
+	 *
+	 * An edge to a block that is still on the stack of a depth-first search from
+	 * the first block is a back edge. All back edges to the same header form a
+	 * single loop consisting of the header and of all blocks that reach the
+	 * sources of the back edges without passing through the header. The depth of
+	 * a block is the number of loops it belongs to.
+	 *
+	 * @return The loop nesting depth of each block ({@code 0} outside of loops).
+	 */
+	public int[] loopDepths() {
+		final int numBlocks = numBlocks();
+		final int[] depths = new int[numBlocks];
+		if (numBlocks == 0)
+			return depths;
+
+		// Find back edges.
+		final Vector<int[]> backEdges = new Vector<int[]>();
+		final byte[] state = new byte[numBlocks]; // 0 = new, 1 = on stack, 2 = done
+		final int[] stack = new int[numBlocks];
+		final int[] nextSucc = new int[numBlocks];
+		int top = 0;
+		stack[top++] = 0;
+		state[0] = 1;
+		while (top > 0) {
+			final int b = stack[top - 1];
+			if (nextSucc[b] == succs[b].length) {
+				state[b] = 2;
+				top--;
+				continue;
+			}
+			final int succ = succs[b][nextSucc[b]++];
+			if (state[succ] == 1)
+				backEdges.add(new int[] { b, succ });
+			else if (state[succ] == 0) {
+				state[succ] = 1;
+				stack[top++] = succ;
+			}
+		}
+
+		// Collect the blocks of each loop.
+		final boolean[] header = new boolean[numBlocks];
+		for (final int[] backEdge : backEdges)
+			header[backEdge[1]] = true;
+		final boolean[] inLoop = new boolean[numBlocks];
+		for (int h = 0; h < numBlocks; h++) {
+			if (!header[h])
+				continue;
+			Arrays.fill(inLoop, false);
+			inLoop[h] = true;
+			top = 0;
+			for (final int[] backEdge : backEdges) {
+				if (backEdge[1] == h && !inLoop[backEdge[0]]) {
+					inLoop[backEdge[0]] = true;
+					stack[top++] = backEdge[0];
+				}
+			}
+			while (top > 0) {
+				final int b = stack[--top];
+				for (final int pred : preds[b]) {
+					if (!inLoop[pred]) {
+						inLoop[pred] = true;
+						stack[top++] = pred;
+					}
+				}
+			}
+			for (int b = 0; b < numBlocks; b++)
+				if (inLoop[b])
+					depths[b]++;
+		}
+		return depths;
+	}
+
+	/**
+	 * Checks whether an instruction never falls through to the next one.
+	 *
+	 * @param instr The instruction.
+	 * @return {@code true} if the instruction is an unconditional jump.
+	 */
+	public static boolean isUncondJump(AsmInstr instr) {
+		return instr instanceof AsmOPER oper && oper.instr().startsWith(Instructions.JMP + " ");
+	}
+
+}
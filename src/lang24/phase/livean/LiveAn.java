@@ -6,7 +6,6 @@ import lang24.data.asm.*;
 import lang24.phase.*;
 import lang24.phase.asmgen.*;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Vector;
 
@@ -15,68 +14,158 @@ import java.util.Vector;
  */
 public class LiveAn extends Phase {
 
-	private boolean changeDetector = false;
-
 	public LiveAn() {
 		super("livean");
 	}
 
 	public void analysis() {
-		for(Code code : AsmGen.codes) {
+		Jobs.forEachFunction(Jobs.Stage.LIVEAN, AsmGen.codes.get(), code -> {
 			Report.info("Instr size " + code.frame.label.name + "=" + code.instrs.size());
-			processInstructions(code.instrs);
-		}
+			FunctionEvent event = new FunctionEvent();
+			event.begin();
+			FlowGraph graph = analysis(code);
+			Stats.size("blocks", graph.numBlocks());
+			Stats.size("temps", graph.numTemps());
+			if (event.shouldCommit()) {
+				event.phase = "livean";
+				event.function = code.frame.label.name;
+				event.instrs = code.instrs.size();
+				event.temps = graph.numTemps();
+				event.commit();
+			}
+			return graph;
+		});
 	}
 
-	private void processInstructions(Vector<AsmInstr> instructions) {
-		changeDetector = true;
-		int iterationNumber = 1;
-
-		while(changeDetector) {
+	/**
+	 * Computes the liveness of temporaries in a single function body.
+	 *
+	 * The sets are first computed per basic block by a backward worklist solver
+	 * over bit vectors indexed by dense temporary numbers and then distributed to
+	 * individual instructions, where they are available through
+	 * {@link AsmInstr#in()} and {@link AsmInstr#out()}.
+	 *
+	 * @param code The function body.
+	 * @return The control flow graph the liveness has been computed on.
+	 */
+	public static FlowGraph analysis(Code code) {
+		final FlowGraph graph = new FlowGraph(code);
+		final int numBlocks = graph.numBlocks();
+		final int words = (graph.numTemps() + 63) >>> 6;
+
+		// Per-instruction uses and definitions as dense numbers.
+		final int[][] uses = new int[graph.instrs.length][];
+		final int[][] defs = new int[graph.instrs.length][];
+		for (int i = 0; i < graph.instrs.length; i++) {
+			uses[i] = tempIndices(graph, graph.instrs[i].uses());
+			defs[i] = tempIndices(graph, graph.instrs[i].defs());
+		}
 
-			changeDetector = false;
-			AsmInstr prevInstr = null;
+		// Per-block gen (upward exposed uses) and kill (definitions).
+		final long[][] gen = new long[numBlocks][words];
+		final long[][] kill = new long[numBlocks][words];
+		for (int b = 0; b < numBlocks; b++) {
+			for (int i = graph.blockEnd[b] - 1; i >= graph.blockBeg[b]; i--) {
+				for (final int d : defs[i]) {
+					clear(gen[b], d);
+					set(kill[b], d);
+				}
+				for (final int u : uses[i])
+					set(gen[b], u);
+			}
+		}
 
-			for (AsmInstr instr : instructions) {
+		// Backward worklist solver.
+		final long[][] liveIn = new long[numBlocks][words];
+		final long[][] liveOut = new long[numBlocks][words];
+		final int[] worklist = new int[numBlocks];
+		final boolean[] onWorklist = new boolean[numBlocks];
+		int top = 0;
+		for (int b = 0; b < numBlocks; b++) {
+			worklist[top++] = b;
+			onWorklist[b] = true;
+		}
+		while (top > 0) {
+			final int b = worklist[--top];
+			onWorklist[b] = false;
+
+			final long[] out = liveOut[b];
+			for (final int s : graph.succs[b]) {
+				final long[] succIn = liveIn[s];
+				for (int w = 0; w < words; w++)
+					out[w] |= succIn[w];
+			}
 
-				if (iterationNumber == 1 && !instr.in().containsAll(instr.uses()))  // first step fill in() with uses(), runs only once
-					addInTemps(instr, new HashSet<>(new ArrayList<>(instr.uses())));  // in_i = uses+i
+			final long[] in = liveIn[b];
+			boolean changed = false;
+			for (int w = 0; w < words; w++) {
+				final long word = gen[b][w] | (out[w] & ~kill[b][w]);
+				if (word != in[w]) {
+					in[w] = word;
+					changed = true;
+				}
+			}
+			if (changed) {
+				for (final int p : graph.preds[b]) {
+					if (!onWorklist[p]) {
+						worklist[top++] = p;
+						onWorklist[p] = true;
+					}
+				}
+			}
+		}
 
-				if (prevInstr != null && !prevInstr.out().containsAll(instr.in()))  // out_{i-1} = in_i
-					addOutTemps(prevInstr, instr.in());
+		// Distribute the results to instructions.
+		final long[] live = new long[words];
+		for (int b = 0; b < numBlocks; b++) {
+			System.arraycopy(liveOut[b], 0, live, 0, words);
+			for (int i = graph.blockEnd[b] - 1; i >= graph.blockBeg[b]; i--) {
+				final AsmOPER instr = (AsmOPER) graph.instrs[i];
+				instr.removeAllFromOut();
+				instr.addOutTemp(toTemps(graph, live));
+				for (final int d : defs[i])
+					clear(live, d);
+				for (final int u : uses[i])
+					set(live, u);
+				instr.removeAllFromIn();
+				instr.addInTemps(toTemps(graph, live));
+			}
+		}
 
-				HashSet<MemTemp> subSet = generateSubsetOfOutAndDef(instr);  // in_i = out_i / def_i
+		return graph;
+	}
 
-				if (!instr.in().containsAll(subSet))
-					addInTemps(instr, subSet);
+	private static int[] tempIndices(FlowGraph graph, Vector<MemTemp> temps) {
+		final int[] indices = new int[temps.size()];
+		for (int t = 0; t < indices.length; t++)
+			indices[t] = graph.tempIndex(temps.get(t));
+		return indices;
+	}
 
-				prevInstr = instr;
+	private static HashSet<MemTemp> toTemps(FlowGraph graph, long[] bits) {
+		final HashSet<MemTemp> temps = new HashSet<MemTemp>();
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				temps.add(graph.temps[(w << 6) + Long.numberOfTrailingZeros(word)]);
+				word &= word - 1;
 			}
-
-			iterationNumber++;
 		}
+		return temps;
 	}
 
-	private HashSet<MemTemp> generateSubsetOfOutAndDef(AsmInstr instr) {
-		HashSet<MemTemp> out = (HashSet<MemTemp>) instr.out().clone();
-		instr.defs().forEach(out::remove);
-		return out;
-	}
-
-	private void addInTemps(AsmInstr destination, HashSet<MemTemp> collection) {
-		destination.addInTemps(collection);
-		changeDetector = true;
+	private static void set(long[] bits, int index) {
+		bits[index >>> 6] |= 1L << index;
 	}
 
-	private void addOutTemps(AsmInstr destination, HashSet<MemTemp> collection) {
-		destination.addOutTemp(collection);
-		changeDetector = true;
+	private static void clear(long[] bits, int index) {
+		bits[index >>> 6] &= ~(1L << index);
 	}
 
 	public void log() {
 		if (logger == null)
 			return;
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes.get()) {
 			logger.begElement("code");
 			logger.addAttribute("prologue", code.entryLabel.name);
 			logger.addAttribute("body", code.entryLabel.name);
@@ -18,7 +18,9 @@ import lang24.phase.imclin.ImcLin;
 import lang24.phase.seman.SemAn;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -31,9 +33,11 @@ public class MemEvaluator implements AstFullVisitor<MemEvaluator.MemResult, MemA
     // We need to look at the functions in 2 precedences:
     // 1. Get all the information except for statements:
     // 2. Run statements
-    private static final MemTemp VOID_RETURN_VALUE = new MemTemp();
     private final List<AstFunDefn> calledFunctionsInFunction = new ArrayList<>();
 
+    // Type definitions currently being laid out
+    private final Set<AstDefn> typesInLayout = new HashSet<>();
+
     @Override
     public MemResult visit(AstNodes<? extends AstNode> nodes, MemArgument arg) {
         List<AstFunDefn> functions = new ArrayList<>();
@@ -295,7 +299,9 @@ public class MemEvaluator implements AstFullVisitor<MemEvaluator.MemResult, MemA
 
     @Override
     public MemResult visit(AstPtrType ptrType, MemArgument arg) {
-        ptrType.baseType.accept(this, arg);
+        // recursive types (e.g. lists) point back to a type that is already being laid out
+        if(!(ptrType.baseType instanceof AstNameType) || !typesInLayout.contains(SemAn.definedAt.get(ptrType.baseType)))
+            ptrType.baseType.accept(this, arg);
         return new MemResult(8);
     }
 
@@ -457,6 +463,11 @@ public class MemEvaluator implements AstFullVisitor<MemEvaluator.MemResult, MemA
 
     @Override
     public MemResult visit(AstTypDefn typDefn, MemArgument arg) {
-        return typDefn.type.accept(this, arg);
+        typesInLayout.add(typDefn);
+        try {
+            return typDefn.type.accept(this, arg);
+        } finally {
+            typesInLayout.remove(typDefn);
+        }
     }
 }
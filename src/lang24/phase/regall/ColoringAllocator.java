@@ -0,0 +1,763 @@
+package lang24.phase.regall;
+
+import lang24.common.report.Report;
+import lang24.data.asm.AsmInstr;
+import lang24.data.asm.AsmMOVE;
+import lang24.data.asm.AsmOPER;
+import lang24.data.asm.Code;
+import lang24.data.mem.MemTemp;
+import lang24.phase.asmgen.CodeGenerator;
+import lang24.phase.asmgen.InstrArgument;
+import lang24.phase.asmgen.Instructions;
+import lang24.phase.livean.FlowGraph;
+import lang24.phase.livean.LiveAn;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static lang24.phase.asmgen.CodeGenerator.generateAsmOper;
+
+/**
+ * Register allocation of a single function by iterated register coalescing.
+ */
+public class ColoringAllocator implements RegisterAllocator {
+
+	private final int K = RegAll.K.get();
+
+	/** The function body. */
+	private final Code code;
+
+	public ColoringAllocator(Code code) {
+		this.code = code;
+		this.spillCode = new SpillCode(code);
+	}
+
+	/**
+	 * Fills initial collection of non-precolored and not processed temps
+	 */
+	private void generateInitial() {
+		for(var instr : code.instrs) {
+			initial.addAll(instr.defs());
+			initial.addAll(instr.uses());
+		}
+
+		Report.info("Generating initials has ended: " + initial.size());
+	}
+
+	/** Mapping of temporary variables to registers. */
+	public final HashMap<MemTemp, Integer> tempToReg = new HashMap<MemTemp, Integer>();
+
+	private final List<MemTemp> preColored = new ArrayList<>();  // machine registers
+	private final HashSet<MemTemp> initial = new HashSet<>();  // temp registers, not pre colored nor processed
+	private final List<MemTemp> simplifyWorklist = new ArrayList<>(); // list of low-degree non MR nodes
+	private final List<MemTemp> freezeWorklist = new ArrayList<>();  // low-degree MR nodes
+	private final List<MemTemp> spilledNodes = new ArrayList<>();  // high-degree nodes
+	private final List<MemTemp> spillWorklist = new ArrayList<>();  // nodes marked to spill during this round
+	private final List<MemTemp> coalescedNodes = new ArrayList<>();  // registers that have been coalesced
+	private final List<MemTemp> coloredNodes = new ArrayList<>();  // nodes successfully colored
+	private final Stack<MemTemp> selectStack = new Stack<>();  // removed temp vars from the stack
+
+
+	/*Moves*/
+	private final Set<AsmMOVE> coalescedMoves = new LinkedHashSet<AsmMOVE>();  // moves that have been coalesced
+	private final Set<AsmMOVE> constrainedMoves = new LinkedHashSet<AsmMOVE>();  // moves whose src and dst interfere
+	private final Set<AsmMOVE> frozenMoves = new LinkedHashSet<AsmMOVE>();  // moves that will no longer be considered for coalescing
+	private final Set<AsmMOVE> worklistMoves = new LinkedHashSet<AsmMOVE>();  // moves enable for positive coalescing
+	private final Set<AsmMOVE> activeMoves = new LinkedHashSet<AsmMOVE>();  // moves not yet ready for coalescing
+
+	/*Other*/
+	private InterferenceGraph adjGraph = new InterferenceGraph();  // set of edges (u, v), adjacency list and degree of each node
+	private final HashMap<MemTemp, HashSet<AsmMOVE>> moveList = new HashMap<>();  // mapping from a node to the list of moves it is associated with
+	private final HashMap<MemTemp, MemTemp> alias = new HashMap<>();  // when a move (u, v) has been coalesced, and v put in coalescedNodes, then alias(v) = u.
+
+	/*Spill costs*/
+	private FlowGraph flowGraph;  // flow graph of the current round
+	private IdentityHashMap<AsmInstr, Integer> loopDepth = new IdentityHashMap<>();  // loop nesting depth of each instruction
+	private final HashMap<MemTemp, Double> useDefWeight = new HashMap<>();  // uses + defs of each node, each weighted by 10^loopDepth
+	private final SpillCode spillCode;  // spill loads and stores inserted so far
+
+	/* Functions for access to AdjSet */
+	private void addToAdjSet(MemTemp u, MemTemp v) {
+		adjGraph.add(u, v);
+	}
+
+	private void removeFromAdjSet(MemTemp u, MemTemp v) {
+		adjGraph.remove(u, v);
+	}
+
+	private boolean containsInAdjSet(MemTemp u, MemTemp v) {
+		return adjGraph.contains(u, v);
+	}
+
+	private int i = 0;
+
+	/** Number of rounds that ended with spilling. */
+	@Override
+	public int spillRounds() {
+		return i;
+	}
+
+	/** Number of moves coalesced in the last round. */
+	public int numCoalescedMoves() {
+		return coalescedMoves.size();
+	}
+
+	/** Interference graph of the last round. */
+	public InterferenceGraph interferenceGraph() {
+		return adjGraph;
+	}
+
+	/** Mapping of temporary variables to registers. */
+	@Override
+	public HashMap<MemTemp, Integer> tempToReg() {
+		return tempToReg;
+	}
+
+	/** Number of nodes of the interference graph of the last round. */
+	@Override
+	public int numTemps() {
+		return adjGraph.numNodes();
+	}
+
+	/** Number of spill loads inserted. */
+	@Override
+	public int spillLoads() {
+		return spillCode.loads();
+	}
+
+	/** Number of spill stores inserted. */
+	@Override
+	public int spillStores() {
+		return spillCode.stores();
+	}
+
+	/** Number of spill slots allocated. */
+	@Override
+	public int spillSlots() {
+		return spillCode.slots();
+	}
+
+	/** Number of spill slots left once they are shared. */
+	@Override
+	public int sharedSpillSlots() {
+		return spillCode.sharedSlots();
+	}
+
+	/** Number of spilled definitions repeated at uses instead of loads. */
+	@Override
+	public int remats() {
+		return spillCode.remats();
+	}
+
+	/** Estimated number of spill loads and stores executed per function call (each weighted by 10^loopDepth). */
+	@Override
+	public long spillWeight() {
+		return Math.round(spillCode.weight());
+	}
+
+	/** Rounds after which the allocation is given up on (each spill round spills at least one node). */
+	private static final int MAX_SPILL_ROUNDS = 64;
+
+	// RegAll functions
+	@Override
+	public void allocate() {
+		if(i > MAX_SPILL_ROUNDS)
+			throw new Report.Error("Register allocation of " + code.frame.label.name + " does not converge with " + K + " registers.");
+
+		resetRound();
+		flowGraph = LiveAn.analysis(code);  // refill code chunks
+		loopDepth = SpillCode.loopDepths(flowGraph);
+		generateInitial();  // init lists with temps
+		computeUseDefWeights();
+		build();  // build interference graph
+		makeWorklist();  // fill list to simplify and spill
+
+		do {
+			if(!simplifyWorklist.isEmpty()) simplify();
+			if(!worklistMoves.isEmpty()) coalesce();
+			if(!freezeWorklist.isEmpty()) freeze();
+			if(simplifyWorklist.isEmpty() && worklistMoves.isEmpty() && freezeWorklist.isEmpty() &&
+					!spillWorklist.isEmpty()) selectSpill();
+			Report.info("SS=" + simplifyWorklist.size() + " MOVE=" +worklistMoves.size() + " FR=" + freezeWorklist.size() + " SP=" + spillWorklist.size());
+		} while(!simplifyWorklist.isEmpty() || !worklistMoves.isEmpty() ||
+				!freezeWorklist.isEmpty() || !spillWorklist.isEmpty());
+
+		assignColors();  // select stage, map colors with temps; nodes that get no color are the actual spills
+		if(!spillWorklist.isEmpty()) {  // if we have nodes we want to spill
+			rewriteProgram();  // spill of actual spills
+			Report.info("Iteration end");
+			i++;
+			allocate();  // repeat
+			return;
+		}
+
+		Report.info("RegAll end");
+		spillCode.shareSlots();  // spilled temps that are never live together share slots
+		removeMoves();
+	}
+
+	/**
+	 * Every round starts from scratch on the rewritten program; only the spilled nodes are remembered.
+	 */
+	private void resetRound() {
+		adjGraph = new InterferenceGraph();
+		moveList.clear();
+		alias.clear();
+		simplifyWorklist.clear();
+		freezeWorklist.clear();
+		spillWorklist.clear();
+		coalescedNodes.clear();
+		coloredNodes.clear();
+		selectStack.clear();
+		coalescedMoves.clear();
+		constrainedMoves.clear();
+		frozenMoves.clear();
+		worklistMoves.clear();
+		activeMoves.clear();
+		tempToReg.clear();
+	}
+
+	/**
+	 * Build interference graph
+	 */
+	private void build() {
+		Code block = code;
+
+		HashSet<MemTemp> live = getLiveOut(block);  // get temps which survived in block
+
+
+//			Report.info("Instr/block=" + block.instrs.size() + ", livedOut=" + live.stream().map(MemTemp::toString).collect(Collectors.joining(", ")));
+
+		for(AsmInstr instr : block.instrs.reversed()) {
+			// move-related
+			if(instr instanceof AsmMOVE move) {
+				move.uses().forEach(live::remove);
+				for (var n : union(move.defs(), move.uses())) {
+					HashSet<AsmMOVE> list = moveList.get(n);
+					if(list == null) list = new LinkedHashSet<>();
+					list.add(move);
+					moveList.put(n, list);
+				}
+				worklistMoves.add(move);
+			}
+
+			// make edges between defs of the instruction instr
+			// and livedOut instructions: other definitions and livedOut instructions
+			// and previous uses
+
+			live.addAll(instr.defs());
+			for (var d : instr.defs()) {
+				for(var l : live) {
+					addEdge(l, d);  // so live and d are edges
+				}
+			}
+
+			instr.defs().forEach(live::remove);
+			live.addAll(instr.uses());
+		}
+
+		assignEmptyNodes();
+		Report.info("Build. adj=" + adjGraph.numNodes() + " K=" + K + " MOVE=" + worklistMoves.size());
+//		printGraph(adjList.keySet());
+	}
+
+
+	// Generate pre-defined nodes we work with
+	private void makeWorklist() {
+
+//		Report.
+
+		for(var n : initial) {
+			if(adjGraph.degree(n) >= K) {
+				spillWorklist.add(n);
+			}
+			else if (isMoveRelated(n)) {
+				freezeWorklist.add(n);
+			}
+			else {
+				simplifyWorklist.add(n);
+			}
+		}
+
+//		Report.info("Spills: ");
+//		printGraph(spillWorklist);
+
+		Report.info("Spill Worklist: " + spillWorklist.stream().map(MemTemp::toString).collect(Collectors.joining(",")));
+//
+//		Report.info("Simplify Worklist: " + simplifyWorklist.stream().map(MemTemp::toString).collect(Collectors.joining(",")));
+//
+//		Report.info("Freeze Worklist: " + freezeWorklist.stream().map(MemTemp::toString).collect(Collectors.joining(",")));
+
+		initial.clear();
+		Report.info("Worklist. SP=" + spillWorklist.size() + " SS=" + simplifyWorklist.size() + " FR=" + freezeWorklist.size());
+	}
+
+
+
+
+	// fills selectStack
+	private void simplify() {
+		List<MemTemp> simplifyWorklistCopy = new ArrayList<>();
+
+        // simplifyWorklist can be filled after decrement degree
+        while (!simplifyWorklist.isEmpty()) {
+            simplifyWorklistCopy.addAll(simplifyWorklist);
+            simplifyWorklist.clear();
+
+            for (var n : simplifyWorklistCopy) {
+                if (!selectStack.contains(n))
+                    selectStack.push(n);   // stack in which we add from graph, color it and build the graph again
+
+				// remove the element by decrementing a degree of all the members
+                for (var m : adjacent(n))
+                    decrementDegree(m);
+            }
+
+            simplifyWorklistCopy.clear();
+        }
+
+		Report.info("Simplify. SS=" + selectStack.size() + " SP=" + spillWorklist.size() + " FR=" + freezeWorklist.size());
+	}
+
+	private void coalesce() {
+		for(var m : worklistMoves) {
+
+			// m = copy(x, y) we assume that x - use and y - destination
+			MemTemp y = getAlias(m.defs().getFirst());
+			MemTemp x = getAlias(m.uses().getFirst());
+			MemTemp u = null;
+			MemTemp v = null;
+
+			if(preColored.contains(y)) {
+				u = y;
+				v = x;
+			}
+			else {
+				u = x;
+				v = y;
+			}
+
+			List<MemTemp> vAdjacent = adjacent(v);
+			boolean okForAll = true;
+			for(var t : vAdjacent) {
+				if(!ok(t, u)) {
+					okForAll = false;
+				}
+			}
+
+			if(u.equals(v)) {
+//				Report.info("Coalesce. u=v");
+				coalescedMoves.add(m);
+				addWorklist(u);
+			}
+			else if(preColored.contains(v) || containsInAdjSet(u, v)) {
+//				Report.info("Coalesce. in adj set");
+				constrainedMoves.add(m);
+				addWorklist(u);
+				addWorklist(v);
+			}
+			else if ((preColored.contains(u) && okForAll) || (!preColored.contains(u) && conservative(union(adjacent(u), vAdjacent)))) {
+//				Report.info("Coalesce. other stuff");
+				coalescedMoves.add(m);
+				combine(u, v);
+				addWorklist(u);
+			}
+			else {
+//				Report.info("Coalesce. else");
+				activeMoves.add(m);
+			}
+		}
+
+		worklistMoves.clear();
+		Report.info("Coalesce. CoalM="+coalescedMoves.size() + " ConstrM=" + constrainedMoves.size() + " SS=" + simplifyWorklist.size() + " FR="+ freezeWorklist.size());
+	}
+
+	private void freeze() {
+
+		List<MemTemp> freezeWorklistCopy = new ArrayList<>();
+		while(!freezeWorklist.isEmpty()) {
+			freezeWorklistCopy.addAll(freezeWorklist);
+
+			for(var u : freezeWorklistCopy) {
+				simplifyWorklist.add(u);
+				freezeWorklist.remove(u);
+				freezeMoves(u);
+			}
+
+			freezeWorklistCopy.clear();
+		}
+
+
+
+
+//		freezeWorklist.clear();
+		Report.info("Freeze: SS=" + simplifyWorklist.size() + " FM=" + frozenMoves.size() + " FR" + freezeWorklist.size());
+	}
+
+
+	/**
+	 * Chooses the potential spill that is the cheapest to spill and lets it be
+	 * simplified optimistically: it is only actually spilled if assignColors
+	 * finds no color for it.
+	 */
+	private void selectSpill() {
+		MemTemp m = null;
+		double mCost = 0;
+		for(var n : spillWorklist) {
+			double cost = spillCost(n);
+			if(m == null || cost < mCost || (cost == mCost && n.temp < m.temp)) {
+				m = n;
+				mCost = cost;
+			}
+		}
+
+		Report.info("SelectSpill. " + m + " cost=" + mCost);
+		spillWorklist.remove(m);
+		simplifyWorklist.add(m);
+		freezeMoves(m);
+	}
+
+	/**
+	 * Spill cost of a node: its uses and defs, each weighted by 10^loopDepth, divided by its degree.
+	 * Temps introduced by spilling only live between a load or a store and their instruction,
+	 * so spilling them again would not help.
+	 */
+	private double spillCost(MemTemp n) {
+		if(spillCode.isSpillTemp(n))
+			return Double.POSITIVE_INFINITY;
+		return useDefWeight.getOrDefault(n, 0.0) / Math.max(1, adjGraph.degree(n));
+	}
+
+	private void computeUseDefWeights() {
+		useDefWeight.clear();
+		for(var instr : code.instrs) {
+			double weight = SpillCode.loopWeight(loopDepth.getOrDefault(instr, 0));
+			for(var n : instr.uses()) useDefWeight.merge(n, weight, Double::sum);
+			for(var n : instr.defs()) useDefWeight.merge(n, weight, Double::sum);
+		}
+	}
+
+	/**
+	 * select stage, map colors with temps
+	 */
+	private void assignColors() {
+		Report.info("Coloring. Stack=" + selectStack.size() + " CoalN=" + coloredNodes.size() + " SP_before=" + spillWorklist.size());
+		while(!selectStack.isEmpty()) {
+			MemTemp n = selectStack.pop();
+			List<Integer> okColors = getRange(0, K-1);  // list of all possible colors
+
+			// Compute coalescing part. If alias (merged with node) is in colored or precolored
+			// -> remove its color from okColors
+			for(MemTemp w : adjGraph.adjacent(n)) {
+				MemTemp alias = getAlias(w);
+				if (union(coloredNodes, preColored).contains(alias)) {
+					okColors.remove(tempToReg.get(alias));
+				}
+			}
+
+			// if okColors is empty ->
+			if(okColors.isEmpty()) {
+				Report.info("Coloring. Spill=" + n);
+				spillWorklist.add(n);
+			}
+			else {
+				coloredNodes.add(n);
+
+				// todo: fix that
+				tempToReg.put(n, okColors.getFirst());
+			}
+		}
+
+		// coalesced nodes must have the same color
+		for(var n : coalescedNodes) {
+			tempToReg.put(n, tempToReg.get(getAlias(n)));
+		}
+
+		Report.info("Coloring: Colored=" + coloredNodes.size() + " SP=" + spillWorklist.size() + " SpillN=" + spillWorklist.size());
+	}
+
+
+	/**
+	 * If AssignColors spills, then RewriteProgram allocates memory locations
+	 * for the spilled temporaries and inserts store and fetch instructions to
+	 * access them (see {@link SpillCode}).
+	 */
+	private void rewriteProgram(){
+		// spillWorklist holds the nodes assignColors found no color for.
+		List<MemTemp> newSpills = new ArrayList<>();
+		for(MemTemp spillTemp : spillWorklist){
+			if(spilledNodes.contains(spillTemp)) {
+				Report.info("In spilled: " + spillTemp);
+				continue;
+			}
+
+			spilledNodes.add(spillTemp);
+			newSpills.add(spillTemp);
+		}
+		spillCode.spill(newSpills, flowGraph, loopDepth);  // all of them in one pass
+
+		spillWorklist.clear();  // clear the list
+		initial.clear();  // clear initial list
+		coloredNodes.clear();  // necessary from the book
+		coalescedNodes.clear();  // necessary from the book
+		Report.info("Rewrite program. SpilledN=" + spilledNodes.size());
+	}
+
+//	private List<AsmOPER> generateInstructionForNumber(MemTemp temp, Long value) {
+//
+//		List<AsmOPER> result = new ArrayList<>();
+//
+//		List<String> opers = new ArrayList<>(List.of(Instructions.SETH, Instructions.SETMH, Instructions.SETML, Instructions.SETL));
+//		String hex = Long.toHexString(value);
+//
+//		if(hex.length() < 16)
+//			hex = "0".repeat(16 - hex.length()) + hex;
+//
+//		for(int i = 0; i < 4; i++) {
+//			String subString = hex.substring(i * 4, (i + 1) * 4);
+//
+//			AsmOPER oper = generateAsmOper(opers.get(i),
+//					new InstrArgument(temp, InstrArgument.Type.Defn),
+//					new InstrArgument("#" + subString));
+//
+//			result.add(oper);
+//		}
+//
+//		return result;
+//	}
+
+	private void removeMoves() {
+		code.instrs.removeIf(i -> i instanceof AsmMOVE);
+	}
+
+	private void freezeMoves(MemTemp u) {
+		for (var m : nodeMoves(u)) {
+			// m = copy(x, y)
+			MemTemp y = m.defs().getFirst();
+			MemTemp x = m.uses().getFirst();
+
+
+			MemTemp yAlias = getAlias(y);
+			MemTemp uAlias = getAlias(u);
+			MemTemp v = null;
+
+			if(yAlias.equals(uAlias)) {
+				v = getAlias(x);
+			} else {
+				v = yAlias;
+			}
+
+			activeMoves.remove(m);
+			frozenMoves.add(m);
+			if(freezeWorklist.contains(v) && nodeMoves(v).isEmpty()) {
+				freezeWorklist.remove(v);
+				simplifyWorklist.add(v);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Function adds the rest of nodes to the graph (with 0 degree and empty adjList)
+	 */
+	private void assignEmptyNodes() {
+		for(var node : initial) {
+			adjGraph.addNode(node);
+		}
+	}
+
+	private void printGraph(Collection<MemTemp> keys) {
+//		Report.info("Interference graph:");
+		for(MemTemp key : keys) {
+			List<MemTemp> list = adjGraph.adjacent(key);
+
+			String str = list.stream().map(MemTemp::toString).collect(Collectors.joining(", "));
+//			Report.info(key + "(" + (adjGraph.degree(key)) + ") : " + str);
+		}
+	}
+
+	/**
+	 * @param code - block of code
+	 * @return elements that remain after program execution
+	 */
+	private HashSet<MemTemp> getLiveOut(Code code) {
+
+		// get return instruction
+		for(AsmInstr instr : code.instrs.reversed()) {
+			if(instr instanceof AsmMOVE oper && oper.instr().contains(Instructions.ADD) && !oper.defs().isEmpty()) {
+//				Report.info("Found liveout " + instr);
+				return new HashSet<>(oper.defs());
+			}
+		}
+
+		// otherwise - an empty list
+		return new HashSet<>();
+	}
+
+	/**
+	 * Add edge of interference graph
+	 * @param u, v are neighbors
+	 */
+	private void addEdge(MemTemp u, MemTemp v) {
+		if(u != v) {
+			adjGraph.add(u, v);  // a new edge increments degrees of both nodes
+		}
+	}
+
+
+
+	// get all the moves: active + worklist
+	private List<AsmMOVE> nodeMoves(MemTemp n) {
+		return intersection(moveList.get(n), union(activeMoves, worklistMoves));
+	}
+
+	private boolean isMoveRelated(MemTemp node) {
+		return !nodeMoves(node).isEmpty();
+	}
+
+	private boolean ok(MemTemp t, MemTemp r) {
+		return adjGraph.degree(t) < K || preColored.contains(t) || containsInAdjSet(t, r);
+	}
+
+
+	// return if the number of high value nodes is lower than K
+	private boolean conservative(List<MemTemp> nodes) {
+		int k = 0;
+		for(var n : nodes) {
+			if(adjGraph.degree(n) >= K) {
+				k++;
+			}
+		}
+
+		return k < K;
+	}
+
+	/**
+	 * if u is not precolored, not move related and its degree is less than K
+	 * then we remove it from freezeWorklist and add to simplifyWorklist
+	 * @param u temp
+	 */
+	private void addWorklist(MemTemp u) {
+		if(!preColored.contains(u) && !isMoveRelated(u) && adjGraph.degree(u) < K) {
+			freezeWorklist.remove(u);
+			simplifyWorklist.add(u);
+		}
+	}
+
+
+	/**
+	 * @param n node
+	 * @return all neighbors nodes to node n without elements from selectStack and coalescedNodes
+	 */
+	private List<MemTemp> adjacent(MemTemp n) {
+		List<MemTemp> adjacent  = adjGraph.adjacent(n);
+		adjacent.removeAll(new HashSet<>(union(selectStack, coalescedNodes)));
+		return adjacent;
+	}
+
+	private void decrementDegree(MemTemp m) {
+		if(adjGraph.degree(m) == 0) {
+//			Report.warning("decrementDegree. degree  is 0: " + m);
+			return;
+		}
+
+		// decrement degree
+		if(adjGraph.decrementDegree(m) != K) return;
+
+		// enable moves (from active to worklist moves)
+		enableMoves(union(List.of(m), adjacent(m)));
+		spillWorklist.remove(m); // remove from spills and add to freeze or simplify depending on the situation
+		if(isMoveRelated(m)) {
+//			Report.info("DD of " + m + " Is to FR");
+			freezeWorklist.add(m);
+		}
+		else {
+//			Report.info("DD of " + m + " Is to SS");
+			simplifyWorklist.add(m);
+		}
+	}
+
+
+	private void enableMoves(List<MemTemp> nodes) {
+		for(var n : nodes) {
+			for(var m : nodeMoves(n)) {
+				activeMoves.remove(m);
+				worklistMoves.add(m);
+			}
+		}
+	}
+
+	private MemTemp getAlias(MemTemp n) {
+		return coalescedNodes.contains(n)
+				? getAlias(alias.get(n))
+				: n;
+	}
+
+	/**
+	 * Coalesces u and v
+	 * @param u temp
+	 * @param v temp
+	 */
+	private void combine(MemTemp u, MemTemp v) {
+		if(freezeWorklist.contains(v)) {
+			freezeWorklist.remove(v);
+		}
+		else {
+			spillWorklist.remove(v);
+		}
+
+		coalescedNodes.add(v);
+		useDefWeight.merge(u, useDefWeight.getOrDefault(v, 0.0), Double::sum);
+
+		alias.put(u, v);
+		alias.put(v, u);
+
+		moveList.put(u, new LinkedHashSet<>(union(moveList.get(u), moveList.get(v))));
+		enableMoves(List.of(v));
+
+		for(var t : adjacent(v)) {
+			addEdge(t, u);
+			decrementDegree(t);
+		}
+
+		if(adjGraph.degree(u) >= K && freezeWorklist.contains(u)) {
+			freezeWorklist.remove(u);
+			spillWorklist.add(u);
+		}
+	}
+
+
+	// ArrayList helpers
+	private List<Integer> getRange(int from, int to) {
+		List<Integer> result = new ArrayList<>();
+		for(int i = from; i <= to; i++) {
+			result.add(i);
+		}
+
+		return result;
+	}
+
+	private  <T> List<T> union(Collection<T> list1, Collection<T> list2) {
+		Set<T> set = new LinkedHashSet<T>();
+
+		if(list1 != null) set.addAll(list1);
+		if(list2 != null) set.addAll(list2);
+		return new ArrayList<T>(set);
+	}
+
+	private <T> List<T> intersection(Collection<T> list1, Collection<T> list2) {
+		List<T> list = new ArrayList<T>();
+
+		if(list1 == null || list2 == null)
+			return list;
+
+		for (T t : list1) {
+			if (list2.contains(t)) {
+				list.add(t);
+			}
+		}
+
+		return list;
+	}
+}
@@ -0,0 +1,379 @@
+package lang24.phase.regall;
+
+import java.util.*;
+
+import lang24.*;
+import lang24.data.mem.*;
+
+/**
+ * An interference graph.
+ *
+ * Nodes (temporaries) are numbered densely in the order they are added to the
+ * graph. The set of edges is kept as a packed lower-triangular bit matrix as
+ * long as the graph has at most {@link #matrixLimit} nodes; once the graph
+ * grows beyond that, the edges are moved into an open-addressing hash map of
+ * node number pairs. Either way, testing and inserting an edge takes constant
+ * time. Adjacency lists are kept alongside the edge set to allow iterating over
+ * the neighbours of a node. The first removal of an edge indexes the positions
+ * of all edges within the adjacency lists, which takes time linear in the
+ * number of edges; from then on, removing an edge takes constant time as well.
+ *
+ * Apart from the number of its neighbours, each node has a degree that is
+ * increased whenever an edge is added to it and can be decreased without
+ * removing edges, which is what simplification during graph coloring needs.
+ */
+public class InterferenceGraph {
+
+	/**
+	 * The maximal number of nodes for which the bit matrix is used (in the current
+	 * compilation).
+	 */
+	public static final CompilationContext.Local<Integer> matrixLimit = new CompilationContext.Local<Integer>(
+			() -> 8192);
+
+	/** The maximal number of nodes for which the bit matrix is used. */
+	private final int limit = matrixLimit.get();
+
+	/** Nodes indexed by their dense number. */
+	private final Vector<MemTemp> nodes = new Vector<MemTemp>();
+
+	/** Dense numbers of nodes. */
+	private final HashMap<MemTemp, Integer> index = new HashMap<MemTemp, Integer>();
+
+	/** The lower-triangular bit matrix (or {@code null} if not used). */
+	private long[] matrix = new long[0];
+
+	/** The hash map of edges to unused values (or {@code null} if not used). */
+	private PairMap pairs = null;
+
+	/**
+	 * Positions of neighbours within adjacency lists, keyed by {@link #arc} (or
+	 * {@code null} until the first edge is removed).
+	 */
+	private PairMap positions = null;
+
+	/** Adjacency lists indexed by dense node numbers. */
+	private int[][] adj = new int[0][];
+
+	/** Lengths of adjacency lists. */
+	private int[] adjSize = new int[0];
+
+	/** Degrees of nodes. */
+	private int[] degree = new int[0];
+
+	/** The number of edges. */
+	private int numEdges = 0;
+
+	/**
+	 * Returns the number of nodes.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int numNodes() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the number of edges.
+	 *
+	 * @return The number of edges.
+	 */
+	public int numEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * Adds a node unless it is already in the graph.
+	 *
+	 * @param temp The node.
+	 * @return The dense number of the node.
+	 */
+	public int addNode(MemTemp temp) {
+		final Integer known = index.get(temp);
+		if (known != null)
+			return known;
+		final int n = nodes.size();
+		nodes.add(temp);
+		index.put(temp, n);
+		if (n == adj.length) {
+			final int capacity = Math.max(16, 2 * n);
+			adj = Arrays.copyOf(adj, capacity);
+			adjSize = Arrays.copyOf(adjSize, capacity);
+			degree = Arrays.copyOf(degree, capacity);
+		}
+		adj[n] = new int[4];
+		if (pairs == null) {
+			if (n >= limit)
+				toPairs();
+			else {
+				final long bits = bit(n, 0) + n + 1;
+				if (((bits + 63) >>> 6) > matrix.length)
+					matrix = Arrays.copyOf(matrix, (int) Math.max((bits + 63) >>> 6, 2L * matrix.length));
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Checks whether two nodes interfere.
+	 *
+	 * @param u The first node.
+	 * @param v The second node.
+	 * @return {@code true} if there is an edge between the nodes.
+	 */
+	public boolean contains(MemTemp u, MemTemp v) {
+		final Integer i = index.get(u);
+		final Integer j = index.get(v);
+		if (i == null || j == null || i.equals(j))
+			return false;
+		return contains(i, j);
+	}
+
+	/**
+	 * Adds an edge (and both nodes if necessary).
+	 *
+	 * @param u The first node.
+	 * @param v The second node.
+	 * @return {@code true} if the edge has not been in the graph before.
+	 */
+	public boolean add(MemTemp u, MemTemp v) {
+		final int i = addNode(u);
+		final int j = addNode(v);
+		if (i == j || contains(i, j))
+			return false;
+		if (pairs == null) {
+			final long b = bit(i, j);
+			matrix[(int) (b >>> 6)] |= 1L << b;
+		} else
+			pairs.put(key(i, j), 0);
+		append(i, j);
+		append(j, i);
+		degree[i]++;
+		degree[j]++;
+		numEdges++;
+		return true;
+	}
+
+	/**
+	 * Removes an edge (and decreases the degrees of both nodes).
+	 *
+	 * @param u The first node.
+	 * @param v The second node.
+	 * @return {@code true} if the edge has been in the graph.
+	 */
+	public boolean remove(MemTemp u, MemTemp v) {
+		final Integer i = index.get(u);
+		final Integer j = index.get(v);
+		if (i == null || j == null || i.equals(j) || !contains(i, j))
+			return false;
+		if (pairs == null) {
+			final long b = bit(i, j);
+			matrix[(int) (b >>> 6)] &= ~(1L << b);
+		} else
+			pairs.remove(key(i, j));
+		if (positions == null)
+			indexPositions();
+		detach(i, j);
+		detach(j, i);
+		degree[i]--;
+		degree[j]--;
+		numEdges--;
+		return true;
+	}
+
+	/**
+	 * Returns the degree of a node, i.e., the number of its neighbours unless the
+	 * degree has been decreased by {@link #decrementDegree}.
+	 *
+	 * @param temp The node.
+	 * @return The degree (0 if the node is not in the graph).
+	 */
+	public int degree(MemTemp temp) {
+		final Integer n = index.get(temp);
+		return n == null ? 0 : degree[n];
+	}
+
+	/**
+	 * Decreases the degree of a node without removing any of its edges.
+	 *
+	 * @param temp The node.
+	 * @return The degree before it has been decreased.
+	 */
+	public int decrementDegree(MemTemp temp) {
+		final int n = index.get(temp);
+		return degree[n]--;
+	}
+
+	/**
+	 * Returns the neighbours of a node.
+	 *
+	 * @param temp The node.
+	 * @return The list of neighbours (empty if the node is not in the graph).
+	 */
+	public List<MemTemp> adjacent(MemTemp temp) {
+		final Integer n = index.get(temp);
+		if (n == null)
+			return new ArrayList<MemTemp>();
+		final List<MemTemp> neighbours = new ArrayList<MemTemp>(adjSize[n]);
+		for (int a = 0; a < adjSize[n]; a++)
+			neighbours.add(nodes.get(adj[n][a]));
+		return neighbours;
+	}
+
+	private boolean contains(int i, int j) {
+		if (pairs == null) {
+			final long b = bit(i, j);
+			return (matrix[(int) (b >>> 6)] & (1L << b)) != 0;
+		}
+		return pairs.get(key(i, j)) >= 0;
+	}
+
+	private void append(int n, int m) {
+		if (adjSize[n] == adj[n].length)
+			adj[n] = Arrays.copyOf(adj[n], 2 * adj[n].length);
+		if (positions != null)
+			positions.put(arc(n, m), adjSize[n]);
+		adj[n][adjSize[n]++] = m;
+	}
+
+	/** Removes a neighbour by moving the last one in its place. */
+	private void detach(int n, int m) {
+		final int a = positions.remove(arc(n, m));
+		final int last = adj[n][--adjSize[n]];
+		adj[n][a] = last;
+		if (last != m)
+			positions.put(arc(n, last), a);
+	}
+
+	/** Moves all edges from the bit matrix to the hash set. */
+	private void toPairs() {
+		pairs = new PairMap(Math.max(16, 2 * numEdges));
+		for (int i = 0; i < nodes.size(); i++)
+			for (int a = 0; a < adjSize[i]; a++)
+				if (adj[i][a] < i)
+					pairs.put(key(i, adj[i][a]), 0);
+		matrix = null;
+	}
+
+	/** Records the positions of all neighbours within adjacency lists. */
+	private void indexPositions() {
+		positions = new PairMap(Math.max(16, 4 * numEdges));
+		for (int n = 0; n < nodes.size(); n++)
+			for (int a = 0; a < adjSize[n]; a++)
+				positions.put(arc(n, adj[n][a]), a);
+	}
+
+	/** The position of an edge within the lower-triangular bit matrix. */
+	private static long bit(int i, int j) {
+		final long hi = Math.max(i, j);
+		final long lo = Math.min(i, j);
+		return hi * (hi - 1) / 2 + lo;
+	}
+
+	/** The key of an edge within the hash set. */
+	private static long key(int i, int j) {
+		return ((long) Math.max(i, j) << 32) | Math.min(i, j);
+	}
+
+	/** The key of neighbour {@code m} of node {@code n} within the positions. */
+	private static long arc(int n, int m) {
+		return ((long) n << 32) | m;
+	}
+
+	/**
+	 * An open-addressing hash map of non-negative longs to non-negative ints with
+	 * linear probing.
+	 */
+	private static class PairMap {
+
+		private static final long EMPTY = -1;
+
+		private static final long DELETED = -2;
+
+		private long[] keys;
+
+		private int[] values;
+
+		/** The number of keys in the map. */
+		private int size = 0;
+
+		/** The number of slots that are not empty (including deleted ones). */
+		private int used = 0;
+
+		private PairMap(int capacity) {
+			keys = new long[Integer.highestOneBit(capacity - 1) << 1];
+			values = new int[keys.length];
+			Arrays.fill(keys, EMPTY);
+		}
+
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			h ^= h >>> 32;
+			h *= 0x9E3779B97F4A7C15L;
+			h ^= h >>> 29;
+			return (int) h & (keys.length - 1);
+		}
+
+		/** Returns the value of a key (or -1 if the key is not in the map). */
+		private int get(long key) {
+			for (int s = slot(key);; s = (s + 1) & (keys.length - 1)) {
+				if (keys[s] == key)
+					return values[s];
+				if (keys[s] == EMPTY)
+					return -1;
+			}
+		}
+
+		private void put(long key, int value) {
+			if (2 * (used + 1) > keys.length)
+				rehash();
+			int free = -1;
+			for (int s = slot(key);; s = (s + 1) & (keys.length - 1)) {
+				if (keys[s] == key) {
+					values[s] = value;
+					return;
+				}
+				if (keys[s] == DELETED && free < 0)
+					free = s;
+				if (keys[s] == EMPTY) {
+					if (free < 0) {
+						free = s;
+						used++;
+					}
+					keys[free] = key;
+					values[free] = value;
+					size++;
+					return;
+				}
+			}
+		}
+
+		/** Removes a key and returns its value (or -1 if the key is not in the map). */
+		private int remove(long key) {
+			for (int s = slot(key);; s = (s + 1) & (keys.length - 1)) {
+				if (keys[s] == key) {
+					keys[s] = DELETED;
+					size--;
+					return values[s];
+				}
+				if (keys[s] == EMPTY)
+					return -1;
+			}
+		}
+
+		private void rehash() {
+			final long[] oldKeys = keys;
+			final int[] oldValues = values;
+			keys = new long[Integer.highestOneBit(Math.max(16, 4 * (size + 1)) - 1) << 1];
+			values = new int[keys.length];
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+			used = 0;
+			for (int s = 0; s < oldKeys.length; s++)
+				if (oldKeys[s] >= 0)
+					put(oldKeys[s], oldValues[s]);
+		}
+
+	}
+
+}
@@ -0,0 +1,328 @@
+package lang24.phase.regall;
+
+import java.util.*;
+
+import lang24.common.report.*;
+import lang24.data.asm.*;
+import lang24.data.mem.*;
+import lang24.phase.livean.*;
+
+/**
+ * Register allocation of a single function by second-chance binpacking linear
+ * scan.
+ *
+ * Instructions are numbered in program order and each is given two points: the
+ * point before it, where the temporaries in {@link AsmInstr#in()} are live, and
+ * the point after it, where the temporaries in {@link AsmInstr#out()} and those
+ * it defines are live. The live interval of a temporary is the set of points it
+ * is live at, kept as a list of ranges, so that it has holes wherever the
+ * temporary is dead. Temporaries are visited in the order their intervals start
+ * and each is packed into the lowest register that is free at all points of
+ * its interval (trying the register of the source of a move first). If there
+ * is none, the temporaries occupying the register that is cheapest to free are
+ * evicted if they are cheaper to spill than the temporary itself; otherwise the
+ * temporary is spilled. Spill costs are uses and definitions, each weighted by
+ * {@link SpillCode#loopWeight(int)}.
+ *
+ * Evicted and spilled temporaries are spilled (or rematerialized) as a whole
+ * (see {@link SpillCode}) and the scan is repeated on the rewritten program,
+ * which gives the short-lived temporaries introduced by spilling a second
+ * chance to get a register. Finally, spilled temporaries share slots (see
+ * {@link SpillCode#shareSlots()}). Intervals are never split, so no moves are
+ * needed at the boundaries of basic blocks. Each scan takes time linear in the
+ * total length of intervals (times the number of registers), which keeps it
+ * fast on very large functions.
+ */
+public class LinearScanAllocator implements RegisterAllocator {
+
+	/** The number of registers. */
+	private final int K = RegAll.K.get();
+
+	/** Rounds after which the allocation is given up on. */
+	private static final int MAX_SPILL_ROUNDS = 64;
+
+	/** The function body. */
+	private final Code code;
+
+	/** Spill code inserted so far. */
+	private final SpillCode spillCode;
+
+	/** Mapping of temporary variables to registers. */
+	public final HashMap<MemTemp, Integer> tempToReg = new HashMap<MemTemp, Integer>();
+
+	/** The number of rounds that ended with spilling. */
+	private int spillRounds = 0;
+
+	/** The number of temporaries in the last round. */
+	private int numTemps = 0;
+
+	/**
+	 * Constructs a linear scan allocator of a function.
+	 *
+	 * @param code The function body.
+	 */
+	public LinearScanAllocator(final Code code) {
+		this.code = code;
+		this.spillCode = new SpillCode(code);
+	}
+
+	/** Allocates registers, spilling temporaries until all fit. */
+	@Override
+	public void allocate() {
+		while (true) {
+			final FlowGraph flowGraph = LiveAn.analysis(code);
+			final IdentityHashMap<AsmInstr, Integer> loopDepth = SpillCode.loopDepths(flowGraph);
+			final Vector<MemTemp> spills = scan(flowGraph, loopDepth);
+			if (spills.isEmpty())
+				break;
+			if (++spillRounds > MAX_SPILL_ROUNDS)
+				throw new Report.Error("Register allocation of " + code.frame.label.name
+						+ " does not converge with " + K + " registers.");
+			spillCode.spill(spills, flowGraph, loopDepth);
+		}
+		spillCode.shareSlots();
+
+		// Moves between temporaries packed into the same register are no-ops.
+		code.instrs.removeIf(instr -> instr instanceof AsmMOVE move
+				&& Objects.equals(tempToReg.get(move.uses().getFirst()), tempToReg.get(move.defs().getFirst())));
+	}
+
+	/**
+	 * Packs all temporaries into registers.
+	 *
+	 * @param flowGraph The flow graph with liveness computed.
+	 * @param loopDepth The loop nesting depths of instructions.
+	 * @return The temporaries to be spilled (empty if all have been packed).
+	 */
+	private Vector<MemTemp> scan(final FlowGraph flowGraph, final IdentityHashMap<AsmInstr, Integer> loopDepth) {
+		final AsmInstr[] instrs = flowGraph.instrs;
+		final MemTemp[] temps = flowGraph.temps;
+		numTemps = temps.length;
+		tempToReg.clear();
+
+		// Live intervals: ranges[t] holds pairs of the first and the last point.
+		final int[][] ranges = new int[temps.length][4];
+		final int[] numRanges = new int[temps.length];
+		final int[] lastPoint = new int[temps.length];
+		Arrays.fill(lastPoint, -2);
+		final double[] weight = new double[temps.length];
+		for (int i = 0; i < instrs.length; i++) {
+			for (final MemTemp temp : instrs[i].in())
+				addPoint(ranges, numRanges, lastPoint, flowGraph.tempIndex(temp), 2 * i);
+			for (final MemTemp temp : instrs[i].out())
+				addPoint(ranges, numRanges, lastPoint, flowGraph.tempIndex(temp), 2 * i + 1);
+			final double instrWeight = SpillCode.loopWeight(loopDepth.getOrDefault(instrs[i], 0));
+			for (final MemTemp temp : instrs[i].defs()) {
+				final int t = flowGraph.tempIndex(temp);
+				addPoint(ranges, numRanges, lastPoint, t, 2 * i + 1);
+				weight[t] += instrWeight;
+			}
+			for (final MemTemp temp : instrs[i].uses())
+				weight[flowGraph.tempIndex(temp)] += instrWeight;
+		}
+		for (int t = 0; t < temps.length; t++)
+			if (spillCode.isSpillTemp(temps[t]))
+				weight[t] = Double.POSITIVE_INFINITY;
+
+		final Integer[] order = new Integer[temps.length];
+		for (int t = 0; t < temps.length; t++)
+			order[t] = t;
+		Arrays.sort(order, Comparator.comparingInt((Integer t) -> numRanges[t] == 0 ? -1 : ranges[t][0])
+				.thenComparingLong(t -> temps[t].temp));
+
+		// owner[r][p] is the temporary occupying register r at point p (or -1).
+		final int[][] owner = new int[K][2 * instrs.length];
+		for (final int[] points : owner)
+			Arrays.fill(points, -1);
+		final int[] reg = new int[temps.length];
+		Arrays.fill(reg, -1);
+		final Vector<MemTemp> spills = new Vector<MemTemp>();
+
+		for (final int t : order) {
+			int r = -1;
+			final int hint = hint(flowGraph, ranges, numRanges, reg, t);
+			if (hint >= 0 && fits(owner[hint], ranges[t], numRanges[t]))
+				r = hint;
+			for (int c = 0; r < 0 && c < K; c++)
+				if (fits(owner[c], ranges[t], numRanges[t]))
+					r = c;
+
+			if (r < 0) {
+				// Free the register whose occupants are the cheapest to spill.
+				double cheapest = Double.POSITIVE_INFINITY;
+				for (int c = 0; c < K; c++) {
+					double cost = 0;
+					for (final int o : occupants(owner[c], ranges[t], numRanges[t]))
+						cost += weight[o];
+					if (cost < cheapest) {
+						cheapest = cost;
+						r = c;
+					}
+				}
+				if (r < 0 || cheapest >= weight[t]) {
+					spills.add(temps[t]);
+					continue;
+				}
+				for (final int o : occupants(owner[r], ranges[t], numRanges[t])) {
+					for (int k = 0; k < numRanges[o]; k++)
+						Arrays.fill(owner[r], ranges[o][2 * k], ranges[o][2 * k + 1] + 1, -1);
+					reg[o] = -1;
+					spills.add(temps[o]);
+				}
+			}
+
+			for (int k = 0; k < numRanges[t]; k++)
+				Arrays.fill(owner[r], ranges[t][2 * k], ranges[t][2 * k + 1] + 1, t);
+			reg[t] = r;
+		}
+
+		if (spills.isEmpty())
+			for (int t = 0; t < temps.length; t++)
+				tempToReg.put(temps[t], reg[t]);
+		Report.info("Linear scan. temps=" + temps.length + " SP=" + spills.size());
+		return spills;
+	}
+
+	/** Adds a point to the live interval of a temporary (points come in order). */
+	private static void addPoint(final int[][] ranges, final int[] numRanges, final int[] lastPoint, final int t,
+			final int point) {
+		if (lastPoint[t] == point)
+			return;
+		if (lastPoint[t] == point - 1)
+			ranges[t][2 * numRanges[t] - 1] = point;
+		else {
+			if (2 * numRanges[t] == ranges[t].length)
+				ranges[t] = Arrays.copyOf(ranges[t], 2 * ranges[t].length);
+			ranges[t][2 * numRanges[t]] = point;
+			ranges[t][2 * numRanges[t] + 1] = point;
+			numRanges[t]++;
+		}
+		lastPoint[t] = point;
+	}
+
+	/** Tells whether a register is free at all points of a live interval. */
+	private static boolean fits(final int[] owner, final int[] ranges, final int numRanges) {
+		for (int k = 0; k < numRanges; k++)
+			for (int p = ranges[2 * k]; p <= ranges[2 * k + 1]; p++)
+				if (owner[p] >= 0)
+					return false;
+		return true;
+	}
+
+	/** Returns the temporaries occupying a register within a live interval. */
+	private static Set<Integer> occupants(final int[] owner, final int[] ranges, final int numRanges) {
+		final Set<Integer> occupants = new LinkedHashSet<Integer>();
+		for (int k = 0; k < numRanges; k++)
+			for (int p = ranges[2 * k]; p <= ranges[2 * k + 1]; p++)
+				if (owner[p] >= 0)
+					occupants.add(owner[p]);
+		return occupants;
+	}
+
+	/**
+	 * Returns the register of the source of the move a temporary is defined by
+	 * where its interval starts (or -1 if there is no such register).
+	 */
+	private static int hint(final FlowGraph flowGraph, final int[][] ranges, final int[] numRanges, final int[] reg,
+			final int t) {
+		if (numRanges[t] == 0 || ranges[t][0] % 2 == 0)
+			return -1;
+		if (!(flowGraph.instrs[ranges[t][0] / 2] instanceof AsmMOVE move))
+			return -1;
+		if (flowGraph.tempIndex(move.defs().getFirst()) != t)
+			return -1;
+		return reg[flowGraph.tempIndex(move.uses().getFirst())];
+	}
+
+	/**
+	 * Returns the mapping of temporary variables to registers.
+	 *
+	 * @return The mapping of temporary variables to registers.
+	 */
+	@Override
+	public HashMap<MemTemp, Integer> tempToReg() {
+		return tempToReg;
+	}
+
+	/**
+	 * Returns the number of rounds that ended with spilling.
+	 *
+	 * @return The number of spill rounds.
+	 */
+	@Override
+	public int spillRounds() {
+		return spillRounds;
+	}
+
+	/**
+	 * Returns the number of temporaries in the last round.
+	 *
+	 * @return The number of temporaries.
+	 */
+	@Override
+	public int numTemps() {
+		return numTemps;
+	}
+
+	/**
+	 * Returns the number of spill loads inserted.
+	 *
+	 * @return The number of spill loads.
+	 */
+	@Override
+	public int spillLoads() {
+		return spillCode.loads();
+	}
+
+	/**
+	 * Returns the number of spill stores inserted.
+	 *
+	 * @return The number of spill stores.
+	 */
+	@Override
+	public int spillStores() {
+		return spillCode.stores();
+	}
+
+	/**
+	 * Returns the number of spill slots allocated.
+	 *
+	 * @return The number of spill slots.
+	 */
+	@Override
+	public int spillSlots() {
+		return spillCode.slots();
+	}
+
+	/**
+	 * Returns the number of spill slots left once they are shared.
+	 *
+	 * @return The number of shared spill slots.
+	 */
+	@Override
+	public int sharedSpillSlots() {
+		return spillCode.sharedSlots();
+	}
+
+	/**
+	 * Returns the number of spilled definitions repeated at uses instead of loads.
+	 *
+	 * @return The number of rematerializations.
+	 */
+	@Override
+	public int remats() {
+		return spillCode.remats();
+	}
+
+	/**
+	 * Returns the estimated number of spill loads and stores executed per function
+	 * call.
+	 *
+	 * @return The weight of spill loads and stores.
+	 */
+	@Override
+	public long spillWeight() {
+		return Math.round(spillCode.weight());
+	}
+
+}
@@ -0,0 +1,79 @@
+package lang24.phase.regall;
+
+import java.util.*;
+
+import lang24.data.mem.*;
+
+/**
+ * Register allocation of a single function (see {@link RegAll}).
+ */
+public interface RegisterAllocator {
+
+	/** Allocates registers, spilling temporaries until all fit. */
+	public void allocate();
+
+	/**
+	 * Returns the mapping of temporary variables to registers.
+	 *
+	 * @return The mapping of temporary variables to registers.
+	 */
+	public HashMap<MemTemp, Integer> tempToReg();
+
+	/**
+	 * Returns the number of temporaries in the last round.
+	 *
+	 * @return The number of temporaries.
+	 */
+	public int numTemps();
+
+	/**
+	 * Returns the number of rounds that ended with spilling.
+	 *
+	 * @return The number of spill rounds.
+	 */
+	public int spillRounds();
+
+	/**
+	 * Returns the number of spill loads inserted.
+	 *
+	 * @return The number of spill loads.
+	 */
+	public int spillLoads();
+
+	/**
+	 * Returns the number of spill stores inserted.
+	 *
+	 * @return The number of spill stores.
+	 */
+	public int spillStores();
+
+	/**
+	 * Returns the number of spill slots allocated.
+	 *
+	 * @return The number of spill slots.
+	 */
+	public int spillSlots();
+
+	/**
+	 * Returns the number of spill slots left once they are shared.
+	 *
+	 * @return The number of shared spill slots.
+	 */
+	public int sharedSpillSlots();
+
+	/**
+	 * Returns the number of spilled definitions repeated at uses instead of loads.
+	 *
+	 * @return The number of rematerializations.
+	 */
+	public int remats();
+
+	/**
+	 * Returns the estimated number of spill loads and stores executed per function
+	 * call.
+	 *
+	 * @return The weight of spill loads and stores.
+	 */
+	public long spillWeight();
+
+}
@@ -0,0 +1,500 @@
+package lang24.phase.regall;
+
+import java.util.*;
+
+import lang24.common.report.*;
+import lang24.data.asm.*;
+import lang24.data.mem.*;
+import lang24.phase.asmgen.*;
+import lang24.phase.livean.*;
+
+/**
+ * Spill code of a single function, shared by all register allocators.
+ *
+ * A spilled temporary gets an 8-byte slot in the temporary area of the frame.
+ * Every instruction that uses or defines it is rewritten to use a fresh
+ * temporary instead, preceded by a load from the slot (if the temporary is
+ * used) and followed by a store into the slot (if it is defined). The offset of
+ * the slot is loaded into another temporary, which is reused by the following
+ * accesses within the basic block while registers are to spare. Temporaries
+ * introduced by spilling that only live across a single instruction are never
+ * worth spilling again.
+ *
+ * A temporary whose only definition is a constant materialization (see
+ * {@link CodeGenerator#generateNumberInstructions(MemTemp, long)}) or an
+ * {@code LDA} of a label is rematerialized instead: its definition is removed
+ * and repeated into a fresh temporary right before every instruction that uses
+ * it, so that it gets no slot and causes no loads or stores.
+ *
+ * Once allocation is over, slots are shared by spilled temporaries that are
+ * never live at the same time (see {@link #shareSlots()}), which shrinks the
+ * temporary area of the frame.
+ */
+public class SpillCode {
+
+	/** The number of registers. */
+	private final int K = RegAll.K.get();
+
+	/** The largest number of instructions an offset is kept in a register across. */
+	private static final int MAX_REUSE_DISTANCE = 32;
+
+	/** The function body. */
+	private final Code code;
+
+	/** The temporaries introduced by spilling. */
+	private final HashSet<MemTemp> spillTemps = new HashSet<MemTemp>();
+
+	/** The number of loads inserted. */
+	private int loads = 0;
+
+	/** The number of stores inserted. */
+	private int stores = 0;
+
+	/** Loads and stores inserted, each weighted by {@link #loopWeight(int)}. */
+	private double weight = 0;
+
+	/** The number of definitions repeated instead of loads. */
+	private int remats = 0;
+
+	/** The size of the temporary area of the frame before spilling. */
+	private final long baseTempSize;
+
+	/** The number of slots allocated. */
+	private int numSlots = 0;
+
+	/** The number of slots left once they are shared. */
+	private int numSharedSlots = 0;
+
+	/** Slots by the temporaries holding their offsets. */
+	private final HashMap<MemTemp, Integer> offsetSlots = new HashMap<MemTemp, Integer>();
+
+	/**
+	 * Constructs spill code of a function.
+	 *
+	 * @param code The function body.
+	 */
+	public SpillCode(final Code code) {
+		this.code = code;
+		this.baseTempSize = code.tempSize;
+	}
+
+	/**
+	 * Returns the weight of an access at a loop nesting depth, i.e., an estimate
+	 * of how many times it is executed per function call.
+	 *
+	 * @param depth The loop nesting depth.
+	 * @return The weight.
+	 */
+	public static double loopWeight(final int depth) {
+		return Math.pow(10, Math.min(depth, 10));
+	}
+
+	/**
+	 * Returns the loop nesting depths of all instructions of a flow graph.
+	 *
+	 * @param flowGraph The flow graph.
+	 * @return The loop nesting depths of instructions.
+	 */
+	public static IdentityHashMap<AsmInstr, Integer> loopDepths(final FlowGraph flowGraph) {
+		final int[] blockDepths = flowGraph.loopDepths();
+		final IdentityHashMap<AsmInstr, Integer> loopDepth = new IdentityHashMap<AsmInstr, Integer>();
+		for (int i = 0; i < flowGraph.instrs.length; i++)
+			loopDepth.put(flowGraph.instrs[i], blockDepths[flowGraph.blockOf(i)]);
+		return loopDepth;
+	}
+
+	/**
+	 * Tells whether a temporary has been introduced by spilling.
+	 *
+	 * @param temp The temporary.
+	 * @return {@code true} if the temporary has been introduced by spilling.
+	 */
+	public boolean isSpillTemp(final MemTemp temp) {
+		return spillTemps.contains(temp);
+	}
+
+	/**
+	 * Spills temporaries: allocates their slots (or finds their definitions to be
+	 * rematerialized) and rewrites all instructions that use or define them, in a
+	 * single pass over the function body.
+	 *
+	 * Within a basic block, the offset of a slot loaded into a temporary before an
+	 * access is reused by the next access if a register is free at all
+	 * instructions in between (judging by the liveness the allocator has just
+	 * seen); otherwise it is loaded again. If an offset temporary is spilled in
+	 * turn, it is rematerialized at every access.
+	 *
+	 * @param temps     The temporaries.
+	 * @param flowGraph The flow graph of the function body (as it is now).
+	 * @param loopDepth The loop nesting depths of instructions.
+	 */
+	public void spill(final Collection<MemTemp> temps, final FlowGraph flowGraph,
+			final IdentityHashMap<AsmInstr, Integer> loopDepth) {
+		final AsmInstr[] instrs = flowGraph.instrs;
+		if (instrs.length != code.instrs.size())
+			throw new Report.InternalError();
+
+		// Find the definitions of spilled temporaries.
+		final HashMap<MemTemp, Vector<Integer>> defIndices = new HashMap<MemTemp, Vector<Integer>>();
+		for (final MemTemp temp : temps)
+			defIndices.put(temp, new Vector<Integer>());
+		for (int i = 0; i < instrs.length; i++)
+			for (final MemTemp temp : instrs[i].defs()) {
+				final Vector<Integer> indices = defIndices.get(temp);
+				if (indices != null && (indices.isEmpty() || indices.getLast() != i))
+					indices.add(i);
+			}
+
+		// Allocate slots unless definitions can be repeated.
+		final HashMap<MemTemp, Integer> slots = new HashMap<MemTemp, Integer>();
+		final HashMap<MemTemp, Vector<AsmOPER>> definitions = new HashMap<MemTemp, Vector<AsmOPER>>();
+		final boolean[] removed = new boolean[instrs.length];
+		for (final MemTemp temp : new LinkedHashSet<MemTemp>(temps)) {
+			final Vector<AsmOPER> definition = rematerializable(instrs, defIndices.get(temp));
+			if (definition != null) {
+				definitions.put(temp, definition);
+				for (final int i : defIndices.get(temp))
+					removed[i] = true;
+			} else
+				slots.put(temp, numSlots++);
+		}
+		code.tempSize = baseTempSize + 8 * numSlots;
+
+		// Registers taken at each instruction, by live temporaries and by offsets
+		// already reused across it.
+		final int[] pressure = new int[instrs.length];
+		for (int i = 0; i < instrs.length; i++)
+			pressure[i] = Math.max(instrs[i].in().size(), instrs[i].out().size());
+
+		final Vector<AsmInstr> rewritten = new Vector<AsmInstr>(instrs.length + 8 * temps.size());
+		final HashMap<Integer, MemTemp> blockOffsets = new HashMap<Integer, MemTemp>();
+		final HashMap<Integer, Integer> lastAccesses = new HashMap<Integer, Integer>();
+		final HashMap<MemTemp, Integer> offsetAccesses = new HashMap<MemTemp, Integer>();
+		int block = -1;
+		for (int i = 0; i < instrs.length; i++) {
+			final AsmInstr instr = instrs[i];
+			if (flowGraph.blockOf(i) != block) {
+				block = flowGraph.blockOf(i);
+				blockOffsets.clear();
+				lastAccesses.clear();
+			}
+			if (removed[i])
+				continue;
+			final LinkedHashSet<MemTemp> spilled = new LinkedHashSet<MemTemp>();
+			for (final MemTemp temp : instr.uses())
+				if (slots.containsKey(temp) || definitions.containsKey(temp))
+					spilled.add(temp);
+			for (final MemTemp temp : instr.defs())
+				if (slots.containsKey(temp))
+					spilled.add(temp);
+			if (spilled.isEmpty()) {
+				rewritten.add(instr);
+				continue;
+			}
+
+			final AsmOPER oper = (AsmOPER) instr;
+			final double instrWeight = loopWeight(loopDepth.getOrDefault(instr, 0));
+			final Vector<MemTemp> uses = new Vector<MemTemp>(oper.uses());
+			final Vector<MemTemp> defs = new Vector<MemTemp>(oper.defs());
+			final Vector<AsmInstr> stores = new Vector<AsmInstr>();
+			for (final MemTemp temp : spilled) {
+				final MemTemp replaceTemp = new MemTemp();
+				spillTemps.add(replaceTemp);
+				Collections.replaceAll(uses, temp, replaceTemp);
+				Collections.replaceAll(defs, temp, replaceTemp);
+
+				final Vector<AsmOPER> definition = definitions.get(temp);
+				if (definition != null) {
+					if (offsetSlots.containsKey(temp))
+						offsetSlots.put(replaceTemp, offsetSlots.get(temp));
+					for (final AsmOPER defInstr : definition)
+						rewritten.add(new AsmOPER(defInstr.instr(), new Vector<MemTemp>(),
+								new Vector<MemTemp>(List.of(replaceTemp)), defInstr.jumps()));
+					remats++;
+					continue;
+				}
+
+				final int slot = slots.get(temp);
+				MemTemp offsetTemp = blockOffsets.get(slot);
+				if (offsetTemp != null) {
+					final int last = lastAccesses.get(slot);
+					boolean free = i - last <= MAX_REUSE_DISTANCE;
+					for (int j = last; free && j < i; j++)
+						free = pressure[j] < K;
+					if (free)
+						for (int j = last; j < i; j++)
+							pressure[j]++;
+					else
+						offsetTemp = null;
+				}
+				if (offsetTemp == null) {
+					offsetTemp = new MemTemp();
+					offsetSlots.put(offsetTemp, slot);
+					blockOffsets.put(slot, offsetTemp);
+					rewritten.addAll(CodeGenerator.generateNumberInstructions(offsetTemp, slotOffset(slot)));
+				}
+				lastAccesses.put(slot, i);
+				offsetAccesses.merge(offsetTemp, 1, Integer::sum);
+				if (oper.uses().contains(temp)) {
+					rewritten.add(new AsmOPER(Instructions.LDO + " `d0,$253,`s0", new Vector<MemTemp>(List.of(offsetTemp)),
+							new Vector<MemTemp>(List.of(replaceTemp)), null));
+					loads++;
+					weight += instrWeight;
+				}
+				if (oper.defs().contains(temp)) {
+					stores.add(new AsmOPER(Instructions.STO + " `s0,$253,`s1",
+							new Vector<MemTemp>(List.of(replaceTemp, offsetTemp)), new Vector<MemTemp>(), null));
+					this.stores++;
+					weight += instrWeight;
+				}
+			}
+			rewritten.add(new AsmOPER(oper.instr(), uses, defs, oper.jumps()));
+			rewritten.addAll(stores);
+		}
+
+		// An offset used by a single access lives across a single instruction.
+		for (final Map.Entry<MemTemp, Integer> accesses : offsetAccesses.entrySet())
+			if (accesses.getValue() == 1)
+				spillTemps.add(accesses.getKey());
+
+		code.instrs.clear();
+		code.instrs.addAll(rewritten);
+	}
+
+	/**
+	 * Returns the definition of a temporary if it can be repeated at every use,
+	 * i.e., if it is the only definition of the temporary and consists of
+	 * consecutive instructions that use no temporaries: either a constant
+	 * materialization ({@code SETL} followed by {@code INC*}) or a single
+	 * {@code LDA} of a label.
+	 *
+	 * @param instrs     The instructions of the function body.
+	 * @param defIndices The indices of instructions defining the temporary.
+	 * @return The instructions of the definition or {@code null} if the temporary
+	 *         cannot be rematerialized.
+	 */
+	private static Vector<AsmOPER> rematerializable(final AsmInstr[] instrs, final Vector<Integer> defIndices) {
+		final Vector<AsmOPER> definition = new Vector<AsmOPER>();
+		for (int d = 0; d < defIndices.size(); d++) {
+			final AsmInstr instr = instrs[defIndices.get(d)];
+			if (d > 0 && defIndices.get(d) != defIndices.get(d - 1) + 1)
+				return null;
+			if (!(instr instanceof AsmOPER oper) || instr instanceof AsmLABEL || instr instanceof AsmMOVE)
+				return null;
+			if (!oper.uses().isEmpty() || oper.defs().size() != 1)
+				return null;
+			final String opcode = oper.instr().split(" ", 2)[0];
+			final boolean first = definition.isEmpty();
+			if (!(first && (opcode.equals(Instructions.SETL) || opcode.equals(Instructions.LDA)))
+					&& !(!first && definition.getFirst().instr().startsWith(Instructions.SETL + " ")
+							&& (opcode.equals(Instructions.INCML) || opcode.equals(Instructions.INCMH)
+									|| opcode.equals(Instructions.INCH))))
+				return null;
+			definition.add(oper);
+		}
+		return definition.isEmpty() ? null : definition;
+	}
+
+	/**
+	 * Returns the offset of a slot from the frame pointer.
+	 *
+	 * @param slot The slot.
+	 * @return The offset.
+	 */
+	private long slotOffset(final int slot) {
+		return -code.frame.locsSize - 8 /* SL size */ - baseTempSize - 8 * (slot + 1);
+	}
+
+	/**
+	 * Shares slots among spilled temporaries: slots that are never live at the
+	 * same time are given the same place in the frame.
+	 *
+	 * A slot is live from a store into it to every load from it that the store
+	 * can reach. Liveness of slots is computed on the final code like liveness of
+	 * temporaries, two slots interfere if one is stored into while the other is
+	 * live, and the interference graph is colored greedily. The offsets loaded
+	 * before accesses are then rewritten and the temporary area of the frame is
+	 * shrunk to the number of colors. Must be called once registers have been
+	 * allocated, as the code must not be spilled any further.
+	 */
+	public void shareSlots() {
+		numSharedSlots = numSlots;
+		if (numSlots < 2)
+			return;
+
+		final FlowGraph flowGraph = new FlowGraph(code);
+		final AsmInstr[] instrs = flowGraph.instrs;
+		final int[] loadSlot = new int[instrs.length];
+		final int[] storeSlot = new int[instrs.length];
+		for (int i = 0; i < instrs.length; i++) {
+			loadSlot[i] = accessedSlot(instrs[i], Instructions.LDO, 0);
+			storeSlot[i] = accessedSlot(instrs[i], Instructions.STO, 1);
+		}
+
+		// Liveness of slots at the ends of basic blocks.
+		final int numBlocks = flowGraph.numBlocks();
+		final BitSet[] gen = new BitSet[numBlocks];
+		final BitSet[] kill = new BitSet[numBlocks];
+		final BitSet[] liveIn = new BitSet[numBlocks];
+		final BitSet[] liveOut = new BitSet[numBlocks];
+		for (int b = 0; b < numBlocks; b++) {
+			gen[b] = new BitSet(numSlots);
+			kill[b] = new BitSet(numSlots);
+			for (int i = flowGraph.blockEnd[b] - 1; i >= flowGraph.blockBeg[b]; i--) {
+				if (storeSlot[i] >= 0) {
+					gen[b].clear(storeSlot[i]);
+					kill[b].set(storeSlot[i]);
+				}
+				if (loadSlot[i] >= 0)
+					gen[b].set(loadSlot[i]);
+			}
+			liveIn[b] = (BitSet) gen[b].clone();
+			liveOut[b] = new BitSet(numSlots);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int b = numBlocks - 1; b >= 0; b--) {
+				final BitSet out = new BitSet(numSlots);
+				for (final int succ : flowGraph.succs[b])
+					out.or(liveIn[succ]);
+				if (out.equals(liveOut[b]))
+					continue;
+				liveOut[b] = out;
+				final BitSet in = (BitSet) out.clone();
+				in.andNot(kill[b]);
+				in.or(gen[b]);
+				liveIn[b] = in;
+				changed = true;
+			}
+		}
+
+		// Interference of slots.
+		final BitSet[] interferes = new BitSet[numSlots];
+		for (int slot = 0; slot < numSlots; slot++)
+			interferes[slot] = new BitSet(numSlots);
+		for (int b = 0; b < numBlocks; b++) {
+			final BitSet live = (BitSet) liveOut[b].clone();
+			for (int i = flowGraph.blockEnd[b] - 1; i >= flowGraph.blockBeg[b]; i--) {
+				final int slot = storeSlot[i];
+				if (slot >= 0) {
+					for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+						if (other != slot) {
+							interferes[slot].set(other);
+							interferes[other].set(slot);
+						}
+					}
+					live.clear(slot);
+				}
+				if (loadSlot[i] >= 0)
+					live.set(loadSlot[i]);
+			}
+		}
+
+		// Greedy coloring.
+		final int[] color = new int[numSlots];
+		numSharedSlots = 0;
+		for (int slot = 0; slot < numSlots; slot++) {
+			final BitSet taken = new BitSet();
+			for (int other = interferes[slot].nextSetBit(0); other >= 0 && other < slot; other = interferes[slot]
+					.nextSetBit(other + 1))
+				taken.set(color[other]);
+			color[slot] = taken.nextClearBit(0);
+			numSharedSlots = Math.max(numSharedSlots, color[slot] + 1);
+		}
+
+		// Rewrite the offsets.
+		for (int i = 0; i < code.instrs.size(); i++) {
+			final AsmInstr instr = code.instrs.get(i);
+			if (instr.defs().size() != 1 || !offsetSlots.containsKey(instr.defs().getFirst())
+					|| !(instr instanceof AsmOPER oper) || !oper.instr().startsWith(Instructions.SETL + " "))
+				continue;
+			final MemTemp offsetTemp = instr.defs().getFirst();
+			final List<AsmInstr> offsetInstrs = CodeGenerator.generateNumberInstructions(offsetTemp,
+					slotOffset(color[offsetSlots.get(offsetTemp)]));
+			for (int k = 0; k < offsetInstrs.size(); k++) {
+				final AsmInstr oldInstr = code.instrs.get(i + k);
+				if (!oldInstr.defs().contains(offsetTemp))
+					throw new Report.InternalError();
+				final AsmOPER newInstr = (AsmOPER) offsetInstrs.get(k);
+				newInstr.addInTemps(oldInstr.in());
+				newInstr.addOutTemp(oldInstr.out());
+				code.instrs.set(i + k, newInstr);
+			}
+			i += offsetInstrs.size() - 1;
+		}
+		code.tempSize = baseTempSize + 8 * numSharedSlots;
+	}
+
+	/**
+	 * Returns the slot a spill load or store accesses.
+	 *
+	 * @param instr     The instruction.
+	 * @param opcode    {@code LDO} or {@code STO}.
+	 * @param offsetUse The index of the use holding the offset.
+	 * @return The slot or -1 if the instruction is not such an access.
+	 */
+	private int accessedSlot(final AsmInstr instr, final String opcode, final int offsetUse) {
+		if (!(instr instanceof AsmOPER oper) || !oper.instr().startsWith(opcode + " ")
+				|| !oper.instr().contains(",$253,") || oper.uses().size() <= offsetUse)
+			return -1;
+		final Integer slot = offsetSlots.get(oper.uses().get(offsetUse));
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the number of slots allocated, i.e., of temporaries spilled to
+	 * memory.
+	 *
+	 * @return The number of slots.
+	 */
+	public int slots() {
+		return numSlots;
+	}
+
+	/**
+	 * Returns the number of slots left once they are shared.
+	 *
+	 * @return The number of shared slots.
+	 */
+	public int sharedSlots() {
+		return numSharedSlots;
+	}
+
+	/**
+	 * Returns the number of loads inserted.
+	 *
+	 * @return The number of loads.
+	 */
+	public int loads() {
+		return loads;
+	}
+
+	/**
+	 * Returns the number of stores inserted.
+	 *
+	 * @return The number of stores.
+	 */
+	public int stores() {
+		return stores;
+	}
+
+	/**
+	 * Returns the number of definitions repeated instead of loads.
+	 *
+	 * @return The number of rematerializations.
+	 */
+	public int remats() {
+		return remats;
+	}
+
+	/**
+	 * Returns the estimated number of loads and stores executed per function call.
+	 *
+	 * @return The weight of loads and stores inserted.
+	 */
+	public double weight() {
+		return weight;
+	}
+
+}
@@ -1,11 +0,0 @@
-package lang24.phase.regall;
-
-public class Tuple<T, K> {
-    public T value1;
-    public K value2;
-
-    public Tuple(T value1, K value2) {
-        this.value1 = value1;
-        this.value2 = value2;
-    }
-}
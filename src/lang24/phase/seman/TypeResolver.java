@@ -19,6 +19,9 @@ public class TypeResolver implements AstFullVisitor<SemType, Object/*** TODO OR
 
 	private List<String> _typeDefinitionsInRecursion = new ArrayList<>();
 
+	// Named types created for recursive type definitions, defined once the definition is resolved
+	private Map<AstDefn, List<SemNameType>> _undefinedNameTypes = new HashMap<>();
+
 
 	/**
 	 * Structural equivalence of types.
@@ -174,6 +177,10 @@ public class TypeResolver implements AstFullVisitor<SemType, Object/*** TODO OR
 			return null;
 		}
 
+		List<SemNameType> nameTypes = _undefinedNameTypes.remove(typDefinition);
+		if(nameTypes != null)
+			nameTypes.forEach(n -> n.define(type));
+
 		return SemAn.isType.put(typDefinition, type);
 	}
 
@@ -676,7 +683,7 @@ public class TypeResolver implements AstFullVisitor<SemType, Object/*** TODO OR
 		SemType type = null;
 
 		if(_typeDefinitionsInRecursion.contains(nameType.name)) { // if it is cyclic type
-			type = new SemNameType(nameType.name);
+			type = newNameType(nameType.name, definition);
 		}
 		else { // if it is not a cyclic type
 			if(arg != null && arg.equals(2)) {
@@ -684,20 +691,26 @@ public class TypeResolver implements AstFullVisitor<SemType, Object/*** TODO OR
 			}
 
 			if(_typeDefinitionsInRecursion.contains(nameType.name)) { // if it is cyclic type
-				type = new SemNameType(nameType.name);
+				type = newNameType(nameType.name, definition);
 			}
 			else {
 				type = SemAn.isType.get(definition);
 			}
 
 			if(type == null && arg != null && arg.equals(2)) {
-				type = new SemNameType(nameType.name);
+				type = newNameType(nameType.name, definition);
 			}
 		}
 
 		return SemAn.isType.put(nameType, type);
 	}
 
+	private SemNameType newNameType(String name, AstDefn definition) {
+		SemNameType nameType = new SemNameType(name);
+		_undefinedNameTypes.computeIfAbsent(definition, d -> new ArrayList<>()).add(nameType);
+		return nameType;
+	}
+
 	@Override
 	public SemType visit(AstPtrType ptrType, Object arg) {
 		SemType baseType = ptrType.baseType.accept(this, arg);
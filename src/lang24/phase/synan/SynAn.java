@@ -12,8 +12,9 @@ import lang24.phase.lexan.*;
  */
 public class SynAn extends Phase {
 
-	/** The parse tree. */
-	public static lang24.phase.synan.Lang24Parser.SourceContext tree;
+	/** The parse tree (of the current compilation). */
+	public static final lang24.CompilationContext.Local<lang24.phase.synan.Lang24Parser.SourceContext> tree = new lang24.CompilationContext.Local<lang24.phase.synan.Lang24Parser.SourceContext>(
+			() -> null);
 
 	/** The ANTLR parser that actually performs syntax analysis. */
 	public final lang24.phase.synan.Lang24Parser parser;
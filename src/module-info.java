@@ -16,7 +16,8 @@
  * 
  * <li><code>--dst-file-name=</code><i>file-name</i>: The name of the
  * destination file, i.e., the file containing the compiled code (unless
- * specified the base name of the source file name is used).</li>
+ * specified the base name of the source file name with suffix
+ * <code>.mms</code> is used).</li>
  * 
  * <li><code>--target-phase=</code><i>phase-name</i>: The name of the last phase
  * to be performed, or <code>none</code> or <code>all</code> (default).</li>
@@ -32,15 +33,65 @@
  * <li><code>--xsl=</code><i>dir-name</i>: The directory where xsl templates
  * used by generated xml report files are stored.</li>
  * 
+ * <li><code>--regall=</code><i>allocator</i>: The register allocator:
+ * <code>coloring</code> (iterated register coalescing), <code>linear</code>
+ * (linear scan) or <code>auto</code> (linear scan only for functions longer
+ * than the limit below; default).</li>
+ * 
+ * <li><code>--regall-linear-limit=</code><i>number</i>: The number of
+ * instructions of a function above which <code>--regall=auto</code> uses
+ * linear scan (default 5000).</li>
+ * 
+ * <li><code>--regall-matrix-limit=</code><i>number</i>: The maximal number of
+ * interference graph nodes for which edges are kept in a bit matrix rather than
+ * in a hash set (default 8192).</li>
+ * 
+ * <li><code>--jobs=</code><i>number</i>: The number of threads the back end
+ * uses to process functions in parallel (default 1).</li>
+ * 
+ * <li><code>--interpreter=</code><i>engine</i>: The interpreter running the
+ * program when the target phase is <code>imclin</code>: <code>tree</code>
+ * (default) walks the intermediate code, <code>closure</code> compiles it into
+ * closures first and runs considerably faster, <code>jvm</code> translates it
+ * into JVM bytecode and leaves it to the JIT compiler, <code>none</code> does
+ * not run the program at all.</li>
+ * 
+ * <li><code>--profile=</code><i>file-name</i>: The name of the file the flat
+ * execution profile of the program run by the <code>tree</code> interpreter is
+ * written to (calls, statements, memory loads and stores and branches taken
+ * per function and per source location); the call stacks in the collapsed
+ * format used by flame graph tools are written to the same file name followed
+ * by <code>.folded</code>.</li>
+ * 
+ * <li><code>--trace=</code><i>number</i>: The number of the last events
+ * (statements executed, writes to temporaries and to memory) the
+ * <code>tree</code> interpreter keeps in a ring buffer; they are printed out
+ * if the program fails with an error.</li>
+ * 
+ * <li><code>--stats=</code><i>file-name</i>: The name of the JSON file the
+ * time, CPU time, allocation and live heap of every phase and of every function
+ * in the back end are written to, together with the sizes of the intermediate
+ * representations.</li>
+ * 
  * </ul>
  * 
  * The source file can be specified by its name only, i.e., without
  * <code>--src-file-name</code>. If the source file is not specified, the last
  * modified .p24 file found in the working directory is used.
  * 
+ * To avoid starting a new virtual machine for every source file, the compiler
+ * can also be run as a long-lived daemon accepting the same command line
+ * options from a thin client (see {@link lang24.daemon}). Within a program, any
+ * number of sources can be compiled concurrently with the assembly kept in
+ * memory (see {@link lang24.Compilation}), and programs can be checked against
+ * their expected outputs in a batch (see {@link lang24.batch}).
+ * 
  * @author bostjan.slivnik@fri.uni-lj.si
  */
 module lang24compiler {
 	requires java.xml;
+	requires java.management;
+	requires jdk.management;
+	requires jdk.jfr;
 	requires antlr;
 }